@@ -0,0 +1,80 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bzip2.BZip2CompressorInputStream;
+import bzip2.ParallelBZip2InputStream;
+
+/*
+Benchmark of bzip2 decompression of bench/corpus/templates.dat.bz2 (776149 bytes uncompressed, 8 blocks), the input is read
+from memory: with threads = 1 BZip2CompressorInputStream is used, otherwise ParallelBZip2InputStream.
+The result is the number of decompressed bytes, throughput in MB/s is 0.776149 / (average time in s).
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BZip2Benchmark {
+	@Param({"1", "4"})
+	public int threads;
+
+	private byte[] compressed;
+	private final byte[] buffer = new byte[1 << 16];
+
+	@Setup
+	public void setup() throws IOException {
+		compressed = Corpus.bytes("templates.dat.bz2");
+	}
+
+	@Benchmark
+	public long decompress() throws IOException {
+		InputStream in = new ByteArrayInputStream(compressed);
+		long total = 0;
+		try (InputStream bzIn = threads == 1 ? new BZip2CompressorInputStream(in) : new ParallelBZip2InputStream(in, threads)) {
+			int n;
+			while ((n = bzIn.read(buffer)) != -1)
+				total += n;
+		}
+		return total;
+	}
+}
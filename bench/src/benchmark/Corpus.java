@@ -0,0 +1,110 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import wiki.TemplateParser;
+import wiki.TestSuite;
+import wiki.tools.WikiPage;
+
+/*
+Fixed corpus shared by the benchmarks, so that results are comparable across commits:
+- demo/templates.dat and demo/modules.dat, templates and modules of the Simple English Wiktionary
+- bench/corpus/pages.dat, representative entries in the format of wiki.dat
+- bench/corpus/expressions.txt, one expression of {{#expr:}} per line
+- bench/corpus/times.txt, one date/time string of {{#time:}} per line
+- bench/corpus/templates.dat.bz2, demo/templates.dat compressed with bzip2 -1 (100k blocks)
+
+The directories can be changed with system properties demo.dir and corpus.dir, defaults are relative to the project directory.
+*/
+final class Corpus {
+	final static String linkBaseURL = "https://en.wiktionary.org/wiki/";
+	final static Date revision = new Date(0);//fixed date, results do not depend on the current date
+
+	private final static String demo_dir = System.getProperty("demo.dir", "demo");
+	private final static String corpus_dir = System.getProperty("corpus.dir", "bench" + File.separator + "corpus");
+
+	private static HashMap<String, String> templates, modules, pages;
+
+	private Corpus() {
+	}
+
+	static synchronized HashMap<String, String> templates() {
+		if (templates == null)
+			templates = read(new File(demo_dir, "templates.dat"), false);
+		return templates;
+	}
+
+	static synchronized HashMap<String, String> modules() {
+		if (modules == null)
+			modules = read(new File(demo_dir, "modules.dat"), false);
+		return modules;
+	}
+
+	static synchronized HashMap<String, String> pages() {
+		if (pages == null)
+			pages = read(new File(corpus_dir, "pages.dat"), true);
+		return pages;
+	}
+
+	static String page(String title) {
+		String text = pages().get(title);
+		if (text == null)
+			throw new IllegalArgumentException("page not found in corpus: " + title);
+		return text;
+	}
+
+	static WikiPage newWikiPage(String title, TemplateParser tp) {
+		return new WikiPage(title, revision, Locale.ENGLISH, tp, templates(), modules(), false, null, true);
+	}
+
+	static List<String> lines(String name) throws IOException {//non empty lines of the given corpus file
+		List<String> result = new ArrayList<>();
+		for (String line : Files.readAllLines(new File(corpus_dir, name).toPath(), StandardCharsets.UTF_8))
+			if (!line.isEmpty())
+				result.add(line);
+		return result;
+	}
+
+	static byte[] bytes(String name) throws IOException {
+		return Files.readAllBytes(new File(corpus_dir, name).toPath());
+	}
+
+	private static HashMap<String, String> read(File file, boolean isWikiDat) {
+		if (!file.exists())
+			throw new IllegalStateException("corpus file not found: " + file.getAbsolutePath());
+		HashMap<String, String> name2page = new HashMap<>();
+		TestSuite.readfile(name2page, file.getPath(), isWikiDat);
+		return name2page;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import info.bliki.wiki.template.dates.StringToTime;
+import info.bliki.wiki.template.dates.StringToTimeException;
+import wiki.parserfunctions.expr.ExprParser;
+
+/*
+Benchmark of the evaluators used by parser functions, each invocation evaluates the whole corpus:
+- expr: ExprParser.doExpression() on bench/corpus/expressions.txt, as {{#expr:}}
+- time: StringToTime on bench/corpus/times.txt, as {{#time:}}
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+	private List<String> expressions;
+	private List<String> times;
+
+	@Setup
+	public void setup() throws IOException {
+		expressions = Corpus.lines("expressions.txt");
+		times = Corpus.lines("times.txt");
+	}
+
+	@Benchmark
+	public void expr(Blackhole bh) {
+		for (String expression : expressions)
+			bh.consume(new ExprParser().doExpression(expression));
+	}
+
+	@Benchmark
+	public void time(Blackhole bh) {
+		for (String time : times) {
+			try {
+				bh.consume(new StringToTime(time));
+			} catch (StringToTimeException ex) {
+				bh.consume(ex);
+			}
+		}
+	}
+}
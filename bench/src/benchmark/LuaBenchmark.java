@@ -0,0 +1,109 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.bliki.extensions.scribunto.ScribuntoException;
+import info.bliki.extensions.scribunto.engine.lua.PrototypeCache;
+import info.bliki.extensions.scribunto.engine.lua.ScribuntoLuaEngine;
+import wiki.TemplateParser;
+import wiki.tools.WikiPage;
+
+/*
+Benchmark of ScribuntoLuaEngine.invoke() with modules of demo/modules.dat:
+- invokeWarm: the same engine is used by all invocations
+- invokeCold: every invocation creates a new engine, compiled modules are taken from the shared prototype cache
+- invokeCompile: every invocation creates a new engine and compiles the modules again
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LuaBenchmark {
+	@Param({"String.replace", "Onyms.run"})
+	public String function;
+
+	private WikiPage wp;
+	private ScribuntoLuaEngine engine;
+	private String module_name, function_name;
+	private final Map<String, String> params = new LinkedHashMap<>();
+
+	@Setup
+	public void setup() throws ScribuntoException {
+		int idx = function.indexOf('.');
+		module_name = function.substring(0, idx);
+		function_name = function.substring(idx + 1);
+		switch (function) {
+			case "String.replace":
+				params.put("source", "The quick brown fox jumps over the lazy dog");
+				params.put("pattern", "%s+");
+				params.put("replace", "_");
+				params.put("plain", "false");
+				break;
+			case "Onyms.run":
+				params.put("1", "home");
+				params.put("2", "dwelling");
+				params.put("3", "residence");
+				params.put("type", "synonym");
+				break;
+			default: throw new IllegalArgumentException(function);
+		}
+		wp = Corpus.newWikiPage("benchmark", new TemplateParser());
+		engine = new ScribuntoLuaEngine(wp);
+		engine.invoke(module_name, function_name, null, params, false, false);//fails early in case of errors
+	}
+
+	@Benchmark
+	public String invokeWarm() throws ScribuntoException {
+		return engine.invoke(module_name, function_name, null, params, false, false);
+	}
+
+	@Benchmark
+	public String invokeCold() throws ScribuntoException {
+		return new ScribuntoLuaEngine(wp).invoke(module_name, function_name, null, params, false, false);
+	}
+
+	@Benchmark
+	public String invokeCompile() throws ScribuntoException {
+		PrototypeCache.getShared().clear();
+		return new ScribuntoLuaEngine(wp).invoke(module_name, function_name, null, params, false, false);
+	}
+}
@@ -50,6 +50,11 @@ public class BZip2CompressorInputStream extends CompressorInputStream
     private static final int NO_RAND_PART_B_STATE = 6;
     private static final int NO_RAND_PART_C_STATE = 7;
 
+    /**
+     * Huffman codes up to this length are decoded with a single table lookup.
+     */
+    private static final int LOOKUP_BITS = 10;
+
     private int currentState = START_BLOCK_STATE;
 
     private int storedBlockCRC, storedCombinedCRC;
@@ -103,7 +108,7 @@ public class BZip2CompressorInputStream extends CompressorInputStream
      */
     public BZip2CompressorInputStream(final InputStream in, final boolean decompressConcatenated) throws IOException {
         this.bin = new BitInputStream(in == System.in ? new CloseShieldFilterInputStream(in) : in,
-            ByteOrder.BIG_ENDIAN);
+            ByteOrder.BIG_ENDIAN, !decompressConcatenated);
         this.decompressConcatenated = decompressConcatenated;
 
         init(true);
@@ -148,14 +153,94 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         final int hi = offs + len;
         int destOffs = offs;
         int b;
-        while (destOffs < hi && ((b = read0()) >= 0)) {
-            dest[destOffs++] = (byte) b;
-            count(1);
+        while (destOffs < hi) {
+            if (currentState == NO_RAND_PART_B_STATE || currentState == NO_RAND_PART_C_STATE) {
+                destOffs = readNoRand(dest, destOffs, hi);
+            } else if ((b = read0()) >= 0) {
+                dest[destOffs++] = (byte) b;
+            } else {
+                break;
+            }
         }
+        count(destOffs - offs);
 
         return (destOffs == offs) ? -1 : (destOffs - offs);
     }
 
+    /**
+     * Bulk version of setupNoRandPartA/B/C, the state is kept in local
+     * variables and the CRC is updated once on the bytes written.
+     * Returns when dest is full or at the end of the block, after reading
+     * the first byte of the next block if any.
+     */
+    private int readNoRand(final byte[] dest, int offs, final int hi) throws IOException {
+        final int[] tt = this.data.tt;
+        final int lastShadow = this.last;
+        final int start = offs;
+        int state = this.currentState;
+        int count = this.su_count;
+        int ch2 = this.su_ch2;
+        int chPrev = this.su_chPrev;
+        int i2 = this.su_i2;
+        int j2 = this.su_j2;
+        int tPos = this.su_tPos;
+        int z = this.su_z;
+        boolean endOfBlock = false;
+
+        while (offs < hi) {
+            if (state == NO_RAND_PART_C_STATE) {
+                if (j2 < z) {
+                    final int n = Math.min(z - j2, hi - offs);
+                    Arrays.fill(dest, offs, offs + n, (byte) ch2);
+                    offs += n;
+                    j2 += n;
+                    continue;
+                }
+                i2++;
+                count = 0;
+            } else if (ch2 != chPrev) {
+                count = 1;
+            } else if (++count >= 4) {
+                checkBounds(tPos, tt.length, "su_tPos");
+                final int tt_tPos = tt[tPos];
+                z = tt_tPos & 0xff;
+                tPos = tt_tPos >>> 8;
+                j2 = 0;
+                state = NO_RAND_PART_C_STATE;
+                continue;
+            }
+            if (i2 > lastShadow) {
+                endOfBlock = true;
+                break;
+            }
+            chPrev = ch2;
+            checkBounds(tPos, tt.length, "su_tPos");
+            final int tt_tPos = tt[tPos];
+            ch2 = tt_tPos & 0xff;
+            tPos = tt_tPos >>> 8;
+            i2++;
+            state = NO_RAND_PART_B_STATE;
+            dest[offs++] = (byte) ch2;
+        }
+
+        this.crc.updateCRC(dest, start, offs - start);
+        this.currentState = state;
+        this.su_count = count;
+        this.su_ch2 = ch2;
+        this.su_chPrev = chPrev;
+        this.su_i2 = i2;
+        this.su_j2 = j2;
+        this.su_tPos = tPos;
+        this.su_z = (char) z;
+        if (endOfBlock) {
+            final int b = setupNoRandPartA();
+            if (b >= 0) {
+                dest[offs++] = (byte) b;
+            }
+        }
+        return offs;
+    }
+
     /**
      * @since 1.17
      */
@@ -221,7 +306,8 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         }
 
         if (!isFirstStream) {
-            bin.clearBitCache();
+            // the cache may hold whole bytes of the next stream
+            bin.alignWithByteBoundary();
         }
 
         final int magic0 = readNextByte(this.bin);
@@ -338,8 +424,13 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         }
 
         // Look for the next .bz2 stream if decompressing
-        // concatenated files.
-        return !decompressConcatenated || !init(false);
+        // concatenated files, otherwise leave the input positioned
+        // after this stream.
+        if (!decompressConcatenated) {
+            bin.unreadBuffer();
+            return true;
+        }
+        return !init(false);
     }
 
     @Override
@@ -435,6 +526,30 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         }
     }
 
+    /**
+     * Called by createHuffmanDecodingTables() exclusively.
+     * Fills the table indexed by the next LOOKUP_BITS bits of input with
+     * (symbol << 5 | code length), or -1 when the code is longer than
+     * LOOKUP_BITS or invalid, exactly as decoded by decodeSymbol() bit by bit.
+     */
+    private static void hbCreateLookupTable(final int[] lookup, final int[] limit,
+                                            final int[] base, final int[] perm, final int minLen) {
+        for (int p = 0; p < lookup.length; p++) {
+            int entry = -1;
+            for (int zn = minLen; zn <= LOOKUP_BITS; zn++) {
+                final int zvec = p >>> (LOOKUP_BITS - zn);
+                if (zvec <= limit[zn]) {
+                    final int idx = zvec - base[zn];
+                    if (idx >= 0 && idx < MAX_ALPHA_SIZE) {
+                        entry = (perm[idx] << 5) | zn;
+                    }
+                    break;
+                }
+            }
+            lookup[p] = entry;
+        }
+    }
+
     private void recvDecodingTables() throws IOException {
         final BitInputStream bin = this.bin;
         final Data dataShadow = this.data;
@@ -528,6 +643,7 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         final int[][] limit = dataShadow.limit;
         final int[][] base = dataShadow.base;
         final int[][] perm = dataShadow.perm;
+        final int[][] lookup = dataShadow.lookup;
 
         for (int t = 0; t < nGroups; t++) {
             int minLen = 32;
@@ -544,6 +660,7 @@ public class BZip2CompressorInputStream extends CompressorInputStream
             }
             hbCreateDecodeTables(limit[t], base[t], perm[t], len[t], minLen,
                                  maxLen, alphaSize);
+            hbCreateLookupTable(lookup[t], limit[t], base[t], perm[t], minLen);
             minLens[t] = minLen;
         }
     }
@@ -563,6 +680,7 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         final int[][] limit = dataShadow.limit;
         final int[][] base = dataShadow.base;
         final int[][] perm = dataShadow.perm;
+        final int[][] lookup = dataShadow.lookup;
         final int limitLast = this.blockSize100k * 100000;
 
         /*
@@ -585,6 +703,7 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         int[] base_zt = base[zt];
         int[] limit_zt = limit[zt];
         int[] perm_zt = perm[zt];
+        int[] lookup_zt = lookup[zt];
         int minLens_zt = minLens[zt];
 
         while (nextSym != eob) {
@@ -608,21 +727,13 @@ public class BZip2CompressorInputStream extends CompressorInputStream
                         base_zt = base[zt];
                         limit_zt = limit[zt];
                         perm_zt = perm[zt];
+                        lookup_zt = lookup[zt];
                         minLens_zt = minLens[zt];
                     } else {
                         groupPos--;
                     }
 
-                    int zn = minLens_zt;
-                    checkBounds(zn, MAX_ALPHA_SIZE, "zn");
-                    int zvec = bsR(bin, zn);
-                    while(zvec > limit_zt[zn]) {
-                        checkBounds(++zn, MAX_ALPHA_SIZE, "zn");
-                        zvec = (zvec << 1) | bsR(bin, 1);
-                    }
-                    final int tmp = zvec - base_zt[zn];
-                    checkBounds(tmp, MAX_ALPHA_SIZE, "zvec");
-                    nextSym = perm_zt[tmp];
+                    nextSym = decodeSymbol(bin, lookup_zt, limit_zt, base_zt, perm_zt, minLens_zt);
                 }
 
                 final int yy0 = yy[0];
@@ -673,21 +784,13 @@ public class BZip2CompressorInputStream extends CompressorInputStream
                     base_zt = base[zt];
                     limit_zt = limit[zt];
                     perm_zt = perm[zt];
+                    lookup_zt = lookup[zt];
                     minLens_zt = minLens[zt];
                 } else {
                     groupPos--;
                 }
 
-                int zn = minLens_zt;
-                checkBounds(zn, MAX_ALPHA_SIZE, "zn");
-                int zvec = bsR(bin, zn);
-                while(zvec > limit_zt[zn]) {
-                    checkBounds(++zn, MAX_ALPHA_SIZE, "zn");
-                    zvec = (zvec << 1) | bsR(bin, 1);
-                }
-                final int idx = zvec - base_zt[zn];
-                checkBounds(idx, MAX_ALPHA_SIZE, "zvec");
-                nextSym = perm_zt[idx];
+                nextSym = decodeSymbol(bin, lookup_zt, limit_zt, base_zt, perm_zt, minLens_zt);
             }
         }
 
@@ -698,18 +801,34 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         final Data dataShadow = this.data;
         final int zt = dataShadow.selector[0] & 0xff;
         checkBounds(zt, N_GROUPS, "zt");
-        final int[] limit_zt = dataShadow.limit[zt];
-        int zn = dataShadow.minLens[zt];
+        return decodeSymbol(bin, dataShadow.lookup[zt], dataShadow.limit[zt],
+                            dataShadow.base[zt], dataShadow.perm[zt], dataShadow.minLens[zt]);
+    }
+
+    /**
+     * Decodes the next symbol, codes up to LOOKUP_BITS long with a single
+     * table lookup, longer or invalid codes bit by bit.
+     */
+    private static int decodeSymbol(final BitInputStream bin, final int[] lookup_zt,
+                                    final int[] limit_zt, final int[] base_zt, final int[] perm_zt,
+                                    final int minLens_zt) throws IOException {
+        final int entry = lookup_zt[bin.peekBits(LOOKUP_BITS)];
+        if (entry >= 0) {
+            if (!bin.skipBits(entry & 0x1f)) {
+                throw new IOException("unexpected end of stream");
+            }
+            return entry >> 5;
+        }
+        int zn = minLens_zt;
         checkBounds(zn, MAX_ALPHA_SIZE, "zn");
         int zvec = bsR(bin, zn);
         while (zvec > limit_zt[zn]) {
             checkBounds(++zn, MAX_ALPHA_SIZE, "zn");
             zvec = (zvec << 1) | bsR(bin, 1);
         }
-        final int tmp = zvec - dataShadow.base[zt][zn];
-        checkBounds(tmp, MAX_ALPHA_SIZE, "zvec");
-
-        return dataShadow.perm[zt][tmp];
+        final int idx = zvec - base_zt[zn];
+        checkBounds(idx, MAX_ALPHA_SIZE, "zvec");
+        return perm_zt[idx];
     }
 
     private int setupBlock() throws IOException {
@@ -729,17 +848,21 @@ public class BZip2CompressorInputStream extends CompressorInputStream
             cftab[i] = c;
         }
 
+        // as in the reference implementation, each entry of tt holds the
+        // index of the next entry in the upper 24 bits and the byte of
+        // ll8 at its own index in the lower 8 bits, so that the output
+        // loops make a single random access per byte
         for (int i = 0, lastShadow = this.last; i <= lastShadow; i++) {
             final int tmp = cftab[ll8[i] & 0xff]++;
             checkBounds(tmp, ttLen, "tt index");
-            tt[tmp] = i;
+            tt[tmp] = (i << 8) | (ll8[tmp] & 0xff);
         }
 
         if ((this.origPtr < 0) || (this.origPtr >= tt.length)) {
             throw new IOException("stream corrupted");
         }
 
-        this.su_tPos = tt[this.origPtr];
+        this.su_tPos = tt[this.origPtr] >>> 8;
         this.su_count = 0;
         this.su_i2 = 0;
         this.su_ch2 = 256; /* not a char and not EOF */
@@ -755,9 +878,10 @@ public class BZip2CompressorInputStream extends CompressorInputStream
     private int setupRandPartA() throws IOException {
         if (this.su_i2 <= this.last) {
             this.su_chPrev = this.su_ch2;
-            int su_ch2Shadow = this.data.ll8[this.su_tPos] & 0xff;
             checkBounds(this.su_tPos, this.data.tt.length, "su_tPos");
-            this.su_tPos = this.data.tt[this.su_tPos];
+            final int tt_tPos = this.data.tt[this.su_tPos];
+            int su_ch2Shadow = tt_tPos & 0xff;
+            this.su_tPos = tt_tPos >>> 8;
             if (this.su_rNToGo == 0) {
                 this.su_rNToGo = Rand.rNums(this.su_rTPos) - 1;
                 if (++this.su_rTPos == 512) {
@@ -780,10 +904,11 @@ public class BZip2CompressorInputStream extends CompressorInputStream
     private int setupNoRandPartA() throws IOException {
         if (this.su_i2 <= this.last) {
             this.su_chPrev = this.su_ch2;
-            final int su_ch2Shadow = this.data.ll8[this.su_tPos] & 0xff;
-            this.su_ch2 = su_ch2Shadow;
             checkBounds(this.su_tPos, this.data.tt.length, "su_tPos");
-            this.su_tPos = this.data.tt[this.su_tPos];
+            final int tt_tPos = this.data.tt[this.su_tPos];
+            final int su_ch2Shadow = tt_tPos & 0xff;
+            this.su_ch2 = su_ch2Shadow;
+            this.su_tPos = tt_tPos >>> 8;
             this.su_i2++;
             this.currentState = NO_RAND_PART_B_STATE;
             this.crc.updateCRC(su_ch2Shadow);
@@ -801,9 +926,10 @@ public class BZip2CompressorInputStream extends CompressorInputStream
             this.su_count = 1;
             return setupRandPartA();
         } else if (++this.su_count >= 4) {
-            this.su_z = (char) (this.data.ll8[this.su_tPos] & 0xff);
             checkBounds(this.su_tPos, this.data.tt.length, "su_tPos");
-            this.su_tPos = this.data.tt[this.su_tPos];
+            final int tt_tPos = this.data.tt[this.su_tPos];
+            this.su_z = (char) (tt_tPos & 0xff);
+            this.su_tPos = tt_tPos >>> 8;
             if (this.su_rNToGo == 0) {
                 this.su_rNToGo = Rand.rNums(this.su_rTPos) - 1;
                 if (++this.su_rTPos == 512) {
@@ -841,9 +967,10 @@ public class BZip2CompressorInputStream extends CompressorInputStream
             this.su_count = 1;
             return setupNoRandPartA();
         } else if (++this.su_count >= 4) {
-            checkBounds(this.su_tPos, this.data.ll8.length, "su_tPos");
-            this.su_z = (char) (this.data.ll8[this.su_tPos] & 0xff);
-            this.su_tPos = this.data.tt[this.su_tPos];
+            checkBounds(this.su_tPos, this.data.tt.length, "su_tPos");
+            final int tt_tPos = this.data.tt[this.su_tPos];
+            this.su_z = (char) (tt_tPos & 0xff);
+            this.su_tPos = tt_tPos >>> 8;
             this.su_j2 = 0;
             return setupNoRandPartC();
         } else {
@@ -883,6 +1010,7 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         final int[][] base = new int[N_GROUPS][MAX_ALPHA_SIZE]; // 6192 byte
         final int[][] perm = new int[N_GROUPS][MAX_ALPHA_SIZE]; // 6192 byte
         final int[] minLens = new int[N_GROUPS]; // 24 byte
+        final int[][] lookup = new int[N_GROUPS][1 << LOOKUP_BITS]; // 24576 byte
 
         final int[] cftab = new int[257]; // 1028 byte
         final char[] getAndMoveToFrontDecode_yy = new char[256]; // 512 byte
@@ -890,13 +1018,13 @@ public class BZip2CompressorInputStream extends CompressorInputStream
         // byte
         final byte[] recvDecodingTables_pos = new byte[N_GROUPS]; // 6 byte
         // ---------------
-        // 60798 byte
+        // 85374 byte
 
         int[] tt; // 3600000 byte
         byte[] ll8; // 900000 byte
 
         // ---------------
-        // 4560782 byte
+        // 4585358 byte
         // ===============
 
         Data(final int blockSize100k) {
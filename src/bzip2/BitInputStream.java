@@ -9,12 +9,19 @@ import java.nio.ByteOrder;
 
 /**
  * Reads bits from an InputStream.
+ *
+ * <p>Bytes are read from the underlying stream in chunks into an internal
+ * buffer, the bits are taken from the buffer into a 64 bit cache. A stream
+ * that must be left positioned right after the last byte used, see
+ * {@link #BitInputStream(InputStream, ByteOrder, boolean)}, is read byte by
+ * byte unless it supports {@link InputStream#mark}.</p>
  * @since 1.10
  * @NotThreadSafe
  */
 public class BitInputStream implements Closeable {
     private static final int MAXIMUM_CACHE_SIZE = 63; // bits in long minus sign bit
     private static final long[] MASKS = new long[MAXIMUM_CACHE_SIZE + 1];
+    private static final int BUFFER_SIZE = 8192;
 
     static {
         for (int i = 1; i <= MAXIMUM_CACHE_SIZE; i++) {
@@ -26,6 +33,10 @@ public class BitInputStream implements Closeable {
     private final ByteOrder byteOrder;
     private long bitsCached = 0;
     private int bitsCachedSize = 0;
+    private final byte[] buffer;
+    private int bufferPos = 0;
+    private int bufferEnd = 0;
+    private final boolean keepPosition;
 
     /**
      * Constructor taking an InputStream and its bit arrangement.
@@ -34,8 +45,23 @@ public class BitInputStream implements Closeable {
      *      either BIG_ENDIAN (aaaaabbb bb000000) or LITTLE_ENDIAN (bbbaaaaa 000000bb)
      */
     public BitInputStream(final InputStream in, final ByteOrder byteOrder) {
+        this(in, byteOrder, false);
+    }
+
+    /**
+     * Constructor taking an InputStream, its bit arrangement and whether
+     * the position of the InputStream must be restored by {@link #unreadBuffer}.
+     * @param in the InputStream
+     * @param byteOrder the bit arrangement across byte boundaries,
+     *      either BIG_ENDIAN (aaaaabbb bb000000) or LITTLE_ENDIAN (bbbaaaaa 000000bb)
+     * @param keepPosition if true, the bytes read in advance are returned to
+     *      the InputStream by {@link #unreadBuffer}
+     */
+    public BitInputStream(final InputStream in, final ByteOrder byteOrder, final boolean keepPosition) {
         this.in = new CountingInputStream(in);
         this.byteOrder = byteOrder;
+        this.keepPosition = keepPosition;
+        this.buffer = new byte[!keepPosition || in.markSupported() ? BUFFER_SIZE : 1];
     }
 
     @Override
@@ -95,7 +121,7 @@ public class BitInputStream implements Closeable {
      * @since 1.16
      */
     public long bitsAvailable() throws IOException {
-        return bitsCachedSize + ((long) Byte.SIZE) * in.available();
+        return bitsCachedSize + ((long) Byte.SIZE) * (bufferEnd - bufferPos + in.available());
     }
 
     /**
@@ -113,12 +139,76 @@ public class BitInputStream implements Closeable {
      * Returns the number of bytes read from the underlying stream.
      *
      * <p>This includes the bytes read to fill the current cache and
-     * not read as bits so far.</p>
+     * not read as bits so far, but not the bytes still in the buffer.</p>
      * @return the number of bytes read from the underlying stream
      * @since 1.17
      */
     public long getBytesRead() {
-        return in.getBytesRead();
+        return in.getBytesRead() - (bufferEnd - bufferPos);
+    }
+
+    /**
+     * Returns the next bits without removing them from the cache, the bits
+     * missing at the end of the underlying stream are returned as zeros.
+     * Only for BIG_ENDIAN streams, used together with {@link #skipBits}
+     * to decode Huffman codes by table lookup.
+     *
+     * @param count the number of bits to peek, must be a positive
+     * number not bigger than 56.
+     * @return the bits concatenated as an int
+     * @throws IOException on error
+     */
+    public int peekBits(final int count) throws IOException {
+        if (bitsCachedSize < count) {
+            ensureCache(count);
+            if (bitsCachedSize < count) {
+                return (int) ((bitsCached << (count - bitsCachedSize)) & MASKS[count]);
+            }
+        }
+        return (int) ((bitsCached >> (bitsCachedSize - count)) & MASKS[count]);
+    }
+
+    /**
+     * Removes bits returned by {@link #peekBits} from the cache.
+     *
+     * @param count the number of bits to skip, not bigger than the count
+     * given to the last call of {@link #peekBits}.
+     * @return false if the end of the underlying stream has been reached
+     *         before the requested number of bits
+     */
+    public boolean skipBits(final int count) {
+        if (bitsCachedSize < count) {
+            return false;
+        }
+        bitsCachedSize -= count;
+        return true;
+    }
+
+    /**
+     * Returns the bytes read in advance into the buffer and the whole bytes
+     * in the cache to the underlying stream, so that it is positioned after
+     * the last byte used for the bits read so far.
+     * The bits still in the cache are dropped.
+     * @throws IOException if the underlying stream throws one when calling reset or skip
+     */
+    public void unreadBuffer() throws IOException {
+        if (keepPosition && buffer.length > 1) {
+            in.reset();
+            long toSkip = bufferPos - bitsCachedSize / Byte.SIZE;
+            while (toSkip > 0) {
+                final long skipped = in.skip(toSkip);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        break;
+                    }
+                    toSkip--;
+                } else {
+                    toSkip -= skipped;
+                }
+            }
+        }
+        bufferPos = bufferEnd = 0;
+        clearBitCache();
     }
 
     private long processBitsGreater57(final int count) throws IOException {
@@ -129,7 +219,7 @@ public class BitInputStream implements Closeable {
         // bitsCachedSize >= 57 and left-shifting it 8 bits would cause an overflow
         int bitsToAddCount = count - bitsCachedSize;
         overflowBits = Byte.SIZE - bitsToAddCount;
-        final long nextByte = in.read();
+        final long nextByte = nextByte();
         if (nextByte < 0) {
             return nextByte;
         }
@@ -162,14 +252,27 @@ public class BitInputStream implements Closeable {
     }
 
     /**
-     * Fills the cache up to 56 bits
+     * Fills the cache up to 56 bits, with all the whole bytes that fit if they are in the buffer
      * @param count
      * @return return true, when EOF
      * @throws IOException
      */
     private boolean ensureCache(final int count) throws IOException {
+        if (bitsCachedSize < count && bufferEnd - bufferPos >= Byte.SIZE) {
+            // enough bytes in the buffer to fill the cache with whole bytes at once
+            while (bitsCachedSize < 49) {
+                final long nextByte = buffer[bufferPos++] & 0xff;
+                if (byteOrder == ByteOrder.LITTLE_ENDIAN) {
+                    bitsCached |= (nextByte << bitsCachedSize);
+                } else {
+                    bitsCached <<= Byte.SIZE;
+                    bitsCached |= nextByte;
+                }
+                bitsCachedSize += Byte.SIZE;
+            }
+        }
         while (bitsCachedSize < count && bitsCachedSize < 57) {
-            final long nextByte = in.read();
+            final long nextByte = nextByte();
             if (nextByte < 0) {
                 return true;
             }
@@ -184,4 +287,24 @@ public class BitInputStream implements Closeable {
         return false;
     }
 
+    private int nextByte() throws IOException {
+        if (bufferPos == bufferEnd && !fillBuffer()) {
+            return -1;
+        }
+        return buffer[bufferPos++] & 0xff;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        if (keepPosition && buffer.length > 1) {
+            in.mark(buffer.length);
+        }
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        bufferPos = 0;
+        bufferEnd = Math.max(n, 0);
+        return n > 0;
+    }
+
 }
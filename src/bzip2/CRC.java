@@ -110,5 +110,14 @@ class CRC {
             this.globalCrc = globalCrcShadow;
         }
 
+        void updateCRC(final byte[] buf, final int off, final int len) {
+            int globalCrcShadow = this.globalCrc;
+            for (int i = off, end = off + len; i < end; i++) {
+                globalCrcShadow = (globalCrcShadow << 8)
+                    ^ crc32Table[((globalCrcShadow >>> 24) ^ buf[i]) & 0xff];
+            }
+            this.globalCrc = globalCrcShadow;
+        }
+
         private int globalCrc;
 }
\ No newline at end of file
@@ -0,0 +1,520 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An input stream that decompresses from the BZip2 format using a pool of worker threads.
+ *
+ * <p>The blocks of a bzip2 stream are independent: each block starts with the 48-bit magic 0x314159265359 and the stream
+ * ends with the 48-bit magic 0x177245385090 followed by the combined CRC; the magics are not aligned to byte boundaries.
+ * The input is scanned for the magics, each block is copied to a standalone single-block stream and decoded by
+ * {@link BZip2CompressorInputStream} in a worker thread, so that the CRC of every block is verified as usual. Decoded blocks
+ * are returned in their original order and the combined CRC is verified at the end of each stream.</p>
+ *
+ * <p>The block magic may occur by chance inside compressed data: in this case the decoding of the block fails and the block is
+ * merged with the following one before decoding it again.</p>
+ *
+ * <p>Unlike {@link BZip2CompressorInputStream}, the underlying stream is read ahead, so its position after the end of a
+ * non-concatenated stream is not defined.</p>
+ *
+ * @NotThreadSafe
+ */
+public class ParallelBZip2InputStream extends CompressorInputStream {
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+    private static final int MAX_MERGES = 4; // maximum number of segments merged to a block split by false block magics
+
+    private final Scanner scanner;
+    private final ExecutorService executor;
+    private final int maxPending; // maximum number of blocks scanned ahead
+    private final ArrayDeque<Segment> pending = new ArrayDeque<>();
+    private final boolean decompressConcatenated;
+    private boolean inputDone;
+    private boolean closed;
+
+    private byte[] block = new byte[0]; // decoded block being read
+    private int blockPos;
+    private int computedCombinedCRC;
+
+    /**
+     * Constructs a new ParallelBZip2InputStream which decompresses bytes read from the specified stream with the given
+     * number of threads. This doesn't support decompressing concatenated .bz2 files.
+     *
+     * @param in the InputStream from which this object should be created
+     * @param threads number of worker threads
+     * @throws IOException
+     *             if the stream content is malformed or an I/O error occurs.
+     */
+    public ParallelBZip2InputStream(final InputStream in, final int threads) throws IOException {
+        this(in, threads, false);
+    }
+
+    /**
+     * Constructs a new ParallelBZip2InputStream which decompresses bytes read from the specified stream with the given
+     * number of threads.
+     *
+     * @param in the InputStream from which this object should be created
+     * @param threads number of worker threads
+     * @param decompressConcatenated
+     *                     if true, decompress until the end of the input;
+     *                     if false, stop after the first .bz2 stream
+     * @throws IOException
+     *             if the stream content is malformed or an I/O error occurs.
+     */
+    public ParallelBZip2InputStream(final InputStream in, final int threads, final boolean decompressConcatenated) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads(" + threads + ") < 1.");
+        }
+        this.scanner = new Scanner(in);
+        this.decompressConcatenated = decompressConcatenated;
+        this.maxPending = 2 * threads;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bzip2-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+        schedule();
+        Segment first = pending.peek();
+        if (first != null && first.error != null) { // header errors are reported at once, like BZip2CompressorInputStream
+            close();
+            throw first.error;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        if (blockPos == block.length && !nextBlock()) {
+            return -1;
+        }
+        count(1);
+        return block[blockPos++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] dest, final int offs, final int len) throws IOException {
+        if (offs < 0 || len < 0 || offs + len > dest.length) {
+            throw new IndexOutOfBoundsException("offs(" + offs + "), len(" + len + "), dest.length(" + dest.length + ").");
+        }
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (blockPos == block.length && !nextBlock()) {
+            return -1;
+        }
+        final int n = Math.min(len, block.length - blockPos);
+        System.arraycopy(block, blockPos, dest, offs, n);
+        blockPos += n;
+        count(n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - blockPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            for (Segment s : pending) {
+                if (s.decoded != null) {
+                    s.decoded.cancel(true);
+                }
+            }
+            pending.clear();
+            block = new byte[0];
+            blockPos = 0;
+            executor.shutdownNow();
+            scanner.in.close();
+        }
+    }
+
+    /**
+     * Scans the input until {@link #maxPending} segments are waiting and submits the blocks to the workers; scanning errors
+     * are queued, so that they are reported after the blocks preceding them.
+     */
+    private void schedule() {
+        while (!inputDone && pending.size() < maxPending) {
+            Segment s;
+            try {
+                s = scanner.next();
+            } catch (IOException ex) {
+                s = new Segment(ex);
+            }
+            if (s == null || s.error != null) {
+                inputDone = true;
+                if (s == null) {
+                    break;
+                }
+            } else if (s.stream != null) {
+                final byte[] stream = s.stream;
+                s.decoded = executor.submit(() -> decode(stream));
+            } else if (!decompressConcatenated) {
+                inputDone = true;
+            }
+            pending.add(s);
+        }
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (true) {
+            schedule();
+            final Segment s = pending.poll();
+            if (s == null) {
+                return false;
+            }
+            if (s.error != null) {
+                throw s.error;
+            }
+            if (s.stream == null) { // end of stream
+                if (s.crc != computedCombinedCRC) {
+                    throw new IOException("BZip2 CRC error");
+                }
+                computedCombinedCRC = 0;
+                continue;
+            }
+            block = result(s);
+            blockPos = 0;
+            computedCombinedCRC = ((computedCombinedCRC << 1) | (computedCombinedCRC >>> 31)) ^ s.crc;
+            if (block.length > 0) {
+                return true;
+            }
+        }
+    }
+
+    private byte[] result(final Segment s) throws IOException {
+        try {
+            return s.decoded.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            final IOException failure = ex.getCause() instanceof IOException
+                ? (IOException) ex.getCause() : new IOException(ex.getCause());
+            // the block may have been split by a false block magic, try to merge it with the following segments
+            Segment merged = s;
+            for (int i = 0; i < MAX_MERGES; i++) {
+                schedule();
+                final Segment next = pending.peek();
+                if (next == null || next.stream == null) {
+                    break;
+                }
+                pending.poll();
+                next.decoded.cancel(true);
+                merged = merged.merge(next);
+                try {
+                    return decode(merged.stream);
+                } catch (IOException ex2) {
+                    // not yet a complete block
+                }
+            }
+            throw failure;
+        }
+    }
+
+    private static byte[] decode(final byte[] stream) throws IOException {
+        try (BZip2CompressorInputStream bzIn = new BZip2CompressorInputStream(new ByteArrayInputStream(stream))) {
+            byte[] out = new byte[(stream[3] - '0') * 100000];
+            int n = 0;
+            int r;
+            while ((r = bzIn.read(out, n, out.length - n)) != -1) {
+                n += r;
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, 2 * out.length);
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+    }
+
+    /**
+     * Returns n bits, at most 56, starting at the given bit position; bits beyond the end of the array are zero.
+     */
+    private static long bitsAt(final byte[] buf, final long pos, final int n) {
+        int i = (int) (pos >>> 3);
+        final int shift = (int) (pos & 7);
+        final int nbytes = (shift + n + 7) >>> 3;
+        long v = 0;
+        for (int k = 0; k < nbytes; k++, i++) {
+            v = (v << 8) | (i < buf.length ? buf[i] & 0xff : 0);
+        }
+        return (v >>> ((nbytes << 3) - shift - n)) & ((1L << n) - 1);
+    }
+
+    /**
+     * A block as a standalone bzip2 stream, or the end of a stream, or a scanning error.
+     */
+    private static final class Segment {
+        final byte[] stream; // header, block and end of stream with combined CRC; null at end of stream
+        final int level; // block size character of the header
+        final long blockBits; // length of the block in bits, magic included
+        final int crc; // stored block CRC, or stored combined CRC at end of stream
+        final IOException error;
+        Future<byte[]> decoded;
+
+        Segment(final byte[] stream, final int level, final long blockBits, final int crc) {
+            this.stream = stream;
+            this.level = level;
+            this.blockBits = blockBits;
+            this.crc = crc;
+            this.error = null;
+        }
+
+        Segment(final IOException error) {
+            this.stream = null;
+            this.level = 0;
+            this.blockBits = 0;
+            this.crc = 0;
+            this.error = error;
+        }
+
+        static Segment of(final int level, final byte[] buf, final long pos, final long bits) {
+            final int crc = (int) bitsAt(buf, pos + 48, 32);
+            final BitWriter w = new BitWriter(bits + 112);
+            w.write(32, 0x425a6800 | level); // "BZh" + level
+            w.copy(buf, pos, bits);
+            w.write(48, EOS_MAGIC);
+            w.write(32, crc);
+            return new Segment(w.toByteArray(), level, bits, crc);
+        }
+
+        Segment merge(final Segment next) {
+            final BitWriter w = new BitWriter(blockBits + next.blockBits + 112);
+            w.write(32, 0x425a6800 | level);
+            w.copy(stream, 32, blockBits);
+            w.copy(next.stream, 32, next.blockBits);
+            w.write(48, EOS_MAGIC);
+            w.write(32, crc);
+            return new Segment(w.toByteArray(), level, blockBits + next.blockBits, crc);
+        }
+    }
+
+    private static final class BitWriter {
+        private final byte[] buf;
+        private int size;
+        private long acc;
+        private int accBits;
+
+        BitWriter(final long bits) {
+            buf = new byte[(int) ((bits + 7) >>> 3)];
+        }
+
+        void write(final int n, final long v) { // n must not exceed 56
+            acc = (acc << n) | (v & ((1L << n) - 1));
+            accBits += n;
+            while (accBits >= 8) {
+                accBits -= 8;
+                buf[size++] = (byte) (acc >>> accBits);
+            }
+        }
+
+        void copy(final byte[] src, long pos, long bits) {
+            while (bits > 0) {
+                final int n = (int) Math.min(bits, 48);
+                write(n, bitsAt(src, pos, n));
+                pos += n;
+                bits -= n;
+            }
+        }
+
+        byte[] toByteArray() {
+            if (accBits > 0) {
+                buf[size++] = (byte) (acc << (8 - accBits));
+                accBits = 0;
+            }
+            return size == buf.length ? buf : Arrays.copyOf(buf, size);
+        }
+    }
+
+    /**
+     * Splits the compressed input in segments; positions are bit offsets in buf.
+     */
+    private static final class Scanner {
+        private final InputStream in;
+        private byte[] buf = new byte[1 << 20];
+        private int len; // valid bytes in buf
+        private boolean atHeader = true; // next segment starts with a stream header
+        private boolean first = true; // first stream of the input
+        private int level;
+        private long segStart; // start of the current block, or of the next header
+        private long eosAt = -1; // end of stream magic found, it is returned by the next call
+        private int scanPos; // next byte to be shifted in reg
+        private long reg; // last bytes scanned
+        private int combinedCRC; // combined CRC of the stored block CRCs, used to validate the end of stream magic
+
+        Scanner(final InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Returns the next segment, null at the end of input.
+         */
+        Segment next() throws IOException {
+            compact();
+            if (eosAt >= 0) {
+                return endOfStream();
+            }
+            if (atHeader) {
+                final int p = (int) (segStart >>> 3);
+                if (!first && !fill(p + 1)) {
+                    return null;
+                }
+                if (!fill(p + 4) || buf[p] != 'B' || buf[p + 1] != 'Z' || buf[p + 2] != 'h'
+                    || buf[p + 3] < '1' || buf[p + 3] > '9') {
+                    throw new IOException(first
+                        ? "Stream is not in the BZip2 format"
+                        : "Garbage after a valid BZip2 stream");
+                }
+                level = buf[p + 3];
+                first = false;
+                atHeader = false;
+                combinedCRC = 0;
+                segStart += 32;
+                if (!fill(p + 10)) {
+                    throw new IOException("unexpected end of stream");
+                }
+                final long magic = bitsAt(buf, segStart, 48);
+                if (magic == EOS_MAGIC) { // empty stream
+                    eosAt = segStart;
+                    return endOfStream();
+                }
+                if (magic != BLOCK_MAGIC) {
+                    throw new IOException("bad block header");
+                }
+                scanPos = (int) (segStart >>> 3);
+                reg = 0;
+            }
+            while (true) {
+                if (scanPos == len && !fill(scanPos + 1)) {
+                    throw new IOException("unexpected end of stream");
+                }
+                reg = (reg << 8) | (buf[scanPos++] & 0xff);
+                final long end = (long) scanPos << 3;
+                for (int k = 7; k >= 0; k--) {
+                    final long start = end - k - 48;
+                    if (start < segStart + 80) { // magic and CRC of the current block
+                        continue;
+                    }
+                    final long magic = (reg >>> k) & MAGIC_MASK;
+                    if (magic == BLOCK_MAGIC) {
+                        return cut(start);
+                    }
+                    if (magic == EOS_MAGIC && isEndOfStream(start)) {
+                        eosAt = start;
+                        return cut(start);
+                    }
+                }
+            }
+        }
+
+        private Segment cut(final long end) {
+            final Segment s = Segment.of(level, buf, segStart, end - segStart);
+            combinedCRC = ((combinedCRC << 1) | (combinedCRC >>> 31)) ^ s.crc;
+            segStart = end;
+            return s;
+        }
+
+        private Segment endOfStream() throws IOException {
+            if (!fill((int) ((eosAt + 80 + 7) >>> 3))) {
+                throw new IOException("unexpected end of stream");
+            }
+            final int crc = (int) bitsAt(buf, eosAt + 48, 32);
+            segStart = ((eosAt + 80 + 7) >>> 3) << 3; // streams start at byte boundaries
+            eosAt = -1;
+            atHeader = true;
+            return new Segment(null, level, 0, crc);
+        }
+
+        /**
+         * Checks that an end of stream magic is not a chance occurrence inside the current block: either the stored combined CRC
+         * is the expected one, or the end of input or another stream follows.
+         */
+        private boolean isEndOfStream(final long start) throws IOException {
+            final int p = (int) ((start + 80 + 7) >>> 3);
+            if (!fill(p)) {
+                return false;
+            }
+            final int crc = (int) bitsAt(buf, segStart + 48, 32);
+            if ((int) bitsAt(buf, start + 48, 32) == (((combinedCRC << 1) | (combinedCRC >>> 31)) ^ crc)) {
+                return true;
+            }
+            if (!fill(p + 1)) {
+                return true;
+            }
+            return fill(p + 3) && buf[p] == 'B' && buf[p + 1] == 'Z' && buf[p + 2] == 'h';
+        }
+
+        /**
+         * Reads input until buf holds at least n bytes, returns false if the end of input is reached before.
+         */
+        private boolean fill(final int n) throws IOException {
+            while (len < n) {
+                if (len == buf.length) {
+                    buf = Arrays.copyOf(buf, 2 * buf.length);
+                }
+                final int r = in.read(buf, len, buf.length - len);
+                if (r < 0) {
+                    return false;
+                }
+                len += r;
+            }
+            return true;
+        }
+
+        /**
+         * Discards the bytes preceding the current segment.
+         */
+        private void compact() {
+            final int drop = (int) (segStart >>> 3);
+            if (drop > 0) {
+                System.arraycopy(buf, drop, buf, 0, len - drop);
+                len -= drop;
+                scanPos = Math.max(scanPos - drop, 0);
+                segStart -= (long) drop << 3;
+                if (eosAt >= 0) {
+                    eosAt -= (long) drop << 3;
+                }
+            }
+        }
+    }
+}
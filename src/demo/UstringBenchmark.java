@@ -0,0 +1,122 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package demo;
+import java.io.File;
+import java.util.*;
+
+import info.bliki.extensions.scribunto.engine.lua.interfaces.MwUstring;
+import wiki.TemplateParser;
+import wiki.tools.WikiPage;
+
+/*
+Benchmark of mw.ustring: the same workload is executed with the native Java implementation and with the pure-Lua
+implementation (ustring.lua), the results of the two implementations are compared.
+
+The workload is made of:
+- a Lua module calling len, sub, codepoint, char, find, match, gmatch and gsub on multilingual text
+- if demo/templates.dat and demo/modules.dat are available, the rendering of every template found in templates.dat
+
+compile: javac -encoding UTF-8  -cp .;lib\luaj-jse-3.0.2q.jar demo\UstringBenchmark.java
+
+usage:  java -cp .;lib\luaj-jse-3.0.2q.jar;scripts demo.UstringBenchmark [iterations]
+
+*/
+public class UstringBenchmark {
+	final static String module = "local p = {}\n"
+		+ "local words = { 'time', 'héllo wörld', 'Ελληνικά γλώσσα', 'русский язык', '日本語のテキスト', 'naïve café', 'ﬁne ŉ Ǆ' }\n"
+		+ "function p.run(frame)\n"
+		+ "	local U = mw.ustring\n"
+		+ "	local out = {}\n"
+		+ "	for i = 1, tonumber(frame.args[1]) do\n"
+		+ "		for _, w in ipairs(words) do\n"
+		+ "			local n = U.len(w)\n"
+		+ "			local s = U.sub(w, 2, n - 1) .. U.char(U.codepoint(w, 1, 2))\n"
+		+ "			local a, b = U.find(w, '%s(%w+)')\n"
+		+ "			local m = U.match(w, '^(%w+)') or ''\n"
+		+ "			local g = U.gsub(w, '[%p%s]', '_')\n"
+		+ "			local c = 0\n"
+		+ "			for x in U.gmatch(w, '%w') do c = c + 1 end\n"
+		+ "			if i == 1 then out[#out + 1] = table.concat({ n, s, tostring(a), tostring(b), m, g, c }, '|') end\n"
+		+ "		end\n"
+		+ "	end\n"
+		+ "	return table.concat(out, '\\n')\n"
+		+ "end\n"
+		+ "return p\n";
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		HashMap<String, String> name2template = new HashMap<>();
+		HashMap<String, String> name2module = new HashMap<>();
+		if (new File("demo/templates.dat").exists() && new File("demo/modules.dat").exists()) {
+			WikiFind.readfile(name2template, "demo/templates.dat", false);
+			WikiFind.readfile(name2module, "demo/modules.dat", false);
+		}
+		name2module.put("UstringBenchmark", module);
+
+		ArrayList<String> names = new ArrayList<>(new TreeSet<>(name2template.keySet()));
+		TemplateParser warmup = new TemplateParser();
+		for (String name : names)//compiles modules once, both runs use the shared prototype cache
+			run(warmup, name2template, name2module, "{{" + name + "}}");
+
+		String[][] results = new String[2][];
+		for (int k = 0; k < 2; k++) {
+			boolean is_native = k == 0;
+			MwUstring.setNative(is_native);
+			String label = is_native ? "native" : "lua   ";
+			TemplateParser tp = new TemplateParser();
+
+			run(tp, name2template, name2module, "{{#invoke:UstringBenchmark|run|1}}");//warm-up
+			long start = System.nanoTime();
+			String micro = run(tp, name2template, name2module, "{{#invoke:UstringBenchmark|run|" + iterations + "}}");
+			System.out.println(label + " module: " + (System.nanoTime() - start) / 1000000 + " ms (" + iterations + " iterations)");
+
+			ArrayList<String> pages = new ArrayList<>();
+			pages.add(micro);
+			start = System.nanoTime();
+			for (String name : names)
+				pages.add(run(tp, name2template, name2module, "{{" + name + "}}"));
+			if (!names.isEmpty())
+				System.out.println(label + " templates: " + (System.nanoTime() - start) / 1000000 + " ms (" + names.size() + " templates)");
+			results[k] = pages.toArray(new String[0]);
+		}
+		MwUstring.setNative(true);
+
+		int diff = 0;
+		for (int i = 0; i < results[0].length; i++)
+			if (!results[0][i].equals(results[1][i])) {
+				System.out.println("different result: " + (i == 0 ? "module" : names.get(i - 1)));
+				diff++;
+			}
+		System.out.println("pages with different result: " + diff);
+	}
+
+	private static String run(TemplateParser tp, HashMap<String, String> name2template, HashMap<String, String> name2module, String text) {
+		WikiPage wp = new WikiPage("benchmark", new Date(0), Locale.ENGLISH, tp, name2template, name2module, false, null, true);
+		try {
+			return tp.parse(text, wp);
+		} catch (RuntimeException ex) {
+			return ex.toString();
+		}
+	}
+}
@@ -29,6 +29,8 @@ import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 
+import wiki.tools.MultistreamDump;
+import wiki.tools.PageStore;
 import wiki.tools.WikiFormatter;
 import wiki.tools.WikiPage;
 import wiki.TemplateParser;
@@ -44,10 +46,16 @@ This application requires the following files generated by WikiSplitter:
 - templates.dat: line oriented text file with templates
 - modules.dat: line oriented text file with modules
 
+If the page stores wiki.pgs, templates.pgs and modules.pgs are available (see WikiSplitter option -store or wiki.tools.PageStore),
+they are used instead of *.dat files: pages are memory-mapped and decoded on demand, so the startup is immediate.
+
+With option -dump the pages are read directly from a multistream dump with its index, see wiki.tools.MultistreamDump, without
+splitting it: e.g. enwiktionary-latest-pages-articles-multistream.xml.bz2 and enwiktionary-latest-pages-articles-multistream-index.txt.bz2
+
 
 compile: javac -encoding UTF-8  -cp .;lib\luaj-jse-3.0.2q.jar demo\WikiFind.java
 
-usage:  java -cp .;lib\luaj-jse-3.0.2q.jar demo.WikiFind -random|-longest|<word>
+usage:  java -cp .;lib\luaj-jse-3.0.2q.jar demo.WikiFind [-dump <dump.xml.bz2> <index.txt.bz2>] -random|-longest|<word>
 
 */
 public class WikiFind {
@@ -55,7 +63,44 @@ public class WikiFind {
 
 	final static boolean plain = false;//disable html formatter
 
-	private static void doSearch(String keyword) throws IOException, ParseException {
+	private static void doSearch(String keyword, String dumpfile, String indexfile) throws IOException, ParseException {
+		if (dumpfile != null) {
+			try (MultistreamDump dump = MultistreamDump.open(dumpfile, indexfile)) {
+				if (keyword.equals("-random")) {
+					keyword = dump.randomTitle(new Random());
+					if (keyword == null) {//the sampled streams have no page of the main namespace
+						System.out.println("No page found");
+						return;
+					}
+				} else if (keyword.equals("-longest")) {
+					System.out.println("Option -longest is not supported with -dump");
+					return;
+				}
+				doRender(keyword, dump.templates(), dump.modules(), dump.pages(), dump.getHeader());
+				System.out.println(dump.getStreamsRead() + " streams decompressed for " + dump.getLookups() + " lookups");
+			}
+			return;
+		}
+		if (new File("demo/wiki" + PageStore.STORE_SUFFIX).exists()) {
+			try (PageStore name2template = PageStore.open("demo/templates" + PageStore.STORE_SUFFIX);
+				PageStore name2module = PageStore.open("demo/modules" + PageStore.STORE_SUFFIX);
+				PageStore name2content = PageStore.open("demo/wiki" + PageStore.STORE_SUFFIX)) {
+				if (keyword.equals("-random")) {
+					keyword = name2content.getTitle(new Random().nextInt(name2content.size()));
+				} else if (keyword.equals("-longest")) {
+					int length = 0;
+					for (int i = 0; i < name2content.size(); i++) {
+						int def_length = name2content.getContentLength(i);
+						if (def_length > length) {
+							length = def_length;
+							keyword = name2content.getTitle(i);
+						}
+					}
+				}
+				doRender(keyword, name2template, name2module, name2content, name2content.getHeader());
+			}
+			return;
+		}
 		HashMap<String, String> name2template = new HashMap<>();
 		HashMap<String, String> name2module = new HashMap<>();
 		HashMap<String, String> name2content = new HashMap<>();
@@ -63,8 +108,6 @@ public class WikiFind {
 		readfile(name2template, "demo/templates.dat", false);
 		readfile(name2module, "demo/modules.dat", false);
 		String firstline = readfile(name2content, "demo/wiki.dat", true);
-		int idx = firstline.indexOf("|");
-		String language = firstline.substring(0, idx);
 		if (keyword.equals("-random")) {
 			int rand = new Random().nextInt(name2content.size());
 			List<String> words = new ArrayList<>(name2content.keySet());
@@ -79,6 +122,13 @@ public class WikiFind {
 				}
 			}
 		}
+		doRender(keyword, name2template, name2module, name2content, firstline);
+	}
+
+	private static void doRender(String keyword, Map<String, String> name2template, Map<String, String> name2module,
+			Map<String, String> name2content, String firstline) throws IOException, ParseException {
+		int idx = firstline.indexOf("|");
+		String language = firstline.substring(0, idx);
 		String definition = name2content.get(keyword);
 		if (definition != null) {
 			System.out.println(keyword + " found, rendering and writing wiki.html");
@@ -138,16 +188,18 @@ public class WikiFind {
 	}
 
 	public static void main(String[] args) {
-		if (args.length == 1) {
-			String word = args[0];
+		if (args.length == 1 || args.length == 4 && args[0].equals("-dump")) {
+			String word = args[args.length - 1];
 			try {
-				doSearch(word);
+				if (args.length == 4)
+					doSearch(word, args[1], args[2]);
+				else doSearch(word, null, null);
 			} catch(ParseException | IOException e) {
 				e.printStackTrace();
 			}
 
 		} else {
-			System.out.println("Usage: java wiki.WikiFind -random|-longest|<word>");
+			System.out.println("Usage: java wiki.WikiFind [-dump <dump.xml.bz2> <index.txt.bz2>] -random|-longest|<word>");
 		}
 	}
 }
\ No newline at end of file
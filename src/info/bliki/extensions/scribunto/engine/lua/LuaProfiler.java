@@ -0,0 +1,224 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package info.bliki.extensions.scribunto.engine.lua;
+
+import org.luaj.vm2.Prototype;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Profiler of Lua modules, enabled by TemplateParser.setLuaProfiler() and shared by all engines and threads, so that a batch is aggregated.
+While a #invoke runs, its engine records three kinds of frames:
+- INVOKE: the #invoke itself, named #invoke:<module>|<function>
+- FUNCTION: a Lua function, named <chunk>:<line where it is defined>, the main chunk is named <chunk>:main
+- CALLBACK: a Java function of the mw interfaces, e.g. mw.preprocess, mw.expandTemplate or mw.ustring.find
+For each frame the number of calls, the inclusive time (counted once for recursive calls) and the exclusive time are aggregated;
+the exclusive time is also aggregated per call stack, see writeCollapsedStacks(). Functions running in coroutines are accounted
+to the caller of coroutine.resume().
+*/
+public final class LuaProfiler {
+	public enum Kind {INVOKE, FUNCTION, CALLBACK}
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, LongAdder> stacks = new ConcurrentHashMap<>();//frames separated by ';' -> exclusive time in ns
+
+	public final static class Entry {
+		private final String name;
+		private final String module;//module, chunk or interface of the frame
+		private final Kind kind;
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder inclusive = new LongAdder();//ns
+		private final LongAdder exclusive = new LongAdder();//ns
+
+		Entry(String name, String module, Kind kind) {
+			this.name = name;
+			this.module = module;
+			this.kind = kind;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getModule() {
+			return module;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public long getCalls() {
+			return calls.sum();
+		}
+
+		public long getInclusiveTime() {//ns
+			return inclusive.sum();
+		}
+
+		public long getExclusiveTime() {//ns
+			return exclusive.sum();
+		}
+	}
+
+	final class Recorder {//records the frames of an engine, used by a single thread
+		private final IdentityHashMap<Prototype, Entry> functions = new IdentityHashMap<>();
+		private Entry[] entry = new Entry[64];
+		private long[] start = new long[64];
+		private long[] children = new long[64];//inclusive time of the frames called by the frame
+		private int[] path_length = new int[64];
+		private final StringBuilder path = new StringBuilder();
+		private int depth;
+
+		LuaProfiler getProfiler() {
+			return LuaProfiler.this;
+		}
+
+		int enter(Prototype p) {//returns the depth of the new frame, see exitTo()
+			Entry e = functions.get(p);
+			if (e == null)
+				functions.put(p, e = entry(p.shortsource() + ":" + (p.linedefined == 0 ? "main" : Integer.toString(p.linedefined)), p.shortsource(), Kind.FUNCTION));
+			return enter(e);
+		}
+
+		int enter(String name, String module, Kind kind) {
+			return enter(entry(name, module, kind));
+		}
+
+		private int enter(Entry e) {
+			if (depth == entry.length) {
+				int length = depth * 2;
+				entry = Arrays.copyOf(entry, length);
+				start = Arrays.copyOf(start, length);
+				children = Arrays.copyOf(children, length);
+				path_length = Arrays.copyOf(path_length, length);
+			}
+			entry[depth] = e;
+			path_length[depth] = path.length();
+			if (depth > 0)
+				path.append(';');
+			path.append(e.name);
+			children[depth] = 0;
+			start[depth] = System.nanoTime();
+			return depth++;
+		}
+
+		void exit() {
+			if (depth == 0)
+				return;
+			long now = System.nanoTime();
+			int d = --depth;
+			Entry e = entry[d];
+			long inclusive = now - start[d];
+			long exclusive = inclusive - children[d];
+			e.calls.increment();
+			e.exclusive.add(exclusive);
+			if (!active(e, d))
+				e.inclusive.add(inclusive);
+			stacks.computeIfAbsent(path.toString(), k -> new LongAdder()).add(exclusive);
+			path.setLength(path_length[d]);
+			entry[d] = null;
+			if (d > 0)
+				children[d - 1] += inclusive;
+		}
+
+		void exitTo(int mark) {//exits the frame at depth mark and the ones above it
+			while (depth > mark)
+				exit();
+		}
+
+		private boolean active(Entry e, int d) {//true if e is called also below depth d, i.e. the call is recursive
+			for (int i = 0; i < d; i++)
+				if (entry[i] == e)
+					return true;
+			return false;
+		}
+	}
+
+	static Recorder recorder(Recorder recorder, LuaProfiler profiler) {//recorder of an engine for profiler, recorder is reused if possible
+		if (profiler == null)
+			return null;
+		return recorder != null && recorder.getProfiler() == profiler ? recorder : profiler.new Recorder();
+	}
+
+	private Entry entry(String name, String module, Kind kind) {
+		return entries.computeIfAbsent(name.replace(';', ':'), key -> new Entry(key, module, kind));
+	}
+
+	public void clear() {
+		entries.clear();
+		stacks.clear();
+	}
+
+	public ArrayList<Entry> getEntries() {//sorted by decreasing exclusive time
+		ArrayList<Entry> list = new ArrayList<>(entries.values());
+		list.sort((e1, e2) -> Long.compare(e2.getExclusiveTime(), e1.getExclusiveTime()));
+		return list;
+	}
+
+	public String report(int top) {//modules and top functions, sorted by decreasing exclusive time
+		ArrayList<Entry> list = getEntries();
+		HashMap<String, long[]> modules = new HashMap<>();//module -> invokes, inclusive and exclusive time
+		for (Entry e : list) {
+			long[] total = modules.computeIfAbsent(e.module, k -> new long[3]);
+			if (e.kind == Kind.INVOKE) {
+				total[0] += e.getCalls();
+				total[1] += e.getInclusiveTime();
+			}
+			total[2] += e.getExclusiveTime();
+		}
+		ArrayList<Map.Entry<String, long[]>> sorted = new ArrayList<>(modules.entrySet());
+		sorted.sort((e1, e2) -> Long.compare(e2.getValue()[2], e1.getValue()[2]));
+		StringBuilder sb = new StringBuilder("Lua profile, modules:\n");
+		sb.append(String.format(Locale.ROOT, "%10s %12s %12s  %s%n", "invokes", "incl. ms", "excl. ms", "module"));
+		for (int i = 0; i < sorted.size() && i < top; i++) {
+			long[] total = sorted.get(i).getValue();
+			sb.append(String.format(Locale.ROOT, "%10d %12.1f %12.1f  %s%n", total[0], total[1] / 1e6, total[2] / 1e6, sorted.get(i).getKey()));
+		}
+		sb.append("Lua profile, functions:\n");
+		sb.append(String.format(Locale.ROOT, "%10s %12s %12s  %s%n", "calls", "incl. ms", "excl. ms", "function"));
+		for (int i = 0; i < list.size() && i < top; i++) {
+			Entry e = list.get(i);
+			sb.append(String.format(Locale.ROOT, "%10d %12.1f %12.1f  %s%n", e.getCalls(), e.getInclusiveTime() / 1e6, e.getExclusiveTime() / 1e6, e.name));
+		}
+		return sb.toString();
+	}
+
+	public void writeCollapsedStacks(Writer out) throws IOException {//one line per call stack with its exclusive time in microseconds, input of flamegraph.pl
+		for (Map.Entry<String, LongAdder> stack : stacks.entrySet()) {
+			long us = stack.getValue().sum() / 1000;
+			if (us > 0)
+				out.write(stack.getKey() + " " + us + "\n");
+		}
+	}
+}
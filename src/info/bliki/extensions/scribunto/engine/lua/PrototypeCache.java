@@ -0,0 +1,146 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package info.bliki.extensions.scribunto.engine.lua;
+
+import org.luaj.vm2.Prototype;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Process-wide cache of compiled Lua chunks, shared by all ScribuntoLuaEngine instances and threads.
+A Prototype is immutable once compiled, so the same Prototype can be wrapped in a LuaClosure of any Globals.
+
+Entries are keyed by chunk name and hash of the source; the source itself is kept to rule out collisions,
+so a module changed in a different site or dump is compiled again. Each source is compiled exactly once,
+also in case of concurrent requests. When the cache grows beyond its bound, the least recently used quarter
+of the entries is evicted.
+*/
+public final class PrototypeCache {
+	public final static int DEFAULT_MAX_ENTRIES = 4096;
+
+	private final static PrototypeCache shared = new PrototypeCache(DEFAULT_MAX_ENTRIES);
+
+	public interface Compiler {//compiles the given source, invoked only in case of cache miss
+		Prototype compile(String source) throws IOException;
+	}
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final int max_entries;
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public PrototypeCache(int max_entries) {
+		if (max_entries < 1)
+			throw new IllegalArgumentException("max_entries must be positive");
+		this.max_entries = max_entries;
+	}
+
+	public static PrototypeCache getShared() {
+		return shared;
+	}
+
+	public Prototype get(String name, String source, Compiler compiler) throws IOException {
+		final String key = name + '#' + Integer.toHexString(source.hashCode()) + '/' + source.length();
+		Entry entry = entries.get(key);
+		if (entry == null || !entry.source.equals(source)) {//missing or hash collision: latest source wins
+			final Entry fresh = new Entry(source);
+			entry = entries.compute(key, (k, old) -> old != null && old.source.equals(source) ? old : fresh);
+			if (entry == fresh && entries.size() > max_entries)
+				evict();
+		}
+		entry.last_used = clock.incrementAndGet();
+		return entry.get(compiler);
+	}
+
+	private synchronized void evict() {//drop the least recently used quarter of entries
+		int excess = entries.size() - max_entries;
+		if (excess <= 0)
+			return;
+		ArrayList<Map.Entry<String, Entry>> list = new ArrayList<>(entries.entrySet());
+		list.sort((a, b) -> Long.compare(a.getValue().last_used, b.getValue().last_used));
+		int count = Math.min(list.size(), excess + max_entries / 4);
+		for (int i = 0; i < count; i++) {
+			Map.Entry<String, Entry> e = list.get(i);
+			if (entries.remove(e.getKey(), e.getValue()))
+				evictions.incrementAndGet();
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {//number of compilations
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PrototypeCache: size=" + entries.size() + ", hits=" + hits.get() + ", misses=" + misses.get() + ", evictions=" + evictions.get();
+	}
+
+	private final class Entry {
+		final String source;
+		volatile long last_used;
+		private volatile Prototype prototype;
+
+		Entry(String source) {
+			this.source = source;
+		}
+
+		Prototype get(Compiler compiler) throws IOException {
+			Prototype result = prototype;
+			if (result != null) {
+				hits.incrementAndGet();
+				return result;
+			}
+			synchronized (this) {//other threads requesting the same chunk wait for the compilation in progress
+				result = prototype;
+				if (result == null) {
+					misses.incrementAndGet();
+					prototype = result = compiler.compile(source);//in case of error nothing is cached, next request will retry
+				} else hits.incrementAndGet();
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package info.bliki.extensions.scribunto.engine.lua;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import wiki.tools.SiteContext;
+import wiki.tools.WikiPage;
+
+/*
+Pool of pre-initialized ScribuntoLuaEngine instances, an engine is bound to a page for the duration of a render.
+Creation of an engine loads the Lua standard libraries and all mw interfaces, that is the main cost of #invoke
+when many pages are rendered. The pool can be shared by several worker threads.
+
+At most max_size engines are created by the pool; when all of them are in use, borrow() waits up to borrow_timeout
+for a returned engine, then creates an extra engine that is discarded on release if the pool is full; extra engines are
+counted in getCreatedCount() while they are in use.
+An engine is tied to the SiteContext of the page used to create it; an idle engine of another site is discarded by borrow().
+
+Usage:
+	ScribuntoEnginePool pool = new ScribuntoEnginePool(4, 1000);
+	wp.setEnginePool(pool);//WikiPage borrows an engine at first #invoke
+	tp.parse(text, wp);
+	wp.releaseScribuntoEngine();//engine is returned to the pool
+*/
+public final class ScribuntoEnginePool {
+	public final static long DEFAULT_BORROW_TIMEOUT = 1000;//milliseconds
+
+	private final ArrayBlockingQueue<ScribuntoLuaEngine> idle;
+	private final int max_size;
+	private final long borrow_timeout;//milliseconds
+	private final AtomicInteger created = new AtomicInteger();//engines owned by the pool, including the extra engines in use
+
+	private final AtomicLong borrows = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();//idle engine available at borrow time
+	private final AtomicLong waits = new AtomicLong();//engine obtained after waiting
+	private final AtomicLong timeouts = new AtomicLong();//extra engine created after timeout
+	private final AtomicLong wait_time = new AtomicLong();//nanoseconds spent waiting
+
+	public ScribuntoEnginePool(int max_size, long borrow_timeout) {
+		if (max_size < 1)
+			throw new IllegalArgumentException("max_size must be positive");
+		this.max_size = max_size;
+		this.borrow_timeout = borrow_timeout;
+		idle = new ArrayBlockingQueue<>(max_size);
+	}
+
+	public ScribuntoEnginePool(int max_size) {
+		this(max_size, DEFAULT_BORROW_TIMEOUT);
+	}
+
+	public ScribuntoEnginePool() {//one engine per available processor
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public void prestart(SiteContext site, int count) {//creates up to count idle engines in advance, for pages of the given site
+		while (count-- > 0 && reserve())
+			idle.offer(create(site, null));
+	}
+
+	public ScribuntoLuaEngine borrow(WikiPage wp) {
+		borrows.incrementAndGet();
+		ScribuntoLuaEngine engine = sameSite(idle.poll(), wp);
+		if (engine != null)
+			hits.incrementAndGet();
+		else if (reserve())
+			return create(wp.getSite(), wp);
+		else {
+			long start = System.nanoTime();
+			try {
+				engine = idle.poll(borrow_timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			wait_time.addAndGet(System.nanoTime() - start);
+			if (engine != null && (engine = sameSite(engine, wp)) == null && reserve())
+				return create(wp.getSite(), wp);//replaces the discarded engine
+			if (engine == null) {
+				timeouts.incrementAndGet();
+				created.incrementAndGet();//extra engine, its slot is freed when it is discarded by release()
+				return create(wp.getSite(), wp);
+			}
+			waits.incrementAndGet();
+		}
+		engine.setWikiPage(wp);
+		return engine;
+	}
+
+	public void release(ScribuntoLuaEngine engine) {
+		engine.setWikiPage(null);//reset engine and do not keep a reference to the page
+		if (!idle.offer(engine))//discarded if the pool is full
+			created.decrementAndGet();
+	}
+
+	private ScribuntoLuaEngine create(SiteContext site, WikiPage wp) {//creates the engine of a slot already counted in created
+		try {
+			return new ScribuntoLuaEngine(site, wp);
+		} catch (RuntimeException | Error ex) {
+			created.decrementAndGet();//the slot becomes available again
+			throw ex;
+		}
+	}
+
+	private ScribuntoLuaEngine sameSite(ScribuntoLuaEngine engine, WikiPage wp) {//returns null if engine is null or it belongs to another site
+		if (engine == null || engine.getSite() == wp.getSite())
+			return engine;
+		created.decrementAndGet();//engine is discarded, its slot becomes available
+		return null;
+	}
+
+	private boolean reserve() {//reserves a slot for a new engine, if max_size is not reached
+		int n;
+		do {
+			n = created.get();
+			if (n >= max_size)
+				return false;
+		} while (!created.compareAndSet(n, n + 1));
+		return true;
+	}
+
+	public int getMaxSize() {
+		return max_size;
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public int getCreatedCount() {
+		return created.get();
+	}
+
+	public long getBorrowCount() {
+		return borrows.get();
+	}
+
+	public long getHitCount() {
+		return hits.get() + waits.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	public double getHitRatio() {
+		long n = borrows.get();
+		return n == 0 ? 0 : (double) getHitCount() / n;
+	}
+
+	@Override
+	public String toString() {
+		return "ScribuntoEnginePool: size=" + created.get() + "/" + max_size + ", idle=" + idle.size() + ", borrows=" + borrows.get()
+			+ ", hits=" + hits.get() + ", waits=" + waits.get() + ", timeouts=" + timeouts.get()
+			+ ", wait time=" + wait_time.get() / 1000000 + " ms" + String.format(", hit ratio=%.2f", getHitRatio());
+	}
+}
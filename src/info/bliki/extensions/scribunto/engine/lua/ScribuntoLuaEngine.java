@@ -32,6 +32,7 @@ import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Prototype;
 import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.DebugLib;
 import org.luaj.vm2.lib.OneArgFunction;
 import org.luaj.vm2.lib.ResourceFinder;
 import org.luaj.vm2.lib.ThreeArgFunction;
@@ -50,10 +51,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 import wiki.parserfunctions.ParserFunction;
-import wiki.parserfunctions.ParserFunctions;
+import wiki.DiagnosticSink;
+import wiki.ExpansionLimits;
+import wiki.JfrEvents;
 import wiki.MagicWords;
+import wiki.TemplateMemo;
+import wiki.tools.SiteContext;
 import wiki.tools.WikiPage;
-import static wiki.NameSpaces.getNameSpaceNumber;
 import static wiki.NameSpaces.getNameSpaceByNumber;
 
 public final class ScribuntoLuaEngine implements MwInterface {
@@ -63,30 +67,48 @@ public final class ScribuntoLuaEngine implements MwInterface {
     private Frame currentFrame;
     private final Map<String,Frame> childFrames = new HashMap<>();
     private int expensiveFunctionCount;
-
-	private final Map<String, Prototype> compileCache = new HashMap<>();
+    private int running;//depth of nested executions
+    private int invocations;//depth of nested calls of invoke(), the budgets of scripts are counted from the outermost one
+    private long invoke_start;//System.nanoTime() at the start of the outermost invoke(), see checkBudget()
+    private long instructions;//Lua instructions executed since invoke_start, counted by BudgetHook
+    private long next_check;//value of instructions at which BudgetHook calls checkBudget()
+    private ExpansionLimits.Limit exceeded;//budget exhausted by the outermost invoke(), null if the module can run
+    private static final int CHECK_INTERVAL = 1000;//instructions between two checks of time budgets
+    private LuaProfiler.Recorder recorder;//records the frames of invoke() if profiling is enabled, see TemplateParser.setLuaProfiler()
+
+	private final static PrototypeCache prototypeCache = PrototypeCache.getShared();//compiled chunks shared by all engines
     private final MwInterface[] interfaces;
+    private final MwTitle mwTitle;
+    private final MwLanguage mwLanguage;
 
-    private final WikiPage wp;
+    private final SiteContext site;//the engine can be bound only to pages of this site
+    private WikiPage wp;//may be null for an engine not yet bound to a page, see ScribuntoEnginePool
 
 	private final boolean debug = false;
 
 	public ScribuntoLuaEngine(WikiPage wp) {
+		this(wp.getSite(), wp);
+	}
+
+	public ScribuntoLuaEngine(SiteContext site, WikiPage wp) {//wp may be null, see setWikiPage()
+		this.site = site;
 		this.wp = wp;
-		globals = ENABLE_LUA_DEBUG_LIBRARY ? JsePlatform.debugGlobals() : JsePlatform.standardGlobals();
+		globals = JsePlatform.standardGlobals();
+		if (ENABLE_LUA_DEBUG_LIBRARY)
+			globals.load(new BudgetHook());//debug library, which also counts instructions
         globals.finder = new LuaResourceFinder(globals.finder);
 
 		extendGlobals(globals);
 
         this.interfaces = new MwInterface[] {
-            new MwSite(wp),
+            new MwSite(site),
             new MwUstring(),
-            new MwTitle(wp),
+            mwTitle = new MwTitle(site, wp),
             new MwText(),
             new MwUri(),
             new MwMessage(),
             new MwHtml(),
-            new MwLanguage(wp),
+            mwLanguage = new MwLanguage(wp),
         };
 
         try {
@@ -103,19 +125,128 @@ public final class ScribuntoLuaEngine implements MwInterface {
 				System.out.println(entry.getKey() + " => " + entry.getValue());
 			}
 		}
-        Prototype prototype = compileCache.get(moduleName);
-        if (prototype == null) {
+        final boolean outermost = invocations++ == 0;
+        if (outermost)
+            recorder = LuaProfiler.recorder(recorder, wp.getTemplateParser().getLuaProfiler());
+        final int mark = recorder == null ? 0 : recorder.enter("#invoke:" + moduleName + "|" + functionName, moduleName, LuaProfiler.Kind.INVOKE);
+        final JfrEvents.Invoke event = new JfrEvents.Invoke();
+        event.begin();
+        String result = null;
+        try {
+            if (outermost)
+                startBudget();
+            final String chunkName = moduleChunkName(moduleName);
+            final Prototype prototype;
             try {
-				prototype = globals.compilePrototype(new ByteArrayInputStream(getRawWikiContent(moduleName).getBytes(StandardCharsets.UTF_8)), moduleName);
-				compileCache.put(moduleName, prototype);
+                prototype = prototypeCache.get(chunkName, getRawWikiContent(moduleName), source -> compileModule(source, chunkName));
             } catch (LuaError | IOException e) {
                 throw new ScribuntoException(e);
             }
+            final Frame frame = new Frame(chunkName, params, parent, isSubst);
+            final LuaValue function = loadFunction(functionName, prototype, frame);
+
+            return result = executeFunctionChunk(function, frame);
+        } catch (LuaError | ScribuntoException e) {
+            if (exceeded != null)//the error is due to the exhausted budget, whatever the module did with it
+                throw new ScribuntoException(exceeded.getMessage());
+            throw e;
+        } finally {
+            event.end(wp, moduleName, functionName, result);
+            if (recorder != null)
+                recorder.exitTo(mark);
+            if (--invocations == 0)
+                wp.getLimitState().addScript(instructions, System.nanoTime() - invoke_start);
+        }
+    }
+
+    private void startBudget() throws ScribuntoException {//opens the budget of the outermost invoke(), it fails if a budget of the page is exhausted
+        invoke_start = System.nanoTime();
+        instructions = 0;
+        next_check = CHECK_INTERVAL;
+        exceeded = null;
+        try {
+            wp.getLimitState().checkScript(invoke_start, 0);
+        } catch (ExpansionLimits.LimitException ex) {
+            exceeded = ex.getLimit();
+            throw new ScribuntoException(ex.getMessage());
+        }
+    }
+
+    private void checkBudget() {//aborts the running module if a budget is exhausted, see ExpansionLimits
+        if (exceeded == null) {
+            try {
+                wp.getLimitState().checkScript(invoke_start, instructions);
+                next_check = instructions + CHECK_INTERVAL;
+                return;
+            } catch (ExpansionLimits.LimitException ex) {
+                exceeded = ex.getLimit();
+            }
+        }
+        next_check = 0;//the error is raised again at each instruction, so that pcall() cannot swallow it
+        throw new LuaError(exceeded.getMessage());
+    }
+
+    private boolean profiling() {//true if the frames of the running invoke() are recorded, coroutines are not profiled
+        return recorder != null && invocations > 0 && globals.running.isMainThread();
+    }
+
+    private final class BudgetHook extends DebugLib {//debug library, which also counts the instructions and records the frames for LuaProfiler
+        @Override
+        public void onInstruction(int pc, Varargs v, int top) {
+            if (invocations > 0 && ++instructions >= next_check)
+                checkBudget();
+            super.onInstruction(pc, v, top);
         }
-        final Frame frame = new Frame(getNameSpaceByNumber(828) + ":" + moduleName, params, parent, isSubst);
-        final LuaValue function = loadFunction(functionName, prototype, frame);
 
-        return executeFunctionChunk(function, frame);
+        @Override
+        public void onCall(LuaClosure c, Varargs varargs, LuaValue[] stack) {
+            if (profiling())
+                recorder.enter(c.p);
+            super.onCall(c, varargs, stack);
+        }
+
+        @Override
+        public void onReturn() {
+            if (profiling())
+                recorder.exit();
+            super.onReturn();
+        }
+    }
+
+    private final class Callback extends VarArgFunction {//callback of an interface, recorded while profiling
+        private final String name;
+        private final String iface;
+        private final LuaValue function;
+
+        Callback(String name, String iface, LuaValue function) {
+            this.name = name;
+            this.iface = iface;
+            this.function = function;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            if (!profiling())
+                return function.invoke(args);
+            final int mark = recorder.enter(name, iface, LuaProfiler.Kind.CALLBACK);
+            try {
+                return function.invoke(args);
+            } finally {
+                recorder.exitTo(mark);
+            }
+        }
+    }
+
+    private LuaTable profiled(String iface, LuaTable table) {//wraps the functions of an interface in callbacks
+        LuaValue key = LuaValue.NIL;
+        while (true) {
+            Varargs next = table.next(key);
+            if ((key = next.arg1()).isnil())
+                break;
+            if (next.arg(2).isfunction())
+                table.set(key, new Callback(iface + "." + key.tojstring(), iface, next.arg(2)));
+        }
+        return table;
     }
 
 
@@ -129,6 +260,7 @@ public final class ScribuntoLuaEngine implements MwInterface {
     }
 
     LuaValue loadFunction(String functionName, Prototype prototype, Frame frame) throws ScribuntoException {
+        final Frame previousFrame = currentFrame;//invocations may be nested, e.g. when a parameter is expanded on demand
         try {
             currentFrame = frame;
             LuaValue function =  new LuaClosure(prototype, globals).checkfunction().call().get(functionName);
@@ -139,22 +271,54 @@ public final class ScribuntoLuaEngine implements MwInterface {
         } catch (LuaError e) {
             throw new ScribuntoException(e);
         } finally {
-            currentFrame = null;
+            currentFrame = previousFrame;
         }
     }
 
 	String executeFunctionChunk(LuaValue luaFunction, Frame frame) {
+        final Frame previousFrame = currentFrame;
         try {
             currentFrame = frame;
+            running++;
             LuaValue executeFunction = globals.get("mw").get("executeFunction");
 
             final LuaString result = executeFunction.call(luaFunction).checkstring();
 			return new String(result.m_bytes, result.m_offset, result.m_length, StandardCharsets.UTF_8);
         } finally {
-            currentFrame = null;
+            running--;
+            currentFrame = previousFrame;
         }
     }
 
+    public WikiPage getWikiPage() {
+        return wp;
+    }
+
+    public SiteContext getSite() {
+        return site;
+    }
+
+    public void setWikiPage(WikiPage wp) {//binds the engine to another page of the same site, the engine is reset as done for a new page
+        if (isRunning())
+            throw new IllegalStateException("engine is running");
+        if (wp != null && wp.getSite() != site)
+            throw new IllegalArgumentException("page of another site");
+        resetEngine();
+        expensiveFunctionCount = 0;
+        this.wp = wp;
+        mwTitle.setWikiPage(wp);
+        mwLanguage.setWikiPage(wp);
+    }
+
+    private void checkLimits() {//called back by the module, aborts it if a budget is exhausted also without the instruction hook
+        if (invocations > 0)
+            checkBudget();
+    }
+
+    public boolean isRunning() {//true while a module function is executing, i.e. for nested invocations
+        return running > 0;
+    }
+
     private void load() throws IOException {
         load(new MwInit());
         load(this);
@@ -165,6 +329,29 @@ public final class ScribuntoLuaEngine implements MwInterface {
         stubTitleBlacklist();
         stubExecuteModule();
         stubWikiBase();
+        trackDependencies();
+    }
+
+    private void trackDependencies() {//functions whose result depends on time or page are reported to the memo of TemplateParser
+        final LuaValue os = globals.get("os");
+        trackDependency(os, "clock", TemplateMemo.Dependency.VOLATILE, 0);
+        trackDependency(os, "date", TemplateMemo.Dependency.VOLATILE, 2);//only without time argument
+        trackDependency(os, "time", TemplateMemo.Dependency.VOLATILE, 1);//only without table argument
+        trackDependency(globals.get("math"), "random", TemplateMemo.Dependency.VOLATILE, 0);//the sequence depends on the previous calls
+        trackDependency(globals.get("mw").get("title"), "getCurrentTitle", TemplateMemo.Dependency.PAGE, 0);
+    }
+
+    private void trackDependency(LuaValue library, String name, final TemplateMemo.Dependency dependency, final int nil_arg) {//nil_arg: the dependency exists only if this argument is nil, 0 means always
+        final LuaValue function = library.get(name);
+        if (function.isnil())
+            return;
+        library.set(name, new VarArgFunction() {
+            @Override public Varargs invoke(Varargs args) {
+                if (wp != null && (nil_arg == 0 || args.arg(nil_arg).isnil()))
+                    wp.addDependency(dependency);
+                return function.invoke(args);
+            }
+        });
     }
 
     private void stubTitleBlacklist() {
@@ -268,17 +455,16 @@ public final class ScribuntoLuaEngine implements MwInterface {
     private void load(MwInterface luaInterface) throws IOException {
         final String filename = fileNameForInterface(luaInterface);
 
-        try (InputStream is = globals.finder.findResource(filename)) {
-            if (is == null) {
-                throw new FileNotFoundException("could not find '"+filename+"'. Make sure it is on the classpath.");
-            }
-            final LuaValue pkg = globals.load(is, "@"+filename, "bt", globals).call();
-            final LuaValue setupInterface = pkg.get("setupInterface");
+        final Prototype prototype = loadResource("@"+filename, filename);
+        if (prototype == null) {
+            throw new FileNotFoundException("could not find '"+filename+"'. Make sure it is on the classpath.");
+        }
+        final LuaValue pkg = new LuaClosure(prototype, globals).call();
+        final LuaValue setupInterface = pkg.get("setupInterface");
 
-            if (!setupInterface.isnil()) {
-                globals.set("mw_interface", luaInterface.getInterface());
-                setupInterface.call(luaInterface.getSetupOptions());
-            }
+        if (!setupInterface.isnil()) {
+            globals.set("mw_interface", profiled(luaInterface.name(), luaInterface.getInterface()));
+            setupInterface.call(luaInterface.getSetupOptions());
         }
     }
 
@@ -305,12 +491,13 @@ public final class ScribuntoLuaEngine implements MwInterface {
         return new ThreeArgFunction() {
             @Override
             public LuaValue call(LuaValue frameId, LuaValue function, LuaValue args) {
+                checkLimits();
                 final String functionName = function.checkjstring();
 				int idx = functionName.indexOf(":");
 				String name = idx != -1 ? functionName.substring(0, idx) : functionName;
 				String param0 = idx != -1 ? functionName.substring(idx + 1) : null;
 
-				ParserFunction pf = ParserFunctions.get(name);
+				ParserFunction pf = site.getParserFunction(name);
 				if (debug)
 					System.out.println("callParserFunction: "+name);
 
@@ -325,7 +512,14 @@ public final class ScribuntoLuaEngine implements MwInterface {
 					}
 
 					Frame parent = null;
-					final String ret = pf.evaluate(wp, parameters, parent);
+					final JfrEvents.ParserFunction event = new JfrEvents.ParserFunction();
+					event.begin();
+					String ret = null;
+					try {
+						ret = pf.evaluate(wp, parameters, parent);
+					} finally {
+						event.end(wp, name, ret);
+					}
 					return ret == null ? NIL : LuaString.valueOf(ret);
 
                 } else {
@@ -336,7 +530,7 @@ public final class ScribuntoLuaEngine implements MwInterface {
 						final String processed = MagicWords.evaluate(mw, argument, wp);
                         return processed == null ? NIL : toLuaString(processed);
                     } else {
-                        System.out.println("unknown name:" + name);
+                        wp.getTemplateParser().getDiagnostics().report(DiagnosticSink.Event.UNKNOWN_FUNCTION, wp, name, null);
                     }
                 }
 				return NIL;
@@ -374,6 +568,7 @@ public final class ScribuntoLuaEngine implements MwInterface {
     private LuaValue preprocess() {
         return new TwoArgFunction() {
             @Override public LuaValue call(LuaValue frameId, LuaValue text) {
+				checkLimits();
 				if (debug)
 					System.out.println("preprocess: " + text);
 				return toLuaString(wp.getTemplateParser().parse(text.checkjstring(), wp));
@@ -385,6 +580,7 @@ public final class ScribuntoLuaEngine implements MwInterface {
         return new ThreeArgFunction() {
             @Override
             public LuaValue call(LuaValue frameId, LuaValue title, LuaValue args) {
+				checkLimits();
 				if (debug)
 					System.out.println("expandTemplate: " + title);
 				Map<String, String> parameterMap = luaParams(args);
@@ -402,6 +598,7 @@ public final class ScribuntoLuaEngine implements MwInterface {
         return new TwoArgFunction() {
             @Override
             public LuaValue call(LuaValue frameId, LuaValue name) {
+                checkLimits();
                 return getFrameById(frameId).getArgument(name.tojstring());
             }
         };
@@ -435,6 +632,7 @@ public final class ScribuntoLuaEngine implements MwInterface {
     private LuaValue getAllExpandedArguments() {
         return new OneArgFunction() {
             @Override public LuaValue call(LuaValue frameId) {
+                checkLimits();
                 return getFrameById(frameId).getAllArguments();
             }
         };
@@ -448,7 +646,7 @@ public final class ScribuntoLuaEngine implements MwInterface {
              */
             @Override
             public LuaValue call(LuaValue frameId, LuaValue title, LuaValue args) {
-				String ns = currentFrame.getNamespace();
+				String ns = currentFrame.getNamespace(site);
                 final Frame childFrame =
                         currentFrame.newChild(
                             (ns.isEmpty() ? "" : ns + ":") + title.checkjstring(),
@@ -480,33 +678,31 @@ public final class ScribuntoLuaEngine implements MwInterface {
     }
 
     private LuaValue loadModule(String chunkName) throws LuaError {
-        Prototype prototype = compileCache.get(chunkName);
-        if (prototype != null) {
-            return new LuaClosure(prototype, globals);
-        } else {
-            try (InputStream is = findPackage(chunkName)) {
-				if (is != null)
-	                return new LuaClosure(
-		                loadAndCache(is, chunkName),
-			            globals);
-				else return LuaValue.FALSE;//02-09-2024: return FALSE when package not found
-            } catch (ScribuntoException | IOException e) {
-                throw new LuaError(e);
-            }
+        try {
+            final Prototype prototype = findPackage(chunkName);
+            if (prototype != null)
+                return new LuaClosure(prototype, globals);
+            else return LuaValue.FALSE;//02-09-2024: return FALSE when package not found
+        } catch (LuaError e) {//compilation error
+            throw new LuaError(new ScribuntoException(e));
+        } catch (IOException e) {
+            throw new LuaError(e);
         }
     }
 
-    private Prototype loadAndCache(InputStream code, String chunkName) throws ScribuntoException {
-        try {
-            Prototype prototype = globals.compilePrototype(code, chunkName);
-            compileCache.put(chunkName, prototype);
-
-            return prototype;
-        } catch (LuaError | IOException e) {
-            throw new ScribuntoException(e);
+    private Prototype loadResource(String chunkName, String filename) throws IOException {//returns null if resource is not found
+        try (InputStream is = globals.finder.findResource(filename)) {
+            if (is == null)
+                return null;
+            final String source = new String(is.readAllBytes(), StandardCharsets.ISO_8859_1);//bytes are kept as they are
+            return prototypeCache.get(chunkName, source, src -> globals.compilePrototype(new ByteArrayInputStream(src.getBytes(StandardCharsets.ISO_8859_1)), chunkName));
         }
     }
 
+    private Prototype compileModule(String content, String chunkName) throws IOException {
+        return globals.compilePrototype(new ByteArrayInputStream(patchContent(content).getBytes(StandardCharsets.UTF_8)), chunkName);
+    }
+
     private OneArgFunction loadPHPLibrary() {
         return new OneArgFunction() {
             @Override public LuaValue call(LuaValue arg) {
@@ -519,12 +715,12 @@ public final class ScribuntoLuaEngine implements MwInterface {
         return luaInterface.name() + (luaInterface.name().endsWith(".lua") ? "" : ".lua");
     }
 
-    private InputStream findPackage(String name) throws IOException {
+    private Prototype findPackage(String name) throws IOException {
 		boolean isModule = false;
 		int idx = name.indexOf(":");
 		if (idx != -1) {
 			String ns = name.substring(0, idx);
-			Integer ns_id = getNameSpaceNumber(ns);
+			Integer ns_id = site.getNameSpaceNumber(ns);
 			if (ns_id != null && ns_id == 828)
 				isModule = true;
 		}
@@ -532,27 +728,33 @@ public final class ScribuntoLuaEngine implements MwInterface {
 		if (isModule) {
             return findModule(name.substring(idx + 1));
         } else {
-            InputStream is = globals.finder.findResource(name+".lua");
-            if (is != null) {
-                return is;
+            Prototype prototype = loadResource(name, name+".lua");
+            if (prototype != null) {
+                return prototype;
             } else {
                 throw new IOException("package "+name+" not found");
             }
         }
     }
 
-    private InputStream findModule(final String moduleName) throws IOException {
+    private String moduleChunkName(String moduleName) {//same chunk name for #invoke and require, whatever alias of the namespace is used, so that a module is compiled once
+        return getNameSpaceByNumber(828) + ":" + moduleName;
+    }
+
+    private Prototype findModule(final String moduleName) throws IOException {
 //System.out.println("findModule, name: " + moduleName);
-        try {
-            return new ByteArrayInputStream(getRawWikiContent(moduleName).getBytes(StandardCharsets.UTF_8));
-        } catch (FileNotFoundException e) {
+        final String chunkName = moduleChunkName(moduleName);
+        final String content = wp.getModule(moduleName);
+        if (content != null) {
+            return prototypeCache.get(chunkName, content, source -> compileModule(source, chunkName));
+        } else {
             // fall back to local files
             final String name = moduleName.replaceAll("[/:]", "_");
-            InputStream is = globals.finder.findResource(name+".lua");
-            if (is != null) {
-                return is;
+            Prototype prototype = loadResource(chunkName, name+".lua");
+            if (prototype != null) {
+                return prototype;
             } else {
-				System.out.println("Warning: file not found: " + moduleName);//02-09-2024: print warning instead of throw e;
+				wp.getTemplateParser().getDiagnostics().report(DiagnosticSink.Event.MODULE_MISSING, wp, moduleName, null);//02-09-2024: report instead of throw e;
                 return null;//02-09-2024: return null instead of throw e;
             }
         }
@@ -563,6 +765,10 @@ public final class ScribuntoLuaEngine implements MwInterface {
 		if (content == null) {
 			throw new FileNotFoundException("could not find module \"" + pageName + "\"");
 		}
+		return content;
+    }
+
+    private static String patchContent(String content) {//applied before compilation, the cache is keyed on the original content
 		//02-09-2024: patch to handle variable arguments ... as in old versions of LUA
 		int idx = 0;
 		while ((idx = content.indexOf("arg", idx)) != -1) {
@@ -694,7 +900,6 @@ public final class ScribuntoLuaEngine implements MwInterface {
         }		
 		
 		childFrames.clear();
-//		compileCache.clear();
 	}
 
     static class LuaResourceFinder implements ResourceFinder {
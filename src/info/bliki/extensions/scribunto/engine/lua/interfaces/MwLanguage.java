@@ -13,6 +13,7 @@ import java.time.ZonedDateTime;
 import java.util.Date;
 import java.util.Locale;
 
+import wiki.TemplateMemo;
 import wiki.tools.WikiPage;
 
 import info.bliki.wiki.template.dates.PHPDate;
@@ -23,7 +24,7 @@ import static info.bliki.extensions.scribunto.engine.lua.interfaces.MwInterface.
 
 public class MwLanguage implements MwInterface {
     private final Languages languages = new Languages();
-    private final WikiPage wp;
+    private WikiPage wp;
     private final PHPDate phpDate;
 
     public MwLanguage(WikiPage wp) {
@@ -31,6 +32,15 @@ public class MwLanguage implements MwInterface {
         this.phpDate = new PHPDate();
     }
 
+    public void setWikiPage(WikiPage wp) {
+        this.wp = wp;
+    }
+
+    private void addDependency(TemplateMemo.Dependency dependency) {
+        if (wp != null)
+            wp.addDependency(dependency);
+    }
+
     @Override
     public String name() {
         return "mw.language";
@@ -104,8 +114,11 @@ public class MwLanguage implements MwInterface {
                 final String dateString = date.checkjstring();
                 final Date time;
                 if (dateString.isEmpty()) {
+                    addDependency(TemplateMemo.Dependency.VOLATILE);
                     time = new Date(System.currentTimeMillis());
                 } else {
+                    if (StringToTime.dependsOnNow(dateString))
+                        addDependency(TemplateMemo.Dependency.VOLATILE);
                     Object parseDate = StringToTime.date(dateString);
                     if (parseDate instanceof Date) {
                         time = (Date) parseDate;
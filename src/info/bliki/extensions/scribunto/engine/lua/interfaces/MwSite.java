@@ -1,6 +1,6 @@
 package info.bliki.extensions.scribunto.engine.lua.interfaces;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.luaj.vm2.LuaError;
@@ -9,20 +9,18 @@ import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.lib.OneArgFunction;
 import org.luaj.vm2.lib.TwoArgFunction;
 
-import wiki.tools.WikiPage;
+import wiki.tools.SiteContext;
 import wiki.NameSpaces.NameSpace;
-import static wiki.NameSpaces.getNameSpaces;
-import static wiki.NameSpaces.getNameSpaceNumber;
 
 import static info.bliki.extensions.scribunto.template.Frame.toLuaString;
 
 import static org.luaj.vm2.LuaValue.NIL;
 
 public class MwSite implements MwInterface {
-    private final WikiPage wp;
+    private final SiteContext site;
 
-    public MwSite(WikiPage wp) {
-        this.wp = wp;
+    public MwSite(SiteContext site) {
+        this.site = site;
     }
 
     @Override
@@ -89,7 +87,7 @@ public class MwSite implements MwInterface {
              * @return mixed An integer if $text is a valid value otherwise false
              */
             public LuaValue call(LuaValue name) {
-                Integer ns = getNameSpaceNumber(name.tojstring());
+                Integer ns = site.getNameSpaceNumber(name.tojstring());
                 if (ns != null) {
                     return LuaValue.valueOf(ns);
                 } else {
@@ -128,7 +126,7 @@ public class MwSite implements MwInterface {
 
     private LuaTable namespaces() {
         LuaTable table = new LuaTable();
-		HashMap<Integer, NameSpace> namespaces = getNameSpaces();
+		Map<Integer, NameSpace> namespaces = site.getNameSpaces();
 		for (Entry<Integer, NameSpace> entry : namespaces.entrySet()) {
 			table.set(entry.getKey(), luaDataForNamespace(entry.getValue()));
 		}
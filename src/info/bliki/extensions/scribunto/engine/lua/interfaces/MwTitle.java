@@ -8,9 +8,9 @@ import org.luaj.vm2.lib.LibFunction;
 import org.luaj.vm2.lib.OneArgFunction;
 import org.luaj.vm2.lib.TwoArgFunction;
 
+import wiki.tools.SiteContext;
 import wiki.tools.WikiPage;
 import static wiki.NameSpaces.getNameSpaceByNumber;
-import static wiki.NameSpaces.getNameSpaceNumber;
 
 import static info.bliki.extensions.scribunto.template.Frame.toLuaString;
 
@@ -19,12 +19,21 @@ import static org.luaj.vm2.LuaValue.EMPTYSTRING;
 // https://github.com/wikimedia/mediawiki-extensions-Scribunto/blob/master/includes/Engines/LuaCommon/TitleLibrary.php
 // title structure: [interwiki:][namespace:]pagename[#fragment]
 public class MwTitle implements MwInterface {
-    private final WikiPage wp;
+    private final SiteContext site;
+    private WikiPage wp;
+    private LuaTable options;//setup options, thisTitle is updated when the engine is bound to another page
 
-    public MwTitle(WikiPage wp) {
+    public MwTitle(SiteContext site, WikiPage wp) {
+        this.site = site;
         this.wp = wp;
     }
 
+    public void setWikiPage(WikiPage wp) {
+        this.wp = wp;
+        if (options != null)
+            options.set("thisTitle", thisTitle());
+    }
+
     @Override
     public String name() {
         return "mw.title";
@@ -49,11 +58,16 @@ public class MwTitle implements MwInterface {
     @Override
     public LuaValue getSetupOptions() {
         LuaTable table = new LuaTable();
-        table.set("thisTitle", title(LuaValue.valueOf(0), toLuaString(wp.getPagename()), LuaValue.NIL, LuaValue.NIL));
+        table.set("thisTitle", thisTitle());
         table.set("NS_MEDIA", -2);
+        options = table;
         return table;
     }
 
+    private LuaValue thisTitle() {
+        return wp == null ? LuaValue.NIL : title(LuaValue.valueOf(0), toLuaString(wp.getPagename()), LuaValue.NIL, LuaValue.NIL);
+    }
+
     private LuaValue getFileInfo() {
         return new OneArgFunction() {
             @Override
@@ -161,7 +175,7 @@ public class MwTitle implements MwInterface {
 							String prefix = text.substring(0, idx);
 							if (prefix.equals("w") || prefix.equals("wikipedia") || prefix.equals("wikt") || prefix.equals("wiktionary"))//to be extended with more interwikis
 								interwiki = prefix;
-							else ns_id = getNameSpaceNumber(prefix);//ns_id != null in case prefix is namespace
+							else ns_id = site.getNameSpaceNumber(prefix);//ns_id != null in case prefix is namespace
 						}
 						int fragment_idx = text.indexOf("#");
                         return title(
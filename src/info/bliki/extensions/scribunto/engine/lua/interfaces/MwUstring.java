@@ -1,9 +1,49 @@
 package info.bliki.extensions.scribunto.engine.lua.interfaces;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.HashMap;
+
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
 import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaUserdata;
 import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
 
+// https://github.com/wikimedia/mediawiki-extensions-Scribunto/blob/master/includes/Engines/LuaCommon/UstringLibrary.php
+// Native implementation of mw.ustring: functions returned by getInterface() replace the pure-Lua ones of ustring/ustring.lua
+// in mw.ustring.lua setupInterface(), functions not provided here (upper, lower, byte, format, rep) remain in Lua.
+// Semantics follow ustring.lua; set system property ustring.native=false to use the pure-Lua implementation only.
 public class MwUstring implements MwInterface {
+    private static final int STRING_LENGTH_LIMIT = 2048 * 1024;// https://www.mediawiki.org/wiki/Manual:$wgMaxArticleSize
+    private static final int PATTERN_LENGTH_LIMIT = 10000;
+    private static final int MAX_CACHED_PATTERNS = 500;
+
+    private static volatile boolean native_ustring = !"false".equals(System.getProperty("ustring.native"));
+
+    private final boolean use_native;
+    private final HashMap<LuaString, UstringPattern> patternCache = new HashMap<>();//the engine is single threaded, no need of synchronization
+    private Decoded lastDecoded;
+
+    public MwUstring() {
+        this(native_ustring);
+    }
+
+    public MwUstring(boolean use_native) {
+        this.use_native = use_native;
+    }
+
+    public static void setNative(boolean enabled) {//default for engines created afterwards
+        native_ustring = enabled;
+    }
+
+    public static boolean isNative() {
+        return native_ustring;
+    }
+
     @Override
     public String name() {
         return "mw.ustring";
@@ -11,7 +51,29 @@ public class MwUstring implements MwInterface {
 
     @Override
     public LuaTable getInterface() {
-        return new LuaTable();
+        LuaTable table = new LuaTable();
+        if (!use_native)
+            return table;//fallback to pure-Lua ustring
+        table.set("isutf8", isutf8());
+        table.set("byteoffset", byteoffset());
+        table.set("codepoint", codepoint());
+        table.set("gcodepoint_init", gcodepoint_init());
+        table.set("char", charFunction());
+        table.set("len", len());
+        table.set("sub", sub());
+        table.set("toNFC", normalize("toNFC", Normalizer.Form.NFC));
+        table.set("toNFD", normalize("toNFD", Normalizer.Form.NFD));
+        table.set("toNFKC", normalize("toNFKC", Normalizer.Form.NFKC));
+        table.set("toNFKD", normalize("toNFKD", Normalizer.Form.NFKD));
+        final UstringCharsets charsets = UstringCharsets.getInstance();
+        if (charsets != null) {//pattern functions require the Unicode character classes
+            table.set("find", find(charsets));
+            table.set("match", match(charsets));
+            table.set("gmatch_init", gmatch_init(charsets));
+            table.set("gmatch_callback", gmatch_callback());
+            table.set("gsub", gsub(charsets));
+        }
+        return table;
     }
 
     @Override
@@ -19,8 +81,560 @@ public class MwUstring implements MwInterface {
         LuaTable table = new LuaTable();
         // https://www.mediawiki.org/wiki/Manual:$wgMaxArticleSize
         // stringLengthLimit = $wgMaxArticleSize * 1024;
-        table.set("stringLengthLimit",  2048 * 1024);
-        table.set("patternLengthLimit", 10000);
+        table.set("stringLengthLimit",  STRING_LENGTH_LIMIT);
+        table.set("patternLengthLimit", PATTERN_LENGTH_LIMIT);
         return table;
     }
+
+    // exploded UTF-8 string: codepoints and byte offset of each codepoint, the last two offsets are the length in bytes
+    private static final class Decoded {
+        final LuaString str;
+        final int[] cps;
+        final int[] bytepos;
+        final int len;
+
+        Decoded(LuaString str, int[] cps, int[] bytepos, int len) {
+            this.str = str;
+            this.cps = cps;
+            this.bytepos = bytepos;
+            this.len = len;
+        }
+
+        LuaString sub(int i, int j) {//characters from i to j, 1-based, i <= j + 1
+            return str.substring(bytepos[i - 1], bytepos[j]);
+        }
+    }
+
+    private Decoded explode(LuaString str) {//returns null if str is not valid UTF-8
+        Decoded last = lastDecoded;
+        if (last != null && (last.str == str || last.str.raweq(str)))
+            return last;
+        final byte[] bytes = str.m_bytes;
+        final int offset = str.m_offset;
+        final int l = str.m_length;
+        int[] cps = new int[l];
+        int[] bytepos = new int[l + 2];
+        int len = 0;
+        int i = 0;
+        while (i < l) {
+            int b = bytes[offset + i] & 0xff;
+            int cp, trail, min;
+            if (b < 0x80) {
+                cp = b;
+                trail = 0;
+                min = 0;
+            } else if (b < 0xc2) {//either a non-initial code point or an overlong encoding for a 1-byte code point
+                return null;
+            } else if (b < 0xe0) {
+                trail = 1;
+                cp = b - 0xc0;
+                min = 0x80;
+            } else if (b < 0xf0) {
+                trail = 2;
+                cp = b - 0xe0;
+                min = 0x800;
+            } else if (b < 0xf4) {
+                trail = 3;
+                cp = b - 0xf0;
+                min = 0x10000;
+            } else if (b == 0xf4) {//make sure it doesn't decode to over U+10FFFF
+                if (i + 1 >= l || (bytes[offset + i + 1] & 0xff) > 0x8f)
+                    return null;
+                trail = 3;
+                cp = 4;
+                min = 0x100000;
+            } else return null;
+            for (int j = i + 1; j <= i + trail; j++) {
+                if (j >= l)
+                    return null;
+                b = bytes[offset + j] & 0xff;
+                if (b < 0x80 || b > 0xbf)
+                    return null;
+                cp = cp * 0x40 + b - 0x80;
+            }
+            if (cp < min)//overlong encoding
+                return null;
+            cps[len] = cp;
+            bytepos[len++] = i;
+            i += 1 + trail;
+        }
+        bytepos[len] = l;
+        bytepos[len + 1] = l;
+        Decoded result = new Decoded(str, cps, bytepos, len);
+        lastDecoded = result;
+        return result;
+    }
+
+    private static LuaString checkString(String name, LuaValue s) {
+        if (!s.isstring())//numbers are converted to string
+            throw new LuaError("bad argument #1 to '" + name + "' (string expected, got " + s.typename() + ")");
+        LuaString str = s.checkstring();
+        if (str.m_length > STRING_LENGTH_LIMIT)
+            throw new LuaError("bad argument #1 to '" + name + "' (string is longer than " + STRING_LENGTH_LIMIT + " bytes)");
+        return str;
+    }
+
+    private static LuaString checkPattern(String name, LuaValue pattern) {
+        if (!pattern.isstring())
+            throw new LuaError("bad argument #2 to '" + name + "' (string expected, got " + pattern.typename() + ")");
+        LuaString str = pattern.checkstring();
+        if (str.m_length > PATTERN_LENGTH_LIMIT)
+            throw new LuaError("bad argument #2 to '" + name + "' (pattern is longer than " + PATTERN_LENGTH_LIMIT + " bytes)");
+        return str;
+    }
+
+    private static long checkNumber(String name, int argidx, LuaValue arg, long def) {//returns def if arg is nil
+        if (arg.isnil())
+            return def;
+        if (arg.type() != LuaValue.TNUMBER)
+            throw new LuaError("bad argument #" + argidx + " to '" + name + "' (number expected, got " + arg.typename() + ")");
+        return (long) Math.floor(arg.todouble());
+    }
+
+    private Decoded checkUTF8(String name, int argidx, LuaString str) {
+        Decoded d = explode(str);
+        if (d == null)
+            throw new LuaError("bad argument #" + argidx + " for '" + name + "' (string is not UTF-8)");
+        return d;
+    }
+
+    private static int clamp(long i, int len) {
+        return (int) Math.max(1, Math.min(i, len + 1));
+    }
+
+    private static int cpoffset(Decoded cps, int i) {//character containing byte offset i (1-based)
+        int min = 0, max = cps.len + 1, p;
+        if (i == 0)
+            return 0;
+        while (min + 1 < max) {
+            p = (min + max) / 2 + 1;
+            int bp = cps.bytepos[p - 1] + 1;
+            if (bp <= i)
+                min = p - 1;
+            if (bp >= i)
+                max = p - 1;
+        }
+        return min + 1;
+    }
+
+    private static LuaString encode(int[] cps, int start, int end) {//codepoints to UTF-8, also surrogates are encoded as in ustring.lua
+        ByteArrayOutputStream out = new ByteArrayOutputStream(end - start);
+        for (int i = start; i < end; i++) {
+            int v = cps[i];
+            if (v < 0x80)
+                out.write(v);
+            else if (v < 0x800) {
+                out.write(0xc0 | (v >> 6));
+                out.write(0x80 | (v & 0x3f));
+            } else if (v < 0x10000) {
+                out.write(0xe0 | (v >> 12));
+                out.write(0x80 | ((v >> 6) & 0x3f));
+                out.write(0x80 | (v & 0x3f));
+            } else {
+                out.write(0xf0 | ((v >> 18) & 0x07));
+                out.write(0x80 | ((v >> 12) & 0x3f));
+                out.write(0x80 | ((v >> 6) & 0x3f));
+                out.write(0x80 | (v & 0x3f));
+            }
+        }
+        return LuaString.valueUsing(out.toByteArray());
+    }
+
+    private LuaValue isutf8() {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return valueOf(explode(checkString("isutf8", args.arg1())) != null);
+            }
+        };
+    }
+
+    private LuaValue byteoffset() {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString("byteoffset", args.arg1());
+                long l = checkNumber("byteoffset", 2, args.arg(2), 1);
+                long i = checkNumber("byteoffset", 3, args.arg(3), 1);
+                Decoded cps = checkUTF8("byteoffset", 1, s);
+                int bytes = s.m_length;
+                if (i < 0)
+                    i = bytes + i + 1;
+                if (i < 1 || i > bytes)
+                    return NIL;
+                int p = cpoffset(cps, (int) i);
+                if (l > 0 && cps.bytepos[p - 1] + 1 == i)
+                    l--;
+                if (p + l > cps.len || p + l < 1)
+                    return NIL;
+                return valueOf(cps.bytepos[(int) (p + l) - 1] + 1);
+            }
+        };
+    }
+
+    private LuaValue codepoint() {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString("codepoint", args.arg1());
+                long i = checkNumber("codepoint", 2, args.arg(2), 1);
+                Decoded cps = checkUTF8("codepoint", 1, s);
+                if (i < 0)
+                    i = cps.len + i + 1;
+                long j = checkNumber("codepoint", 3, args.arg(3), i);
+                if (j < 0)
+                    j = cps.len + j + 1;
+                if (j < i)
+                    return NONE;//empty result set
+                int from = clamp(i, cps.len), to = clamp(j, cps.len);
+                LuaValue[] values = new LuaValue[to - from + 1];
+                for (int k = from; k <= to; k++)
+                    values[k - from] = k <= cps.len ? valueOf(cps.cps[k - 1]) : NIL;
+                return varargsOf(values);
+            }
+        };
+    }
+
+    private LuaValue gcodepoint_init() {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString("gcodepoint", args.arg1());
+                long i = checkNumber("gcodepoint", 2, args.arg(2), 1);
+                long j = checkNumber("gcodepoint", 3, args.arg(3), -1);
+                Decoded cps = checkUTF8("gcodepoint", 1, s);
+                if (i < 0)
+                    i = cps.len + i + 1;
+                if (j < 0)
+                    j = cps.len + j + 1;
+                LuaTable result = new LuaTable();
+                if (j >= i) {
+                    int from = clamp(i, cps.len), to = Math.min(clamp(j, cps.len), cps.len);
+                    for (int k = from; k <= to; k++)
+                        result.set(k - from + 1, valueOf(cps.cps[k - 1]));
+                }
+                return result;
+            }
+        };
+    }
+
+    private LuaValue charFunction() {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                int n = args.narg();
+                int[] cps = new int[n];
+                for (int i = 1; i <= n; i++) {
+                    LuaValue v = args.arg(i);
+                    if (v.type() != TNUMBER)
+                        throw new LuaError("bad argument #" + i + " to 'char' (number expected, got " + v.typename() + ")");
+                    double d = Math.floor(v.todouble());
+                    if (d < 0 || d > 0x10ffff)
+                        throw new LuaError("bad argument #" + i + " to 'char' (value out of range)");
+                    cps[i - 1] = (int) d;
+                }
+                return encode(cps, 0, n);
+            }
+        };
+    }
+
+    private LuaValue len() {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                Decoded cps = explode(checkString("len", args.arg1()));
+                return cps == null ? NIL : valueOf(cps.len);
+            }
+        };
+    }
+
+    private LuaValue sub() {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString("sub", args.arg1());
+                long i = checkNumber("sub", 2, args.arg(2), 1);
+                long j = checkNumber("sub", 3, args.arg(3), -1);
+                Decoded cps = checkUTF8("sub", 1, s);
+                if (i < 0)
+                    i = cps.len + i + 1;
+                if (j < 0)
+                    j = cps.len + j + 1;
+                if (j < i)
+                    return EMPTYSTRING;
+                return cps.sub(clamp(i, cps.len), clamp(j, cps.len));
+            }
+        };
+    }
+
+    private LuaValue normalize(final String name, final Normalizer.Form form) {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString(name, args.arg1());
+                boolean ascii = true;
+                for (int i = 0; i < s.m_length && ascii; i++)
+                    ascii = s.m_bytes[s.m_offset + i] >= 0;
+                if (ascii)//ASCII is always normalized
+                    return s;
+                if (explode(s) == null)
+                    return NIL;
+                String str = s.tojstring();
+                if (Normalizer.isNormalized(str, form))
+                    return s;
+                return LuaString.valueUsing(Normalizer.normalize(str, form).getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    private UstringPattern compile(String name, LuaString pattern, UstringCharsets charsets) {
+        UstringPattern compiled = patternCache.get(pattern);
+        if (compiled == null) {
+            Decoded pat = explode(pattern);
+            if (pat == null)
+                throw new LuaError("bad argument #2 for '" + name + "' (string is not UTF-8)");
+            compiled = new UstringPattern(pat.cps, pat.len, charsets);
+            if (patternCache.size() >= MAX_CACHED_PATTERNS)
+                patternCache.clear();
+            patternCache.put(pattern, compiled);
+        }
+        return compiled;
+    }
+
+    private static int normalizeInit(long init, int len) {
+        if (init < 0)
+            init = len + init + 1;
+        return clamp(init, len);
+    }
+
+    private static LuaValue capture(Decoded cps, UstringPattern.Result m, int i) {//value of capture i, 1-based
+        if (m.cap_end[i] == UstringPattern.POSITION)
+            return LuaValue.valueOf(m.cap_start[i]);
+        return cps.sub(m.cap_start[i], m.cap_end[i]);
+    }
+
+    private static LuaValue[] captures(Decoded cps, UstringPattern.Result m, boolean whole) {//captures, or the whole match if there are none and whole is true
+        if (m.ncapt == 0)
+            return whole ? new LuaValue[] {cps.sub(m.start, m.end)} : new LuaValue[0];
+        LuaValue[] values = new LuaValue[m.ncapt];
+        for (int i = 1; i <= m.ncapt; i++)
+            values[i - 1] = capture(cps, m, i);
+        return values;
+    }
+
+    private static UstringPattern.Result plainFind(Decoded cps, Decoded pat, int init) {
+        int last = cps.len - pat.len + 1;
+        for (int sp = init; sp <= last; sp++) {
+            int k = 0;
+            while (k < pat.len && cps.cps[sp - 1 + k] == pat.cps[k])
+                k++;
+            if (k == pat.len) {
+                UstringPattern.Result r = new UstringPattern.Result();
+                r.start = sp;
+                r.end = sp + pat.len - 1;
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private LuaValue find(final UstringCharsets charsets) {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString("find", args.arg1());
+                LuaString pattern = checkPattern("find", args.arg(2));
+                long init = checkNumber("find", 3, args.arg(3), 1);
+                LuaValue plain = args.arg(4);
+                if (!plain.isnil() && !plain.isboolean())
+                    throw new LuaError("bad argument #4 to 'find' (boolean expected, got " + plain.typename() + ")");
+                Decoded cps = checkUTF8("find", 1, s);
+                int start = normalizeInit(init, cps.len);
+                UstringPattern.Result m;
+                if (plain.toboolean()) {
+                    Decoded pat = explode(pattern);
+                    if (pat == null)
+                        throw new LuaError("bad argument #2 for 'find' (string is not UTF-8)");
+                    m = plainFind(cps, pat, start);
+                } else m = compile("find", pattern, charsets).find(cps.cps, cps.len, start, false);
+                if (m == null)
+                    return NIL;
+                LuaValue[] caps = captures(cps, m, false);
+                LuaValue[] values = new LuaValue[caps.length + 2];
+                values[0] = valueOf(m.start);
+                values[1] = valueOf(m.end);
+                System.arraycopy(caps, 0, values, 2, caps.length);
+                return varargsOf(values);
+            }
+        };
+    }
+
+    private LuaValue match(final UstringCharsets charsets) {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString("match", args.arg1());
+                LuaString pattern = checkPattern("match", args.arg(2));
+                long init = checkNumber("match", 3, args.arg(3), 1);
+                Decoded cps = checkUTF8("match", 1, s);
+                UstringPattern.Result m = compile("match", pattern, charsets).find(cps.cps, cps.len, normalizeInit(init, cps.len), false);
+                if (m == null)
+                    return NIL;
+                return varargsOf(captures(cps, m, true));
+            }
+        };
+    }
+
+    // state of gmatch iteration, the subject is decoded only once
+    private static final class GmatchState {
+        final Decoded cps;
+        final UstringPattern pattern;
+
+        GmatchState(Decoded cps, UstringPattern pattern) {
+            this.cps = cps;
+            this.pattern = pattern;
+        }
+    }
+
+    private LuaValue gmatch_init(final UstringCharsets charsets) {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString("gmatch", args.arg1());
+                LuaString pattern = checkPattern("gmatch", args.arg(2));
+                Decoded cps = checkUTF8("gmatch", 1, s);
+                return varargsOf(new LuaUserdata(new GmatchState(cps, compile("gmatch", pattern, charsets))), NIL);
+            }
+        };
+    }
+
+    private LuaValue gmatch_callback() {//arguments: s, re, capt, pos; returns new pos and table of captures, empty at the end
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                GmatchState state = (GmatchState) args.arg(2).checkuserdata(GmatchState.class);
+                int pos = args.arg(4).checkint();
+                Decoded cps = state.cps;
+                LuaTable result = new LuaTable();
+                if (pos > cps.len)
+                    return varargsOf(valueOf(pos), result);
+                UstringPattern.Result m = state.pattern.find(cps.cps, cps.len, pos + 1, true);
+                if (m == null)
+                    return varargsOf(valueOf(cps.len + 1), result);
+                LuaValue[] caps = captures(cps, m, true);
+                for (int i = 0; i < caps.length; i++)
+                    result.set(i + 1, caps[i]);
+                return varargsOf(valueOf(m.end < m.start ? m.start : m.end), result);//skip one character after an empty match
+            }
+        };
+    }
+
+    private LuaValue gsub(final UstringCharsets charsets) {
+        return new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                LuaString s = checkString("gsub", args.arg1());
+                LuaString pattern = checkPattern("gsub", args.arg(2));
+                LuaValue repl = args.arg(3);
+                LuaValue nArg = args.arg(4);
+                if (!nArg.isnil() && nArg.type() != TNUMBER)
+                    throw new LuaError("bad argument #4 to 'gsub' (number expected, got " + nArg.typename() + ")");
+                double n = nArg.isnil() ? Double.POSITIVE_INFINITY : nArg.todouble();
+                if (n < 1)
+                    return varargsOf(s, valueOf(0));//no replacement
+                Decoded cps = checkUTF8("gsub", 1, s);
+                UstringPattern pat = compile("gsub", pattern, charsets);
+                if (pat.isAnchored())
+                    n = 1;//there can be only one match
+
+                final int tp;
+                if (repl.isfunction())
+                    tp = 1;
+                else if (repl.istable())
+                    tp = 2;
+                else if (repl.isstring()) {//string or number
+                    repl = repl.checkstring();
+                    tp = 3;
+                } else throw new LuaError("bad argument #3 to 'gsub' (function or table or string expected, got " + repl.typename() + ")");
+
+                ByteArrayOutputStream ret = new ByteArrayOutputStream(s.m_length);
+                int init = 1;
+                int ct = 0;
+                int zeroAdjustment = 0;
+                do {
+                    UstringPattern.Result m = pat.find(cps.cps, cps.len, init + zeroAdjustment, false);
+                    if (m == null)
+                        break;
+                    if (init < m.start)
+                        write(ret, cps.sub(init, m.start - 1));
+                    LuaString mm = cps.sub(m.start, m.end);
+                    LuaValue[] caps = captures(cps, m, true);
+
+                    LuaValue val;
+                    if (tp == 1)
+                        val = repl.invoke(varargsOf(caps)).arg1();
+                    else if (tp == 2)
+                        val = repl.get(caps[0]);
+                    else {
+                        if (ct == 0)
+                            checkReplacement((LuaString) repl, m.ncapt);
+                        val = replace((LuaString) repl, mm, caps);
+                    }
+                    if (val.isnil() || val == FALSE)
+                        val = mm;//keep original text as string.gsub
+                    else if (!val.isstring())
+                        throw new LuaError("invalid replacement value (a " + val.typename() + ")");
+                    write(ret, val.checkstring());
+                    init = m.end + 1;
+                    ct++;
+                    zeroAdjustment = m.end < m.start ? 1 : 0;
+                } while (init <= cps.len && ct < n);
+                if (init <= cps.len)
+                    write(ret, cps.sub(init, cps.len));
+                return varargsOf(LuaString.valueUsing(ret.toByteArray()), valueOf(ct));
+            }
+        };
+    }
+
+    private static void write(ByteArrayOutputStream out, LuaString str) {
+        out.write(str.m_bytes, str.m_offset, str.m_length);
+    }
+
+    private static void checkReplacement(LuaString repl, int ncapt) {//%1 is allowed also without captures, it stands for the whole match
+        int max = Math.max(ncapt, 1);
+        for (int i = 0; i < repl.m_length - 1; i++) {
+            if (repl.m_bytes[repl.m_offset + i] == '%') {
+                int c = repl.m_bytes[repl.m_offset + i + 1];
+                if (c >= '0' && c <= '9' && c - '0' > max && ncapt < 9)
+                    throw new LuaError("invalid capture index %" + (char) c + " in replacement string");
+                i++;
+            }
+        }
+    }
+
+    private static LuaString replace(LuaString repl, LuaString mm, LuaValue[] caps) {//expands %0-%9 in replacement string, %x gives x for any other x as string.gsub
+        if (repl.indexOf((byte) '%', 0) == -1)
+            return repl;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(repl.m_length + mm.m_length);
+        for (int i = 0; i < repl.m_length; i++) {
+            byte b = repl.m_bytes[repl.m_offset + i];
+            if (b == '%' && i + 1 < repl.m_length) {
+                byte c = repl.m_bytes[repl.m_offset + i + 1];
+                if (c < '0' || c > '9') {
+                    out.write(c);
+                    i++;
+                    continue;
+                }
+                int d = c - '0';
+                LuaValue v = d == 0 ? mm : d <= caps.length ? caps[d - 1] : null;
+                if (v != null) {
+                    write(out, v.checkstring());
+                    i++;
+                    continue;
+                }
+            }
+            out.write(b);
+        }
+        return LuaString.valueUsing(out.toByteArray());
+    }
 }
@@ -0,0 +1,151 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package info.bliki.extensions.scribunto.engine.lua.interfaces;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+Unicode character classes (%a, %c, %d, %l, %p, %s, %u, %w, %x, %z and their complements) used by UstringPattern.
+The classes are read from ustring/charsets.lua, the same tables used by the pure-Lua ustring library, so native
+and Lua pattern matching agree on every codepoint. The file is generated by make-tables.php and has a fixed layout:
+explicit codepoints in table pats, ranges and references to other classes in the __index metamethods.
+*/
+final class UstringCharsets {
+	private final static String RESOURCE = "/ustring/charsets.lua";
+	private final static Pattern TABLE_START = Pattern.compile("^\t\\[0x([0-9a-f]+)\\] = \\{");
+	private final static Pattern TABLE_ITEM = Pattern.compile("^\t\t\\[0x([0-9a-f]+)\\] = 1,");
+	private final static Pattern INDEX_START = Pattern.compile("^setmetatable\\( pats\\[0x([0-9a-f]+)\\], \\{ __index = function \\( t, k \\)(.*)");
+	private final static Pattern COMPLEMENT = Pattern.compile("return k and not pats\\[0x([0-9a-f]+)\\]\\[k\\] end");
+	private final static Pattern REFERENCE = Pattern.compile("pats\\[0x([0-9a-f]+)\\]\\[k\\]");
+	private final static Pattern RANGE = Pattern.compile("c >= 0x([0-9a-f]+) and c < 0x([0-9a-f]+)");
+
+	private static UstringCharsets instance;
+	private static boolean loaded;
+
+	private final UstringPattern.CharSet[] classes = new UstringPattern.CharSet[128];//indexed by class letter
+
+	private static class Definition {
+		final BitSet members = new BitSet();
+		final ArrayList<Integer> references = new ArrayList<>();
+		int complement = -1;
+		BitSet resolved;
+	}
+
+	private UstringCharsets(HashMap<Integer, Definition> definitions) {
+		for (Integer letter : definitions.keySet())
+			if (letter < 128)
+				classes[letter] = resolve(letter, definitions);
+	}
+
+	static synchronized UstringCharsets getInstance() {//returns null if charsets.lua is not available
+		if (!loaded) {
+			loaded = true;
+			try (InputStream is = UstringCharsets.class.getResourceAsStream(RESOURCE)) {
+				if (is != null) {
+					HashMap<Integer, Definition> definitions = parse(is);
+					if (!definitions.isEmpty())
+						instance = new UstringCharsets(definitions);
+				}
+			} catch (IOException | RuntimeException ex) {
+				instance = null;
+			}
+		}
+		return instance;
+	}
+
+	UstringPattern.CharSet get(int letter) {//returns null if letter is not a character class
+		return letter >= 0 && letter < 128 ? classes[letter] : null;
+	}
+
+	private static HashMap<Integer, Definition> parse(InputStream is) throws IOException {
+		HashMap<Integer, Definition> definitions = new HashMap<>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+		Definition current = null;
+		boolean in_index = false;
+		String line;
+		while ((line = in.readLine()) != null) {
+			Matcher m;
+			if (in_index) {
+				if (line.startsWith("end"))
+					in_index = false;
+				else parseIndexLine(line, current);
+			} else if ((m = INDEX_START.matcher(line)).find()) {
+				current = definitions.computeIfAbsent(Integer.parseInt(m.group(1), 16), k -> new Definition());
+				String rest = m.group(2);
+				Matcher c = COMPLEMENT.matcher(rest);
+				if (c.find())
+					current.complement = Integer.parseInt(c.group(1), 16);
+				else in_index = true;
+			} else if ((m = TABLE_ITEM.matcher(line)).find()) {
+				if (current != null)
+					current.members.set(Integer.parseInt(m.group(1), 16));
+			} else if ((m = TABLE_START.matcher(line)).find()) {
+				current = definitions.computeIfAbsent(Integer.parseInt(m.group(1), 16), k -> new Definition());
+			}
+		}
+		return definitions;
+	}
+
+	private static void parseIndexLine(String line, Definition def) {
+		Matcher m = RANGE.matcher(line);
+		while (m.find())
+			def.members.set(Integer.parseInt(m.group(1), 16), Integer.parseInt(m.group(2), 16));
+		m = REFERENCE.matcher(line);
+		while (m.find())
+			def.references.add(Integer.parseInt(m.group(1), 16));
+	}
+
+	private static BitSet resolveBits(int letter, HashMap<Integer, Definition> definitions) {
+		Definition def = definitions.get(letter);
+		if (def == null)
+			return new BitSet();
+		if (def.resolved == null) {
+			def.resolved = def.members;//guard against circular references
+			BitSet bits = (BitSet) def.members.clone();
+			for (int ref : def.references)
+				bits.or(resolveBits(ref, definitions));
+			def.resolved = bits;
+		}
+		return def.resolved;
+	}
+
+	private static UstringPattern.CharSet resolve(int letter, HashMap<Integer, Definition> definitions) {
+		Definition def = definitions.get(letter);
+		if (def.complement != -1) {
+			final BitSet bits = resolveBits(def.complement, definitions);
+			return c -> c >= 0 && !bits.get(c);
+		}
+		final BitSet bits = resolveBits(letter, definitions);
+		return c -> c >= 0 && bits.get(c);
+	}
+}
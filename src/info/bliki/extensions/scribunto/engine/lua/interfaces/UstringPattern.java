@@ -0,0 +1,364 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package info.bliki.extensions.scribunto.engine.lua.interfaces;
+
+import java.util.ArrayList;
+
+import org.luaj.vm2.LuaError;
+
+/*
+Lua pattern working on codepoints, with character classes redefined in terms of Unicode properties.
+This is a port of function find() of ustring/ustring.lua, including its error messages; positions (sp, pp) are
+1-based as in the Lua code and -1 stands for nil. A compiled pattern keeps the parsed character sets, so it can be
+reused for many subjects, but it is not thread safe.
+*/
+final class UstringPattern {
+	interface CharSet {
+		boolean contains(int c);//c is -1 for positions outside the subject
+	}
+
+	private final static CharSet ANY = c -> c >= 0;
+	final static int POSITION = Integer.MIN_VALUE;//end of a position capture ()
+	private final static int OPEN = Integer.MIN_VALUE + 1;//end of a capture not yet closed
+
+	private final int[] pat;
+	private final int plen;
+	private final UstringCharsets charsets;
+	private final CharSet[] sets;//parsed [set] by position of '['
+	private final int[] set_end;
+	private final int max_captures;
+
+	final static class Result {
+		int start, end;//matched range, end = start - 1 for empty match
+		int ncapt;
+		int[] cap_start, cap_end;//cap_end is POSITION for position captures
+	}
+
+	UstringPattern(int[] pat, int plen, UstringCharsets charsets) {
+		this.pat = pat;
+		this.plen = plen;
+		this.charsets = charsets;
+		sets = new CharSet[plen + 2];
+		set_end = new int[plen + 2];
+		int n = 0;
+		for (int i = 0; i < plen; i++)
+			if (pat[i] == '(')
+				n++;
+		max_captures = n + 1;
+	}
+
+	boolean isAnchored() {
+		return plen > 0 && pat[0] == '^';
+	}
+
+	private int pc(int pp) {
+		return pp >= 1 && pp <= plen ? pat[pp - 1] : -1;
+	}
+
+	Result find(int[] s, int slen, int init, boolean noAnchor) {//init must be already normalized in [1, slen + 1]
+		Matcher m = new Matcher(s, slen);
+		int sp = init;
+		int pp = 1;
+		boolean anchor = false;
+		if (!noAnchor && pc(1) == '^') {
+			anchor = true;
+			pp = 2;
+		}
+		do {
+			m.ncapt = 0;
+			int ep = m.match(sp, pp);
+			if (ep != -1) {
+				for (int i = 1; i <= m.ncapt; i++)
+					if (m.cap_end[i] == OPEN)
+						throw new LuaError("Unclosed capture beginning at pattern character " + m.captparen[i]);
+				Result r = new Result();
+				r.start = sp;
+				r.end = ep - 1;
+				r.ncapt = m.ncapt;
+				r.cap_start = m.cap_start;
+				r.cap_end = m.cap_end;
+				return r;
+			}
+			sp++;
+		} while (!anchor && sp <= slen + 1);
+		return null;
+	}
+
+	private int parseCharset(int pp) {//parses [set] at position pp, returns position after the set
+		if (sets[pp] != null)
+			return set_end[pp];
+		int epp = pp + 1;
+		if (pc(epp) == '^')
+			epp++;
+		if (pc(epp) == ']')
+			epp++;
+		int ep;
+		do {
+			ep = -1;
+			for (int i = epp; i <= plen; i++)
+				if (pat[i - 1] == ']') {
+					ep = i;
+					break;
+				}
+			if (ep == -1)
+				throw new LuaError("Missing close-bracket for character set beginning at pattern character " + pp);
+			epp = ep + 1;
+		} while (pc(ep - 1) == '%' && pc(ep - 2) != '%');
+
+		final int p0 = pp;
+		final ArrayList<int[]> ranges = new ArrayList<>();
+		final ArrayList<CharSet> refs = new ArrayList<>();
+		boolean invert = false;
+		pp++;
+		if (pc(pp) == '^') {
+			invert = true;
+			pp++;
+		}
+		boolean first = true;
+		while (true) {
+			int c = pc(pp);
+			if (!first && c == ']') {
+				pp++;
+				break;
+			} else if (c == '%') {
+				c = pc(pp + 1);
+				CharSet cs = charsets.get(c);
+				if (cs != null)
+					refs.add(cs);
+				else ranges.add(new int[] {c, c});
+				pp += 2;
+			} else if (pc(pp + 1) == '-' && pc(pp + 2) != -1 && pc(pp + 2) != ']') {//range
+				ranges.add(new int[] {c, pc(pp + 2)});
+				pp += 3;
+			} else if (c == -1) {
+				throw new LuaError("Missing close-bracket");
+			} else {
+				ranges.add(new int[] {c, c});
+				pp++;
+			}
+			first = false;
+		}
+		final int[] lo = new int[ranges.size()];
+		final int[] hi = new int[ranges.size()];
+		for (int i = 0; i < lo.length; i++) {
+			lo[i] = ranges.get(i)[0];
+			hi[i] = ranges.get(i)[1];
+		}
+		final CharSet[] classes = refs.toArray(new CharSet[0]);
+		final boolean inverted = invert;
+		final long[] ascii = new long[2];//membership of ASCII characters, computed once
+		CharSet set = c -> {
+			for (int i = 0; i < lo.length; i++)
+				if (c >= lo[i] && c <= hi[i])
+					return true;
+			for (CharSet cs : classes)
+				if (cs.contains(c))
+					return true;
+			return false;
+		};
+		for (int c = 0; c < 128; c++)
+			if (set.contains(c) != inverted)
+				ascii[c >> 6] |= 1L << (c & 63);
+		final CharSet base = set;
+		sets[p0] = c -> {
+			if (c < 0)
+				return false;
+			if (c < 128)
+				return (ascii[c >> 6] & (1L << (c & 63))) != 0;
+			return base.contains(c) != inverted;
+		};
+		set_end[p0] = pp;
+		return pp;
+	}
+
+	private final class Matcher {
+		final int[] s;
+		final int slen;
+		int ncapt;
+		final int[] cap_start = new int[max_captures];
+		final int[] cap_end = new int[max_captures];
+		final int[] captparen = new int[max_captures];
+
+		Matcher(int[] s, int slen) {
+			this.s = s;
+			this.slen = slen;
+		}
+
+		private int sc(int sp) {
+			return sp >= 1 && sp <= slen ? s[sp - 1] : -1;
+		}
+
+		int match(int sp, int pp) {//returns position after the match, -1 if there is no match
+			int c = pc(pp);
+			switch (c) {
+				case '(': {//starts capture group
+					ncapt++;
+					captparen[ncapt] = pp;
+					int ret;
+					if (pc(pp + 1) == ')') {//position capture
+						cap_start[ncapt] = sp;
+						cap_end[ncapt] = POSITION;
+						ret = match(sp, pp + 2);
+					} else {
+						cap_start[ncapt] = sp;
+						cap_end[ncapt] = OPEN;
+						ret = match(sp, pp + 1);
+					}
+					if (ret == -1)
+						ncapt--;//failed, rollback
+					return ret;
+				}
+				case ')'://ends capture group
+					for (int n = ncapt; n >= 1; n--) {
+						if (cap_end[n] == OPEN) {
+							cap_end[n] = sp - 1;
+							int ret = match(sp, pp + 1);
+							if (ret == -1)
+								cap_end[n] = OPEN;//failed, rollback
+							return ret;
+						}
+					}
+					throw new LuaError("Unmatched close-paren at pattern character " + pp);
+				case '[':
+					int npp = parseCharset(pp);
+					return matchCharset(sp, npp, sets[pp]);
+				case ']':
+					throw new LuaError("Unmatched close-bracket at pattern character " + pp);
+				case '%': {
+					c = pc(pp + 1);
+					CharSet cs = charsets.get(c);
+					if (cs != null)//character class like %a
+						return matchCharset(sp, pp + 2, cs);
+					else if (c == 'b') {//balanced delimiter match
+						int d1 = pc(pp + 2);
+						int d2 = pc(pp + 3);
+						if (d1 == -1 || d2 == -1)
+							throw new LuaError("malformed pattern (missing arguments to '%b')");
+						if (sc(sp) != d1)
+							return -1;
+						sp++;
+						int ct = 1;
+						while (true) {
+							c = sc(sp++);
+							if (c == -1)
+								return -1;
+							else if (c == d2) {
+								if (ct == 1)
+									return match(sp, pp + 4);
+								ct--;
+							} else if (c == d1)
+								ct++;
+						}
+					} else if (c == 'f') {//frontier pattern match
+						if (pc(pp + 2) != '[')
+							throw new LuaError("missing '[' after %f in pattern at pattern character " + pp);
+						int fpp = parseCharset(pp + 2);
+						CharSet set = sets[pp + 2];
+						int c1 = sp > 1 ? sc(sp - 1) : 0;
+						int c2 = sp <= slen ? sc(sp) : 0;
+						if (!set.contains(c1) && set.contains(c2))
+							return match(sp, fpp);
+						return -1;
+					} else if (c >= '0' && c <= '9') {//backreference
+						int n = c - '0';
+						if (n == 0 || n > ncapt || cap_end[n] == OPEN)
+							throw new LuaError("invalid capture index %" + n + " at pattern character " + pp);
+						if (cap_end[n] == POSITION)
+							return -1;//a position is never equal to a string
+						int l = cap_end[n] - cap_start[n] + 1;
+						if (sp + l - 1 > slen)
+							return -1;
+						for (int i = 0; i < l; i++)
+							if (s[sp - 1 + i] != s[cap_start[n] - 1 + i])
+								return -1;
+						return match(sp + l, pp + 2);
+					} else if (c == -1)
+						throw new LuaError("malformed pattern (ends with '%')");
+					else {
+						final int literal = c;
+						return matchCharset(sp, pp + 2, k -> k == literal);
+					}
+				}
+				case '.'://match anything
+					return matchCharset(sp, pp + 1, ANY);
+				case -1://end of pattern
+					return sp;
+				default:
+					if (c == '$' && pp == plen)//assert end of string
+						return sp == slen + 1 ? sp : -1;
+					final int literal = c;//any other character matches itself
+					return matchCharset(sp, pp + 1, k -> k == literal);
+			}
+		}
+
+		private int matchCharset(int sp, int pp, CharSet set) {//matches a character set with optional quantifier, followed by the rest of the pattern
+			int q = pc(pp);
+			if (q == '*') {//0 or more matches
+				pp++;
+				int i = 0;
+				while (set.contains(sc(sp + i)))
+					i++;
+				for (; i >= 0; i--) {
+					int ret = match(sp + i, pp);
+					if (ret != -1)
+						return ret;
+				}
+				return -1;
+			} else if (q == '+') {//1 or more matches
+				pp++;
+				int i = 0;
+				while (set.contains(sc(sp + i)))
+					i++;
+				for (; i > 0; i--) {
+					int ret = match(sp + i, pp);
+					if (ret != -1)
+						return ret;
+				}
+				return -1;
+			} else if (q == '-') {//0 or more matches, non-greedy
+				pp++;
+				while (true) {
+					int ret = match(sp, pp);
+					if (ret != -1)
+						return ret;
+					if (!set.contains(sc(sp)))
+						return -1;
+					sp++;
+				}
+			} else if (q == '?') {//0 or 1 match
+				pp++;
+				if (set.contains(sc(sp))) {
+					int ret = match(sp + 1, pp);
+					if (ret != -1)
+						return ret;
+				}
+				return match(sp, pp);
+			} else {//no suffix, must match 1
+				if (set.contains(sc(sp)))
+					return match(sp + 1, pp);
+				return -1;
+			}
+		}
+	}
+}
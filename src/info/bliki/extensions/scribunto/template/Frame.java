@@ -5,11 +5,12 @@ import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import java.nio.charset.StandardCharsets;
 
-import static wiki.NameSpaces.isNameSpace;
+import wiki.tools.SiteContext;
 import static wiki.tools.Utilities.normaliseTitle;
 
 /*reference: 
@@ -19,12 +20,29 @@ https://www.mediawiki.org/wiki/Extension:Scribunto/Lua_reference_manual#frame-ob
 
 public final class Frame {
     private final String page;
-    private final Map<String, String> templateParameters;
+    private final Map<String, String> templateParameters;//expanded parameters
+    private final Map<String, String> unexpandedParameters;//parameters expanded on demand, may be null
+    private final Expander expander;
     private final Frame parent;
     private final boolean isSubst;
 
+    public interface Expander {//expands the text of a parameter in the frame of the caller
+        String expand(String text, Frame caller);
+    }
+
     public Frame(String page, Map<String, String> templateParameters, Frame parent, boolean isSubst) {
         this.templateParameters = templateParameters;
+        this.unexpandedParameters = null;
+        this.expander = null;
+        this.page = page;
+        this.parent = parent;
+        this.isSubst = isSubst;
+    }
+
+    public Frame(String page, Map<String, String> unexpandedParameters, Expander expander, Frame parent, boolean isSubst) {//lazy frame: each parameter is expanded in the parent frame only when it is read, then memoized
+        this.templateParameters = new HashMap<>();
+        this.unexpandedParameters = unexpandedParameters;
+        this.expander = expander;
         this.page = page;
         this.parent = parent;
         this.isSubst = isSubst;
@@ -35,7 +53,7 @@ public final class Frame {
     }
 
     public LuaValue getArgument(String name) {
-        String value = templateParameters != null ? templateParameters.get(name) : null;
+        String value = templateParameters != null ? getTemplateParameter(name) : null;
         if (value != null) {
             return toLuaString(value);
         } else {
@@ -44,16 +62,39 @@ public final class Frame {
     }
 
     public Map<String, String> getTemplateParameters() {
+        expandAll();
         return new HashMap<>(templateParameters);
     }
 
 	public String getTemplateParameter(String name) {
-		return templateParameters.get(name);
+		String value = templateParameters.get(name);
+		if (value == null && unexpandedParameters != null) {
+			String text = unexpandedParameters.get(name);
+			if (text != null) {
+				value = expander.expand(text, parent);
+				templateParameters.put(name, value);
+			}
+		}
+		return value;
 	}
 
+    private void expandAll() {
+        if (unexpandedParameters != null && templateParameters.size() < unexpandedParameters.size()) {
+            for (String name : unexpandedParameters.keySet())
+                getTemplateParameter(name);
+        }
+    }
+
     public LuaValue getAllArguments() {
         LuaTable table = new LuaTable();
-        for (Map.Entry<String, String> entry: templateParameters.entrySet()) {
+        Map<String, String> parameters = templateParameters;
+        if (unexpandedParameters != null) {//keep the order of unexpanded parameters
+            expandAll();
+            parameters = new LinkedHashMap<>();
+            for (String name : unexpandedParameters.keySet())
+                parameters.put(name, templateParameters.get(name));
+        }
+        for (Map.Entry<String, String> entry: parameters.entrySet()) {
             try {
                 final int numberedParam = Integer.parseInt(entry.getKey());
                 table.set(LuaValue.valueOf(numberedParam), toLuaString(entry.getValue()));
@@ -76,21 +117,21 @@ public final class Frame {
         return page;
     }
 
-    public String getPage() {//page name without namespace
+    public String getPage(SiteContext site) {//page name without namespace
         int idx = page.indexOf(':');
         if (idx != -1) {
             String namespace = normaliseTitle(page.substring(0, idx), true);
-            if (namespace.length() > 0 && isNameSpace(namespace))
+            if (namespace.length() > 0 && site.isNameSpace(namespace))
                 return page.substring(idx + 1);
         }
         return page;
     }
 
-    public String getNamespace() {
+    public String getNamespace(SiteContext site) {
         int idx = page.indexOf(':');
         if (idx != -1) {
             String namespace = normaliseTitle(page.substring(0, idx), true);
-            if (namespace.length() > 0 && isNameSpace(namespace))
+            if (namespace.length() > 0 && site.isNameSpace(namespace))
                 return namespace;
         }
         return "";
@@ -366,6 +366,18 @@ public final class StringToTime extends Date {
         }
     }
 
+    /**
+     * Tells whether the result of parsing <code>dateTimeString</code> depends on
+     * the current time, e.g. &quot;now&quot; or &quot;+1 day&quot;.
+     *
+     * @param dateTimeString
+     * @return <code>true</code> if the timestamp is not the same for two
+     *         different values of <code>now</code>.
+     */
+    public static boolean dependsOnNow(Object dateTimeString) {
+        return !time(dateTimeString, new Date(0L)).equals(time(dateTimeString, new Date(1234567890123L)));
+    }
+
     private static class PatternAndFormat {
         final Pattern p;
         final Format f;
@@ -0,0 +1,360 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.bliki.extensions.scribunto.engine.lua.LuaProfiler;
+import info.bliki.extensions.scribunto.engine.lua.ScribuntoEnginePool;
+import wiki.tools.PageStore;
+import wiki.tools.SiteContext;
+import wiki.tools.WikiFormatter;
+import wiki.tools.WikiPage;
+import static wiki.tools.Utilities.getLocale;
+
+/*
+Batch renderer: this standalone tool renders every definition of wiki.dat (or wiki.pgs) to html, using a pool of worker threads.
+
+Each worker takes the next page, expands it with TemplateParser, formats it with WikiFormatter and appends the html to one of
+the output shards, selected by hash of the title; the order of pages inside a shard is not defined. Workers share the parsed
+template cache and the compiled Lua modules, each worker uses its own ScribuntoLuaEngine taken from a ScribuntoEnginePool.
+At the end the number of pages per second, the failures and the slowest pages are reported.
+
+Files templates.dat and modules.dat (or the page stores *.pgs) are read from the same directory of wiki.dat.
+
+compile: javac -encoding UTF-8 -cp .;lib\luaj-jse-3.0.2q.jar wiki\BatchRenderer.java
+
+usage:  java -cp .;lib\luaj-jse-3.0.2q.jar;scripts wiki.BatchRenderer [-threads <n>] [-virtual] [-memo] [-timeout <ms>] [-luatimeout <ms>] [-luainstructions <n>] [-luapagetime <ms>] [-luapageinstructions <n>] [-luaprofile <file>] [-profile] [-log] [-shards <n>] [-output <dir>] [-slowest <n>] [-limit <n>] [<directory>]
+
+-threads: number of workers, default is the number of available processors
+-virtual: workers are virtual threads (requires Java 21), otherwise workers run in a fork-join pool
+-memo: results of template expansions are reused across pages when they depend only on template and parameters, see TemplateMemo
+-timeout: maximum time in ms to expand a page, the rest of the page is replaced by an error marker, default no limit
+-luatimeout: maximum time in ms of a #invoke, default no limit
+-luainstructions: maximum number of Lua instructions of a #invoke, default no limit
+-luapagetime: maximum total time in ms of the #invoke of a page, default no limit
+-luapageinstructions: maximum total number of Lua instructions of the #invoke of a page, default no limit
+other limits of expansion are the defaults of ExpansionLimits, a #invoke exceeding a limit of scripts renders a module error
+-luaprofile: profiles Lua modules, the report of modules and functions is printed at the end and the collapsed stacks are written
+ to the given file, e.g. to draw a flame graph with flamegraph.pl, see LuaProfiler
+-profile: profiles templates, parser functions and magic words, the report of the most expensive ones and the call tree of the
+ slowest page are printed at the end, see TemplateProfiler
+-log: diagnostic events (missing templates and modules, module errors, ...) are logged to the console by a background thread,
+ otherwise they are only counted, see DiagnosticSink
+-shards: number of output files, default 16
+-output: output directory, default html
+-slowest: number of slowest pages to report, default 10
+-limit: maximum number of pages to render, default all
+*/
+final public class BatchRenderer {
+	final static String linkBaseURL = "https://%s.wiktionary.org/wiki/";
+	private final static int PROGRESS_INTERVAL = 10000;//pages between progress reports
+	private final static int PROFILE_TOP = 20;//rows of each table of the profiles
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean virtual = false;
+	private boolean memo = false;
+	private long timeout = 0;//ms, 0 means no limit
+	private long luatimeout = 0;//ms, 0 means no limit
+	private long luainstructions = 0;//0 means no limit
+	private long luapagetime = 0;//ms, 0 means no limit
+	private long luapageinstructions = 0;//0 means no limit
+	private String luaprofile = null;//file of collapsed stacks, null if profiling is disabled
+	private boolean profile = false;
+	private boolean log = false;
+	private DiagnosticSink.AsyncLogger logger;//null if events are only counted
+	private DiagnosticSink.Counter diagnostics;
+	private int shards = 16;
+	private String output = "html";
+	private int slowest = 10;
+	private int limit = Integer.MAX_VALUE;
+
+	private Map<String, String> name2template;
+	private Map<String, String> name2module;
+	private Map<String, String> name2content;
+	private String[] titles;//titles in case of wiki.dat, null in case of page store
+	private String language;
+	private SiteContext site;
+	private final Date revision = new Date();
+	private final TemplateParser tp = new TemplateParser();//shared by workers, caches are thread safe
+
+	private ScribuntoEnginePool pool;
+	private BufferedWriter[] writers;
+
+	private final AtomicInteger next = new AtomicInteger();//index of next page to render
+	private final AtomicInteger rendered = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+	private final AtomicLong render_time = new AtomicLong();//nanoseconds, sum over all workers
+	private final PriorityQueue<Timing> slowest_pages = new PriorityQueue<>();//min-heap, the fastest of the slowest pages is on top
+	private long start_time;
+
+	private final static class Timing implements Comparable<Timing> {
+		final String title;
+		final long time;//nanoseconds
+		final TemplateProfiler.Node tree;//call tree of the page, null if profiling is disabled
+
+		Timing(String title, long time, TemplateProfiler.Node tree) {
+			this.title = title;
+			this.time = time;
+			this.tree = tree;
+		}
+
+		@Override
+		public int compareTo(Timing o) {
+			return Long.compare(time, o.time);
+		}
+	}
+
+	public static void main(String[] args) {
+		BatchRenderer br = new BatchRenderer();
+		String directory = ".";
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "-threads": br.threads = Integer.parseInt(args[++i]); break;
+					case "-virtual": br.virtual = true; break;
+					case "-memo": br.memo = true; break;
+					case "-timeout": br.timeout = Long.parseLong(args[++i]); break;
+					case "-luatimeout": br.luatimeout = Long.parseLong(args[++i]); break;
+					case "-luainstructions": br.luainstructions = Long.parseLong(args[++i]); break;
+					case "-luapagetime": br.luapagetime = Long.parseLong(args[++i]); break;
+					case "-luapageinstructions": br.luapageinstructions = Long.parseLong(args[++i]); break;
+					case "-luaprofile": br.luaprofile = args[++i]; break;
+					case "-profile": br.profile = true; break;
+					case "-log": br.log = true; break;
+					case "-shards": br.shards = Integer.parseInt(args[++i]); break;
+					case "-output": br.output = args[++i]; break;
+					case "-slowest": br.slowest = Integer.parseInt(args[++i]); break;
+					case "-limit": br.limit = Integer.parseInt(args[++i]); break;
+					default:
+						if (args[i].startsWith("-") || i != args.length - 1)
+							throw new IllegalArgumentException(args[i]);
+						directory = args[i];
+				}
+			}
+			if (br.threads < 1 || br.shards < 1 || br.slowest < 0 || br.limit < 0 || br.timeout < 0 || br.luatimeout < 0
+					|| br.luainstructions < 0 || br.luapagetime < 0 || br.luapageinstructions < 0)
+				throw new IllegalArgumentException();
+		} catch (RuntimeException ex) {
+			System.out.println("Usage: java wiki.BatchRenderer [-threads <n>] [-virtual] [-memo] [-timeout <ms>] [-luatimeout <ms>] [-luainstructions <n>] [-luapagetime <ms>] [-luapageinstructions <n>] [-luaprofile <file>] [-profile] [-log] [-shards <n>] [-output <dir>] [-slowest <n>] [-limit <n>] [<directory>]");
+			System.exit(1);
+		}
+		try {
+			br.load(directory);
+			br.render();
+		} catch (IOException | InterruptedException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	private void load(String directory) throws IOException {
+		name2template = loadPages(directory, "templates");
+		name2module = loadPages(directory, "modules");
+		name2content = loadPages(directory, "wiki");
+		String firstline;
+		if (name2content instanceof PageStore)
+			firstline = ((PageStore) name2content).getHeader();
+		else {
+			firstline = wikidat_header;
+			titles = name2content.keySet().toArray(new String[0]);
+		}
+		if (firstline == null || firstline.indexOf("|") == -1)
+			throw new IOException("missing header of wiki.dat in " + directory);
+		language = firstline.substring(0, firstline.indexOf("|"));
+		site = SiteContext.get(getLocale(language));
+		if (memo)
+			tp.setMemo(new TemplateMemo(site, name2template, name2module));
+		tp.setLimits(tp.getLimits().withTimes(luatimeout, timeout).withScriptBudgets(luainstructions, luapagetime, luapageinstructions));
+		if (luaprofile != null)
+			tp.setLuaProfiler(new LuaProfiler());
+		if (profile)
+			tp.setProfiler(new TemplateProfiler());
+		if (log)
+			logger = new DiagnosticSink.AsyncLogger(System.out);
+		tp.setDiagnostics(diagnostics = new DiagnosticSink.Counter(logger == null ? DiagnosticSink.NONE : logger));
+		System.out.println("Number of templates: " + name2template.size());
+		System.out.println("Number of modules: " + name2module.size());
+		System.out.println("Number of definitions: " + name2content.size());
+	}
+
+	private String wikidat_header;
+	private Map<String, String> loadPages(String directory, String name) throws IOException {//uses page store <name>.pgs if available, otherwise reads <name>.dat
+		File store = new File(directory, name + PageStore.STORE_SUFFIX);
+		if (store.exists())
+			return PageStore.open(store.getPath());
+		HashMap<String, String> name2page = new HashMap<>();
+		String firstline = TestSuite.readfile(name2page, new File(directory, name + ".dat").getPath(), name.equals("wiki"));
+		if (firstline != null)
+			wikidat_header = firstline;
+		return name2page;
+	}
+
+	private void render() throws IOException, InterruptedException {
+		int total = Math.min(limit, name2content.size());
+		new File(output).mkdirs();
+		writers = new BufferedWriter[shards];
+		for (int i = 0; i < shards; i++) {
+			writers[i] = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(output, String.format("pages-%03d.html", i))), StandardCharsets.UTF_8));
+			writers[i].write("<!DOCTYPE html>\n<html lang=\"" + language + "\">\n<head><meta charset=\"UTF-8\"></head>\n<body>\n");
+		}
+		pool = new ScribuntoEnginePool(threads);
+		pool.prestart(site, threads);
+		System.out.println("Rendering " + total + " pages with " + threads + (virtual ? " virtual threads" : " fork-join workers") + " in " + shards + " shards");
+
+		start_time = System.nanoTime();
+		ExecutorService executor = createExecutor();
+		for (int i = 0; i < threads; i++)
+			executor.execute(() -> {
+				int i_page;
+				while ((i_page = next.getAndIncrement()) < total)
+					renderPage(i_page);
+			});
+		executor.shutdown();
+		while (!executor.awaitTermination(1, TimeUnit.HOURS))
+			;
+		long elapsed = System.nanoTime() - start_time;
+		if (logger != null)
+			logger.close();
+
+		for (BufferedWriter writer : writers) {
+			writer.write("</body>\n</html>\n");
+			writer.close();
+		}
+		report(elapsed);
+	}
+
+	private ExecutorService createExecutor() {
+		if (virtual) {
+			try {//Executors.newVirtualThreadPerTaskExecutor() is available since Java 21
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException ex) {
+				System.out.println("Warning: virtual threads are not available in Java " + System.getProperty("java.specification.version") + ", fork-join pool is used");
+			}
+		}
+		return new ForkJoinPool(threads);
+	}
+
+	private void renderPage(int i_page) {
+		String title = titles == null ? ((PageStore) name2content).getTitle(i_page) : titles[i_page];
+		long start = System.nanoTime();
+		String html;
+		WikiPage wp = new WikiPage(title, revision, site, tp, name2template, name2module, false, name2content, true);
+		wp.setEnginePool(pool);
+		try {
+			String definition = titles == null ? ((PageStore) name2content).getContent(i_page) : name2content.get(title);
+			html = WikiFormatter.formatWikiText(new StringBuilder(title), new StringBuilder(tp.parse(definition, wp)), linkBaseURL, language);
+		} catch (RuntimeException | StackOverflowError ex) {
+			failures.incrementAndGet();
+			System.out.println("Failed: " + title + ": " + ex);
+			html = "<p class=\"error\">" + escape(ex.toString()) + "</p>";
+		} finally {
+			wp.releaseScribuntoEngine();
+		}
+		long time = System.nanoTime() - start;
+		render_time.addAndGet(time);
+		record(title, time, wp.getProfileState() == null ? null : wp.getProfileState().getCallTree());
+
+		BufferedWriter writer = writers[Math.floorMod(title.hashCode(), shards)];
+		try {
+			synchronized (writer) {
+				writer.write("<article id=\"" + escape(title) + "\">\n<h1>" + escape(title) + "</h1>\n");
+				writer.write(html);
+				writer.write("\n</article>\n");
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);//output is not usable, stop the worker
+		}
+
+		int n = rendered.incrementAndGet();
+		if (n % PROGRESS_INTERVAL == 0)
+			System.out.println(n + " pages, " + String.format(Locale.ROOT, "%.1f", n * 1e9 / (System.nanoTime() - start_time)) + " pages/s");
+	}
+
+	private void record(String title, long time, TemplateProfiler.Node tree) {
+		if (slowest == 0)
+			return;
+		synchronized (slowest_pages) {
+			if (slowest_pages.size() < slowest)
+				slowest_pages.add(new Timing(title, time, tree));
+			else if (time > slowest_pages.peek().time) {
+				slowest_pages.poll();
+				slowest_pages.add(new Timing(title, time, tree));
+			}
+		}
+	}
+
+	private void report(long elapsed) throws IOException {
+		int n = rendered.get();
+		System.out.println();
+		System.out.println("Rendered pages: " + n + ", failures: " + failures.get());
+		System.out.println("Elapsed time: " + String.format(Locale.ROOT, "%.1f", elapsed / 1e9) + " s, " + String.format(Locale.ROOT, "%.1f", n * 1e9 / elapsed) + " pages/s"
+			+ (n > 0 ? ", average render time: " + String.format(Locale.ROOT, "%.2f", render_time.get() / 1e6 / n) + " ms" : ""));
+		if (!slowest_pages.isEmpty()) {
+			ArrayList<Timing> list = new ArrayList<>(slowest_pages);
+			list.sort((a, b) -> Long.compare(b.time, a.time));
+			System.out.println("Slowest pages:");
+			for (Timing t : list)
+				System.out.println(String.format(Locale.ROOT, "%10.1f ms  ", t.time / 1e6) + t.title);
+			if (list.get(0).tree != null) {
+				System.out.println("Call tree of the slowest page, invocations taking at least 1% of the page:");
+				System.out.print(list.get(0).tree.format(list.get(0).time / 100));
+			}
+		}
+		System.out.println(pool);
+		System.out.println(tp.getLimits());
+		System.out.println(diagnostics);
+		if (tp.getMemo() != null)
+			System.out.println(tp.getMemo());
+		if (tp.getProfiler() != null)
+			System.out.print(tp.getProfiler().report(PROFILE_TOP));
+		if (tp.getLuaProfiler() != null) {
+			System.out.print(tp.getLuaProfiler().report(PROFILE_TOP));
+			try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(luaprofile), StandardCharsets.UTF_8))) {
+				tp.getLuaProfiler().writeCollapsedStacks(out);
+			}
+			System.out.println("Collapsed stacks written to " + luaprofile);
+		}
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
@@ -0,0 +1,177 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import wiki.tools.WikiPage;
+
+/*
+Sink of the diagnostic events of expansion, see TemplateParser.setDiagnostics(); events are reported by the rendering threads,
+so a sink must be thread safe and fast: it shall not block nor print synchronously.
+Available sinks:
+- NONE: events are ignored (default)
+- Counter: events are counted, optionally they are passed to another sink
+- AsyncLogger: events are written by a background thread, when its bounded queue is full the events are dropped and counted
+The calls traced with trace_calls of WikiPage are still printed to the console, as they are meant for debugging.
+*/
+public interface DiagnosticSink {
+	enum Event {
+		TEMPLATE_MISSING("template not found"),
+		TEMPLATE_LOOP("template loop detected"),
+		LIMIT_EXCEEDED("limit exceeded"),
+		MODULE_ERROR("module error"),
+		MODULE_MISSING("module not found"),
+		UNKNOWN_FUNCTION("unknown parser function");
+
+		final String label;
+
+		Event(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	void report(Event event, WikiPage wp, String subject, Throwable cause);//subject: template, module or function concerned; cause may be null
+
+	DiagnosticSink NONE = (event, wp, subject, cause) -> {};
+
+	static String format(Event event, WikiPage wp, String subject, Throwable cause) {//one line, the stack trace of cause is not included
+		return wp.getPagename() + ": " + event.label + ": " + subject + (cause == null ? "" : " (" + cause.getMessage() + ")");
+	}
+
+	final class Counter implements DiagnosticSink {
+		private final AtomicLongArray counts = new AtomicLongArray(Event.values().length);
+		private final DiagnosticSink next;
+
+		public Counter() {
+			this(NONE);
+		}
+
+		public Counter(DiagnosticSink next) {//events are also reported to next
+			this.next = next;
+		}
+
+		@Override
+		public void report(Event event, WikiPage wp, String subject, Throwable cause) {
+			counts.incrementAndGet(event.ordinal());
+			next.report(event, wp, subject, cause);
+		}
+
+		public long getCount(Event event) {
+			return counts.get(event.ordinal());
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("Diagnostics:");
+			for (Event event : Event.values())
+				sb.append(' ').append(event.name().toLowerCase()).append('=').append(counts.get(event.ordinal()));
+			return sb.toString();
+		}
+	}
+
+	final class AsyncLogger implements DiagnosticSink, AutoCloseable {
+		public final static int DEFAULT_CAPACITY = 10000;//events in the queue
+
+		private final static String END = new String("end of log");//compared by identity
+		private final ArrayBlockingQueue<String> queue;
+		private final PrintStream out;
+		private final Thread writer;
+		private final AtomicLong dropped = new AtomicLong();
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();//read lock held by report() while offering, write lock by close() while closing
+		private boolean closed;//guarded by lock, no event is offered after END
+
+		public AsyncLogger(PrintStream out) {
+			this(out, DEFAULT_CAPACITY);
+		}
+
+		public AsyncLogger(PrintStream out, int capacity) {
+			this.out = out;
+			queue = new ArrayBlockingQueue<>(capacity);
+			writer = new Thread(this::write, "diagnostics");
+			writer.setDaemon(true);
+			writer.start();
+		}
+
+		@Override
+		public void report(Event event, WikiPage wp, String subject, Throwable cause) {
+			String line = format(event, wp, subject, cause);
+			lock.readLock().lock();
+			try {
+				if (closed || !queue.offer(line))
+					dropped.incrementAndGet();
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		private void write() {
+			try {
+				String line;
+				while ((line = queue.take()) != END)
+					out.println(line);
+			} catch (InterruptedException ex) {
+//stop writing
+			}
+			out.flush();
+		}
+
+		public long getDropped() {
+			return dropped.get();
+		}
+
+		@Override
+		public void close() {//writes the pending events and stops the background thread, later events are dropped
+			lock.writeLock().lock();
+			try {
+				if (closed)
+					return;
+				closed = true;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			try {
+				queue.put(END);
+				writer.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			String line;
+			while ((line = queue.poll()) != null)//events not written by the background thread, if it has been interrupted
+				if (line != END)
+					dropped.incrementAndGet();
+			if (dropped.get() > 0)
+				out.println("Diagnostics: " + dropped.get() + " events dropped");
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Limits of the expansion of a page, enforced by TemplateParser and ScribuntoLuaEngine, see TemplateParser.setLimits().
+They are modelled on the limits of MediaWiki (https://www.mediawiki.org/wiki/Manual:$wgMaxTemplateDepth and following):
+- max_depth: maximum number of nested template expansions, deeper templates are replaced by an error marker
+- max_nodes: maximum number of invocations (templates, parser functions, magic words) expanded in a page
+- max_include_size: maximum total length (in chars) of the template expansions of a page, counted at each nesting level
+- max_invoke_time: maximum time in ms of a #invoke
+- max_page_time: maximum time in ms to expand a page, checked at each invocation and while a module runs
+- max_invoke_instructions: maximum number of Lua instructions executed by a #invoke
+- max_lua_time: maximum total time in ms of the #invoke of a page
+- max_lua_instructions: maximum total number of Lua instructions executed by the #invoke of a page
+A value of 0 means no limit. When the node count, the include size or the page time are exceeded, the rest of the page is not
+expanded: an error marker is written once and the following invocations are skipped, so that the page completes quickly.
+The budgets of scripts are checked by ScribuntoLuaEngine while the module runs, by means of the instruction hook of the Lua debug library:
+a #invoke exceeding a budget is aborted with a module error, once a budget of the page is exhausted the following #invoke fail at once.
+*/
+public final class ExpansionLimits {
+	public final static ExpansionLimits DEFAULT = new ExpansionLimits(100, 1000000, 2 * 1024 * 1024, 0, 0);
+	public final static ExpansionLimits NONE = new ExpansionLimits(0, 0, 0, 0, 0);
+
+	public enum Limit {
+		DEPTH("Expansion depth limit exceeded"),
+		NODES("Node-count limit exceeded"),
+		INCLUDE_SIZE("Post-expand include size too large"),
+		INVOKE_TIME("The time allocated for running scripts has expired"),
+		INVOKE_INSTRUCTIONS("The instructions allocated for running scripts are exhausted"),
+		LUA_TIME("The time allocated for running scripts of the page has expired"),
+		LUA_INSTRUCTIONS("The instructions allocated for running scripts of the page are exhausted"),
+		PAGE_TIME("Expansion time limit exceeded");
+
+		final String message;
+
+		Limit(String message) {
+			this.message = message;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	private final int max_depth;
+	private final int max_nodes;
+	private final int max_include_size;
+	private final long max_invoke_time;
+	private final long max_page_time;
+	private final long max_invoke_instructions;
+	private final long max_lua_time;
+	private final long max_lua_instructions;
+	private final AtomicLongArray exceeded = new AtomicLongArray(Limit.values().length);//number of times each limit was exceeded
+	private final AtomicLong invokes = new AtomicLong();//metrics of scripts, see PageState.addScript()
+	private final AtomicLong lua_instructions = new AtomicLong();
+	private final AtomicLong lua_time = new AtomicLong();//in ns
+
+	public final static class PageState {//expansion state of a page, owned by WikiPage and used by a single thread
+		private final ExpansionLimits limits;
+		private final long deadline;//System.nanoTime() at which page expansion expires, meaningful only if max_page_time > 0
+		private int depth;
+		private int nodes;
+		private long include_size;
+		private Limit stopped;//limit that stopped the expansion of the page, null if expansion is in progress
+		private boolean reported;//true if the error marker of stopped is written
+		private long lua_instructions;//Lua instructions and time in ns of the completed #invoke
+		private long lua_time;
+		private Limit scripts_stopped;//budget of scripts exhausted by the page, null if scripts can run
+
+		PageState(ExpansionLimits limits) {
+			this.limits = limits;
+			deadline = System.nanoTime() + limits.max_page_time * 1000000;
+		}
+
+		public ExpansionLimits getLimits() {
+			return limits;
+		}
+
+		public void checkScript(long invoke_start, long instructions) throws LimitException {//throws if a budget of the #invoke started at invoke_start,
+//which executed the given Lua instructions so far, or a budget of the page is exhausted; the caller shall not check again a failed #invoke
+			long now = System.nanoTime();
+			if (stopped == Limit.PAGE_TIME || limits.max_page_time > 0 && now - deadline > 0)
+				throw new LimitException(stop(Limit.PAGE_TIME));
+			if (scripts_stopped != null)
+				throw new LimitException(scripts_stopped);
+			long time = now - invoke_start;
+			if (limits.max_invoke_time > 0 && time > limits.max_invoke_time * 1000000)
+				throw new LimitException(limits.count(Limit.INVOKE_TIME));
+			if (limits.max_invoke_instructions > 0 && instructions > limits.max_invoke_instructions)
+				throw new LimitException(limits.count(Limit.INVOKE_INSTRUCTIONS));
+			if (limits.max_lua_time > 0 && lua_time + time > limits.max_lua_time * 1000000)
+				throw new LimitException(scripts_stopped = limits.count(Limit.LUA_TIME));
+			if (limits.max_lua_instructions > 0 && lua_instructions + instructions > limits.max_lua_instructions)
+				throw new LimitException(scripts_stopped = limits.count(Limit.LUA_INSTRUCTIONS));
+		}
+
+		public void addScript(long instructions, long time) {//adds the Lua instructions and the time in ns of a completed #invoke
+			lua_instructions += instructions;
+			lua_time += time;
+			limits.invokes.incrementAndGet();
+			limits.lua_instructions.addAndGet(instructions);
+			limits.lua_time.addAndGet(time);
+		}
+
+		public long getLuaInstructions() {
+			return lua_instructions;
+		}
+
+		public long getLuaTime() {//in ns
+			return lua_time;
+		}
+
+		Limit enterNode() {//an invocation is going to be expanded, returns the limit that prevents it or null
+			if (stopped != null)
+				return stopped;
+			if (limits.max_nodes > 0 && ++nodes > limits.max_nodes)
+				return stop(Limit.NODES);
+			if (limits.max_page_time > 0 && System.nanoTime() - deadline > 0)
+				return stop(Limit.PAGE_TIME);
+			return null;
+		}
+
+		boolean enterTemplate() {//false if the expansion would be too deep, otherwise call exitTemplate() at the end of the expansion
+			if (limits.max_depth > 0 && depth >= limits.max_depth) {
+				limits.exceeded.incrementAndGet(Limit.DEPTH.ordinal());
+				return false;
+			}
+			depth++;
+			return true;
+		}
+
+		void exitTemplate() {
+			depth--;
+		}
+
+		boolean include(int size) {//adds the size of an expansion, false if the include size is exceeded by this expansion
+			include_size += size;
+			if (stopped == null && limits.max_include_size > 0 && include_size > limits.max_include_size) {
+				stop(Limit.INCLUDE_SIZE);
+				return false;
+			}
+			return true;
+		}
+
+		boolean report() {//true only the first time, when the error marker of the page shall be written
+			if (reported)
+				return false;
+			reported = true;
+			return true;
+		}
+
+		private Limit stop(Limit limit) {
+			if (stopped == null)
+				stopped = limits.count(limit);
+			return limit;
+		}
+	}
+
+	public static class LimitException extends Exception {//a limit is exceeded
+		private static final long serialVersionUID = 4471285061320194727L;
+		private final Limit limit;
+
+		public LimitException(Limit limit) {
+			super(limit.getMessage());
+			this.limit = limit;
+		}
+
+		public Limit getLimit() {
+			return limit;
+		}
+	}
+
+	public ExpansionLimits(int max_depth, int max_nodes, int max_include_size, long max_invoke_time, long max_page_time) {//without budgets of scripts
+		this(max_depth, max_nodes, max_include_size, max_invoke_time, max_page_time, 0, 0, 0);
+	}
+
+	public ExpansionLimits(int max_depth, int max_nodes, int max_include_size, long max_invoke_time, long max_page_time,
+			long max_invoke_instructions, long max_lua_time, long max_lua_instructions) {
+		if (max_depth < 0 || max_nodes < 0 || max_include_size < 0 || max_invoke_time < 0 || max_page_time < 0
+				|| max_invoke_instructions < 0 || max_lua_time < 0 || max_lua_instructions < 0)
+			throw new IllegalArgumentException("limits cannot be negative");
+		this.max_depth = max_depth;
+		this.max_nodes = max_nodes;
+		this.max_include_size = max_include_size;
+		this.max_invoke_time = max_invoke_time;
+		this.max_page_time = max_page_time;
+		this.max_invoke_instructions = max_invoke_instructions;
+		this.max_lua_time = max_lua_time;
+		this.max_lua_instructions = max_lua_instructions;
+	}
+
+	public ExpansionLimits withTimes(long max_invoke_time, long max_page_time) {//same limits with the given times in ms
+		return new ExpansionLimits(max_depth, max_nodes, max_include_size, max_invoke_time, max_page_time, max_invoke_instructions, max_lua_time, max_lua_instructions);
+	}
+
+	public ExpansionLimits withScriptBudgets(long max_invoke_instructions, long max_lua_time, long max_lua_instructions) {//same limits with the given budgets of scripts, time in ms
+		return new ExpansionLimits(max_depth, max_nodes, max_include_size, max_invoke_time, max_page_time, max_invoke_instructions, max_lua_time, max_lua_instructions);
+	}
+
+	public PageState newPageState() {//the time of the page starts now
+		return new PageState(this);
+	}
+
+	public int getMaxDepth() {
+		return max_depth;
+	}
+
+	public int getMaxNodes() {
+		return max_nodes;
+	}
+
+	public int getMaxIncludeSize() {
+		return max_include_size;
+	}
+
+	public long getMaxInvokeTime() {
+		return max_invoke_time;
+	}
+
+	public long getMaxPageTime() {
+		return max_page_time;
+	}
+
+	public long getMaxInvokeInstructions() {
+		return max_invoke_instructions;
+	}
+
+	public long getMaxLuaTime() {
+		return max_lua_time;
+	}
+
+	public long getMaxLuaInstructions() {
+		return max_lua_instructions;
+	}
+
+	public long getExceeded(Limit limit) {//number of times the limit was exceeded: once per page for node count, include size, page time and budgets of the page
+		return exceeded.get(limit.ordinal());
+	}
+
+	private Limit count(Limit limit) {
+		exceeded.incrementAndGet(limit.ordinal());
+		return limit;
+	}
+
+	public long getInvokes() {//number of #invoke, nested ones are counted with the outermost one
+		return invokes.get();
+	}
+
+	public long getLuaInstructions() {//total Lua instructions of the completed #invoke
+		return lua_instructions.get();
+	}
+
+	public long getLuaTime() {//total time in ns of the completed #invoke
+		return lua_time.get();
+	}
+
+	public static String format_error(String error_msg) {//twin of ParserFunction.format_error()
+		return "<strong class=\"error\">" + error_msg + "</strong>";
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("ExpansionLimits: depth=" + max_depth + ", nodes=" + max_nodes + ", include size=" + max_include_size
+			+ ", invoke time=" + max_invoke_time + " ms, page time=" + max_page_time + " ms, invoke instructions=" + max_invoke_instructions
+			+ ", lua time=" + max_lua_time + " ms, lua instructions=" + max_lua_instructions + "; exceeded:");
+		for (Limit limit : Limit.values())
+			sb.append(' ').append(limit.name().toLowerCase()).append('=').append(exceeded.get(limit.ordinal()));
+		sb.append("; scripts: invokes=").append(invokes.get()).append(", instructions=").append(lua_instructions.get())
+			.append(", time=").append(lua_time.get() / 1000000).append(" ms");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,170 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import wiki.tools.WikiPage;
+
+/*
+Java Flight Recorder events of rendering, to be inspected in JDK Mission Control together with GC and allocation data, e.g.:
+java -XX:StartFlightRecording=filename=render.jfr,settings=profile -cp ... wiki.BatchRenderer ...
+An event is used as: event.begin() before the operation and event.end(...) after it, the fields are set only if the event is recorded;
+when no recording is active the cost is negligible. Events of templates and parser functions are frequent, so by default they are
+recorded only if they take at least 1 ms, the threshold can be changed in the settings of the recording.
+*/
+public final class JfrEvents {
+	private final static String CATEGORY = "Wiki Parser";
+
+	private JfrEvents() {
+	}
+
+	@Name("wiki.Parse")
+	@Label("Parse")
+	@Description("Expansion of wikitext by TemplateParser.parse(), for a page or for frame:preprocess() of a module")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public final static class Parse extends Event {
+		@Label("Page")
+		String page;
+		@Label("Input Chars")
+		long input;
+		@Label("Output Chars")
+		long output;
+
+		public void end(WikiPage wp, long input, long output) {
+			end();
+			if (shouldCommit()) {
+				page = wp.getPagename();
+				this.input = input;
+				this.output = output;
+				commit();
+			}
+		}
+	}
+
+	@Name("wiki.Template")
+	@Label("Template")
+	@Description("Expansion of a template")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("1 ms")
+	public final static class Template extends Event {
+		@Label("Page")
+		String page;
+		@Label("Template")
+		String template;
+		@Label("Output Chars")
+		long output;
+
+		public void end(WikiPage wp, String template, long output) {
+			end();
+			if (shouldCommit()) {
+				page = wp.getPagename();
+				this.template = template;
+				this.output = output;
+				commit();
+			}
+		}
+	}
+
+	@Name("wiki.ParserFunction")
+	@Label("Parser Function")
+	@Description("Evaluation of a parser function, called by wikitext or by a module")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	@Threshold("1 ms")
+	public final static class ParserFunction extends Event {
+		@Label("Page")
+		String page;
+		@Label("Function")
+		String function;
+		@Label("Output Chars")
+		long output;
+
+		public void end(WikiPage wp, String function, String result) {//result may be null
+			end();
+			if (shouldCommit()) {
+				page = wp.getPagename();
+				this.function = function.toLowerCase();//names of parser functions are case insensitive
+				output = result == null ? 0 : result.length();
+				commit();
+			}
+		}
+	}
+
+	@Name("wiki.Invoke")
+	@Label("Invoke")
+	@Description("Execution of a function of a Lua module by #invoke")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public final static class Invoke extends Event {
+		@Label("Page")
+		String page;
+		@Label("Module")
+		String module;
+		@Label("Function")
+		String function;
+		@Label("Output Chars")
+		long output;
+
+		public void end(WikiPage wp, String module, String function, String result) {//result is null in case of error
+			end();
+			if (shouldCommit()) {
+				page = wp.getPagename();
+				this.module = module;
+				this.function = function;
+				output = result == null ? 0 : result.length();
+				commit();
+			}
+		}
+	}
+
+	@Name("wiki.Format")
+	@Label("Format")
+	@Description("Formatting of expanded wikitext to html by WikiFormatter")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	public final static class Format extends Event {
+		@Label("Page")
+		String page;
+		@Label("Output Chars")
+		long output;
+
+		public void end(CharSequence page, long output) {
+			end();
+			if (shouldCommit()) {
+				this.page = page.toString();
+				this.output = output;
+				commit();
+			}
+		}
+	}
+}
@@ -23,21 +23,10 @@ DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
 */
 package wiki;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.util.Date;
-import java.util.LinkedHashMap;
 
-import json.JSONException;
-import json.JSONObject;
-import json.JSONValue;
-
-import static wiki.NameSpaces.getNameSpaceNumber;
 import static wiki.NameSpaces.getNameSpaceByNumber;
 import static wiki.tools.Utilities.dateFormatter;
 import static wiki.tools.Utilities.normaliseTitle;
@@ -176,6 +165,7 @@ public final class MagicWords {
     public static String evaluate(MagicWord magicWord, String parameter, WikiPage wp) {
 		String title = wp.getPagename();
 		Date revision = wp.getRevision();//note: revision is nullable
+		wp.addDependency(getDependency(magicWord, parameter));
         switch (magicWord) {
             case anchorencode:
 	            if (parameter != null) {
@@ -255,7 +245,7 @@ public final class MagicWords {
                 return encodeUrl(normaliseTitle(getNamespace(getFullpagename(parameter, title)), false));
             case namespacenumber:
 				String namespace = getNamespace(getFullpagename(parameter, title));
-				Integer nsn = getNameSpaceNumber(namespace);
+				Integer nsn = wp.getSite().getNameSpaceNumber(namespace);
 				if (nsn != null)
 					return Integer.toString(nsn);
 				else return null;
@@ -265,7 +255,7 @@ public final class MagicWords {
 					try {
 						nsn = Integer.parseInt(parameter);
 					} catch (NumberFormatException nfe) {
-						nsn = getNameSpaceNumber(parameter);
+						nsn = wp.getSite().getNameSpaceNumber(parameter);
 					}
 				if (nsn == null)
 					return null;
@@ -276,7 +266,7 @@ public final class MagicWords {
 					try {
 						nsn = Integer.parseInt(parameter);
 					} catch (NumberFormatException nfe) {
-						nsn = getNameSpaceNumber(parameter);
+						nsn = wp.getSite().getNameSpaceNumber(parameter);
 					}
 				if (nsn == null)
 					return null;
@@ -329,34 +319,9 @@ public final class MagicWords {
             case _e_q_u_a_l_:
                 return "=";
             case _int_:
-				if (mw_localization == null) {
-					String lang = wp.getLocale().getLanguage();
-					String filename = "resources\\" + lang + ".json";//localization files can be downloaded from: https://gerrit.wikimedia.org/g/mediawiki/core/%2B/HEAD/languages/i18n
-					try {
-						LineNumberReader in = new LineNumberReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8));
-						String st;
-						StringBuilder sb = new StringBuilder();
-						while ((st = in.readLine()) != null) {
-							sb.append(st).append('\n');
-						}
-						in.close();
-						JSONValue result = JSONValue.parse(sb.toString());
-						if (result instanceof JSONObject) {
-							mw_localization = (LinkedHashMap<String, Object>) result.toJava();
-						} else System.out.println("Warning, incorrect JSON content in file " + filename);
-					} catch (JSONException ex) {
-						System.out.println("Warning: " + ex.getMessage());
-					} catch (FileNotFoundException ioex) {
-						System.out.println("Warning, localization file not found: " + filename);
-					} catch (IOException ioex) {
-//ignore
-					}
-				}
-				if (mw_localization != null) {
-					Object val = mw_localization.get(parameter);
-					if (val instanceof String)
-						return (String) val;
-				}
+				String message = wp.getSite().getMessage(parameter);
+				if (message != null)
+					return message;
 				return parameter;//todo: implement logic to get parameters from MediaWiki namespace
             default:
                 break;
@@ -364,7 +329,6 @@ public final class MagicWords {
 
         return magicWord.name();
     }
-	private static LinkedHashMap<String, Object> mw_localization = null;
 
     private static String getSubPageName(String parameter, String title) {
         String pagename = getPagenameHelper(parameter, title);
@@ -374,6 +338,26 @@ public final class MagicWords {
 		else return pagename;
     }
 
+    private static TemplateMemo.Dependency getDependency(MagicWord magicWord, String parameter) {//see TemplateMemo
+        switch (magicWord) {
+            case currentday: case localday: case currentday2: case localday2:
+            case currentdayname: case localdayname: case currentdayofweek: case localdayofweek:
+            case currentmonth: case localmonth: case currentmonthabbr: case localmonthabbr: case currentmonthname: case localmonthname:
+            case currenttime: case localtime: case currenthour: case localhour: case currentweek: case localweek:
+            case currentyear: case localyear: case currenttimestamp: case localtimestamp:
+                return TemplateMemo.Dependency.VOLATILE;
+            case revisionyear: case revisionday: case revisionday2: case revisionmonth: case revisionmonth1: case revisiontimestamp:
+                return TemplateMemo.Dependency.PAGE;
+            case articlepagename: case articlepagenamee: case subjectpagename: case subjectpagenamee: case talkpagename: case talkpagenamee:
+            case basepagename: case basepagenamee: case fullpagename: case fullpagenamee: case pagename: case pagenamee:
+            case rootpagename: case rootpagenamee: case subpagename: case subpagenamee:
+            case namespace: case namespacee: case namespacenumber:
+                return parameter == null || parameter.isEmpty() ? TemplateMemo.Dependency.PAGE : TemplateMemo.Dependency.NONE;
+            default:
+                return TemplateMemo.Dependency.NONE;
+        }
+    }
+
     private static String getBasePageName(String parameter, String title) {
         String pagename = getPagenameHelper(parameter, title);
 		int idx = pagename.lastIndexOf("/");
@@ -23,12 +23,15 @@ DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
 */
 package wiki;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 /* The class NameSpaces is an holder for Wikipedia namespaces
+   The static table contains the canonical namespaces, it is never modified; localized aliases of a site are kept in wiki.tools.SiteContext
 */
 final public class NameSpaces {
 
@@ -55,7 +58,7 @@ final public class NameSpaces {
 			this.id = id;
 			this.name = name;
 			this.canonicalName = canonicalName;
-			this.aliases = aliases;
+			this.aliases = aliases == null ? null : Collections.unmodifiableList(aliases);
 			this.hasSubpages = hasSubpages;
 			this.hasGenderDistinction = hasGenderDistinction;
 			this.isCapitalized = isCapitalized;
@@ -129,44 +132,50 @@ final public class NameSpaces {
 			return associated;
 		}
 
-		public void add_alias(String alias) {
+		public NameSpace with_alias(String alias) {//returns a copy of this namespace with the given alias
 			if (aliases == null)
 				throw new RuntimeException("unsupported operation for namespace " + canonicalName);
-			if (!aliases.contains(alias))
-				aliases.add(alias);
+			if (aliases.contains(alias))
+				return this;
+			ArrayList<String> list = new ArrayList<>(aliases);
+			list.add(alias);
+			return new NameSpace(id, name, canonicalName, hasSubpages, hasGenderDistinction, isCapitalized, isContent, isIncludable,
+				isMovable, isSubject, isTalk, list, subject, talk, associated);
 		}
 
 	}
 
-	private final static HashMap<Integer, NameSpace> namespaces = new HashMap<>();
+	private final static Map<Integer, NameSpace> namespaces;
 	static {
-		namespaces.put(-2, new NameSpace(-2, "Media", "Media", false, false, true, false, true, false, false, true, null, -2, null, null));
-		namespaces.put(-1, new NameSpace(-1, "Special", "Special", false, false, true, false, true, false, false, true, null, -1, null, null));
-		namespaces.put(0, new NameSpace(0, "", "", false, false, true, true, true, false, true, false, null, 0, 1, 1));
-		namespaces.put(1, new NameSpace(1, "Talk", "Talk", true, false, true, false, true, false, false, true, null, 0, 1, 0));
-		namespaces.put(2, new NameSpace(2, "User", "User", true, true, true, false, true, false, true, false, null, 2, 3, 3));
-		namespaces.put(3, new NameSpace(3, "User talk", "User talk", true, true, true, false, true, false, false, true, null, 2, 3, 2));
-		namespaces.put(4, new NameSpace(4, "Project", "Project", true, false, true, false, true, false, true, false, new java.util.ArrayList<>(Arrays.asList("WT", "Wiktionary")), 4, 5, 5));
-		namespaces.put(5, new NameSpace(5, "Project talk", "Project talk", true, false, true, false, true, false, false, true, new java.util.ArrayList<>(Collections.singletonList("Wiktionary_talk")), 4, 5, 4));
-		namespaces.put(6, new NameSpace(6, "File", "File", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("Image")), 6, 7, 7));
-		namespaces.put(7, new NameSpace(7, "File talk", "File talk", true, false, true, false, true, false, false, true,  new java.util.ArrayList<>(Collections.singletonList("Image_talk")), 6, 7, 6));
-		namespaces.put(8, new NameSpace(8, "MediaWiki", "MediaWiki", true, false, true, false, true, false, true, false, null, 8, 9, 9));
-		namespaces.put(9, new NameSpace(9, "MediaWiki talk", "MediaWiki talk", true, false, true, false, true, false, false, true, null, 8, 9, 8));
-		namespaces.put(10, new NameSpace(10, "Template", "Template", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("T")), 10, 11, 11));
-		namespaces.put(11, new NameSpace(11, "Template talk", "Template talk", true, false, true, false, true, false, false, true, null, 10, 11, 10));
-		namespaces.put(12, new NameSpace(12, "Help", "Help", true, false, true, false, true, false, true, false, null, 12, 13, 13));
-		namespaces.put(13, new NameSpace(13, "Help talk", "Help talk", true, false, true, false, true, false, false, true, null, 12, 13, 12));
-		namespaces.put(14, new NameSpace(14, "Category", "Category", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("CAT")), 14, 15, 15));
-		namespaces.put(15, new NameSpace(15, "Category talk", "Category talk", true, false, true, false, true, false, false, true, null, 14, 15, 14));
-
-		namespaces.put(100, new NameSpace(100, "Portal", "Portal", false, false, true, false, true, false, true, false, new java.util.ArrayList<>(Arrays.asList("AP", "Appendix")), 100, 101, 101));
-		namespaces.put(101, new NameSpace(101, "Portal talk", "Portal talk", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("Appendix_talk")), 100, 101, 100));
-
-		namespaces.put(828, new NameSpace(828, "Module", "Module", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("MOD")), 828, 829, 829));
-		namespaces.put(829, new NameSpace(829, "Module talk", "Module talk", false, false, true, false, true, false, false, true, null, 828, 829, 828));
+		HashMap<Integer, NameSpace> table = new HashMap<>();
+		table.put(-2, new NameSpace(-2, "Media", "Media", false, false, true, false, true, false, false, true, null, -2, null, null));
+		table.put(-1, new NameSpace(-1, "Special", "Special", false, false, true, false, true, false, false, true, null, -1, null, null));
+		table.put(0, new NameSpace(0, "", "", false, false, true, true, true, false, true, false, null, 0, 1, 1));
+		table.put(1, new NameSpace(1, "Talk", "Talk", true, false, true, false, true, false, false, true, null, 0, 1, 0));
+		table.put(2, new NameSpace(2, "User", "User", true, true, true, false, true, false, true, false, null, 2, 3, 3));
+		table.put(3, new NameSpace(3, "User talk", "User talk", true, true, true, false, true, false, false, true, null, 2, 3, 2));
+		table.put(4, new NameSpace(4, "Project", "Project", true, false, true, false, true, false, true, false, new java.util.ArrayList<>(Arrays.asList("WT", "Wiktionary")), 4, 5, 5));
+		table.put(5, new NameSpace(5, "Project talk", "Project talk", true, false, true, false, true, false, false, true, new java.util.ArrayList<>(Collections.singletonList("Wiktionary_talk")), 4, 5, 4));
+		table.put(6, new NameSpace(6, "File", "File", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("Image")), 6, 7, 7));
+		table.put(7, new NameSpace(7, "File talk", "File talk", true, false, true, false, true, false, false, true,  new java.util.ArrayList<>(Collections.singletonList("Image_talk")), 6, 7, 6));
+		table.put(8, new NameSpace(8, "MediaWiki", "MediaWiki", true, false, true, false, true, false, true, false, null, 8, 9, 9));
+		table.put(9, new NameSpace(9, "MediaWiki talk", "MediaWiki talk", true, false, true, false, true, false, false, true, null, 8, 9, 8));
+		table.put(10, new NameSpace(10, "Template", "Template", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("T")), 10, 11, 11));
+		table.put(11, new NameSpace(11, "Template talk", "Template talk", true, false, true, false, true, false, false, true, null, 10, 11, 10));
+		table.put(12, new NameSpace(12, "Help", "Help", true, false, true, false, true, false, true, false, null, 12, 13, 13));
+		table.put(13, new NameSpace(13, "Help talk", "Help talk", true, false, true, false, true, false, false, true, null, 12, 13, 12));
+		table.put(14, new NameSpace(14, "Category", "Category", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("CAT")), 14, 15, 15));
+		table.put(15, new NameSpace(15, "Category talk", "Category talk", true, false, true, false, true, false, false, true, null, 14, 15, 14));
+
+		table.put(100, new NameSpace(100, "Portal", "Portal", false, false, true, false, true, false, true, false, new java.util.ArrayList<>(Arrays.asList("AP", "Appendix")), 100, 101, 101));
+		table.put(101, new NameSpace(101, "Portal talk", "Portal talk", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("Appendix_talk")), 100, 101, 100));
+
+		table.put(828, new NameSpace(828, "Module", "Module", false, false, true, false, true, false, true, false,  new java.util.ArrayList<>(Collections.singletonList("MOD")), 828, 829, 829));
+		table.put(829, new NameSpace(829, "Module talk", "Module talk", false, false, true, false, true, false, false, true, null, 828, 829, 828));
+		namespaces = Collections.unmodifiableMap(table);
 	}
 
-	public static HashMap<Integer, NameSpace> getNameSpaces() {
+	public static Map<Integer, NameSpace> getNameSpaces() {
 		return namespaces;
 	}
 
@@ -179,6 +188,10 @@ final public class NameSpaces {
 	}
 
 	public static Integer getNameSpaceNumber(String namespace) {
+		return getNameSpaceNumber(namespaces, namespace);
+	}
+
+	public static Integer getNameSpaceNumber(Map<Integer, NameSpace> namespaces, String namespace) {//lookup in the given table, e.g. namespaces of a site
 		namespace = normaliseNameSpace(namespace);
 		for (Entry<Integer, NameSpace> entry : namespaces.entrySet()) {
 			NameSpace ns = entry.getValue();
@@ -0,0 +1,222 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.bliki.extensions.scribunto.template.Frame;
+import wiki.tools.SiteContext;
+import wiki.tools.WikiPage;
+import static wiki.tools.Utilities.flipTemplateName;
+
+/*
+Memo of template expansions, keyed by resolved template name and expanded parameters (in order), see TemplateParser.setMemo().
+
+The result of an expansion is reused only if it depends just on template and parameters: while a template is expanded, the
+sources of other dependencies report them to the page with WikiPage.addDependency():
+- PAGE: the expansion uses the title or the revision of the page, e.g. {{PAGENAME}} or mw.title.getCurrentTitle()
+- VOLATILE: the expansion uses the current time, random numbers or it detected a template loop, e.g. {{CURRENTYEAR}} or os.time()
+Expansions without dependencies are shared by all pages of the site, expansions depending on the page are kept by the page itself
+and expansions with volatile dependency are never reused. Dependencies propagate to the enclosing expansions.
+
+A memo is bound to the site and to the templates and modules given in the constructor, pages with other sources do not use it.
+Lua modules are assumed not to keep state between invocations, as done with strict_Lua_invocation = false in WikiPage.
+*/
+public final class TemplateMemo {
+	public final static int DEFAULT_MAX_ENTRIES = 50000;//the memo is cleared when this limit is reached
+	public final static int DEFAULT_MAX_PAGE_ENTRIES = 1000;//the memo of a page is cleared when this limit is reached
+
+	public enum Dependency {NONE, PAGE, VOLATILE}//what an expansion depends on besides template and parameters, in increasing order
+
+	private final SiteContext site;
+	private final Map<String, String> name2template;
+	private final Map<String, String> name2module;
+	private final int max_entries;
+	private final int max_page_entries;
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong page_hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong uncacheable = new AtomicLong();//misses whose result cannot be reused
+
+	private final static class Entry {
+		final String text;
+		final String[] templates;//templates expanded to produce text, needed to detect loops with the caller
+
+		Entry(String text, String[] templates) {
+			this.text = text;
+			this.templates = templates;
+		}
+	}
+
+	public final static class PageState {//memo state of a page, owned by WikiPage and used by a single thread
+		private Dependency dependency = Dependency.NONE;//dependency of the expansion in progress
+		private HashSet<String> templates;//templates expanded by the expansion in progress, null if no expansion is in progress
+		private final HashMap<String, Entry> entries = new HashMap<>();//expansions depending on the page
+
+		public void addDependency(Dependency dependency) {
+			if (dependency.compareTo(this.dependency) > 0)
+				this.dependency = dependency;
+		}
+	}
+
+	final static class Expansion {//saved state of the enclosing expansion, see begin() and end()
+		final Dependency dependency;
+		final HashSet<String> templates;
+
+		Expansion(Dependency dependency, HashSet<String> templates) {
+			this.dependency = dependency;
+			this.templates = templates;
+		}
+	}
+
+	public TemplateMemo(SiteContext site, Map<String, String> name2template, Map<String, String> name2module) {
+		this(site, name2template, name2module, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_PAGE_ENTRIES);
+	}
+
+	public TemplateMemo(SiteContext site, Map<String, String> name2template, Map<String, String> name2module, int max_entries, int max_page_entries) {
+		if (max_entries < 1 || max_page_entries < 1)
+			throw new IllegalArgumentException("max_entries and max_page_entries must be positive");
+		this.site = site;
+		this.name2template = name2template;
+		this.name2module = name2module;
+		this.max_entries = max_entries;
+		this.max_page_entries = max_page_entries;
+	}
+
+	boolean accepts(WikiPage wp) {
+		return wp.hasSources(site, name2template, name2module);
+	}
+
+	static String key(String identifier, Map<String, String> parameterMap) {
+		StringBuilder sb = new StringBuilder(identifier);
+		for (Map.Entry<String, String> entry : parameterMap.entrySet())
+			sb.append('\u0000').append(entry.getKey()).append('\u0001').append(entry.getValue());
+		return sb.toString();
+	}
+
+	static void expanded(String identifier, WikiPage wp) {//the template is expanded, it matters for loop detection
+		PageState state = wp.getMemoState();
+		if (state.templates != null)
+			state.templates.add(identifier);
+	}
+
+	String get(String key, WikiPage wp, Frame parent) {//returns null if the expansion must be done
+		PageState state = wp.getMemoState();
+		Entry entry = entries.get(key);
+		Dependency dependency = Dependency.NONE;
+		if (entry == null) {
+			entry = state.entries.get(key);
+			dependency = Dependency.PAGE;
+		}
+		if (entry == null || calledBy(entry, parent))//in the latter case the expansion would detect a loop
+			return null;
+		(dependency == Dependency.NONE ? hits : page_hits).incrementAndGet();
+		state.addDependency(dependency);
+		if (state.templates != null)
+			for (String template : entry.templates)
+				state.templates.add(template);
+		return entry.text;
+	}
+
+	private boolean calledBy(Entry entry, Frame parent) {
+		for (; parent != null; parent = parent.getParent()) {
+			String page = parent.getPage(site);
+			String flipped = flipTemplateName(page);
+			for (String template : entry.templates)
+				if (template.equals(page) || template.equals(flipped))
+					return true;
+		}
+		return false;
+	}
+
+	Expansion begin(WikiPage wp) {
+		PageState state = wp.getMemoState();
+		Expansion saved = new Expansion(state.dependency, state.templates);
+		state.dependency = Dependency.NONE;
+		state.templates = new HashSet<>();
+		return saved;
+	}
+
+	void end(Expansion saved, String key, String text, WikiPage wp) {//text is null in case of failure
+		PageState state = wp.getMemoState();
+		Dependency dependency = state.dependency;
+		HashSet<String> templates = state.templates;
+		state.dependency = saved.dependency;
+		state.templates = saved.templates;
+		state.addDependency(dependency);
+		if (saved.templates != null)
+			saved.templates.addAll(templates);
+		if (text == null)
+			return;
+		misses.incrementAndGet();
+		switch (dependency) {
+			case NONE:
+				if (entries.size() >= max_entries)
+					entries.clear();
+				entries.put(key, new Entry(text, templates.toArray(new String[0])));
+				break;
+			case PAGE:
+				if (state.entries.size() >= max_page_entries)
+					state.entries.clear();
+				state.entries.put(key, new Entry(text, templates.toArray(new String[0])));
+				break;
+			default:
+				uncacheable.incrementAndGet();
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public long getHits() {//including hits of expansions depending on the page
+		return hits.get() + page_hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRate() {
+		long lookups = getHits() + misses.get();
+		return lookups == 0 ? 0 : (double) getHits() / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "TemplateMemo: size=" + entries.size() + ", hits=" + hits.get() + ", page hits=" + page_hits.get() + ", misses=" + misses.get()
+			+ ", uncacheable=" + uncacheable.get() + ", hit rate=" + String.format(Locale.ROOT, "%.1f%%", getHitRate() * 100);
+	}
+}
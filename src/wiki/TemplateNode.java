@@ -0,0 +1,172 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki;
+
+import wiki.tools.WikiScanner;
+
+/*
+Nodes of compiled wikitext produced by TemplateParser.compile(): a wikitext is scanned once and
+the resulting sequence of nodes is evaluated many times against different frames.
+Nodes are immutable, the only lazy parts (fragments, arguments and fallback of invocations) are built on
+first use and the result is always the same, so nodes can be shared by threads.
+Nodes refer to regions of the compiled text, which is never copied as a whole: simple text is appended to the output directly
+from it, arguments are copied only when used, e.g. when they are stored in a Frame, and lazy parts share its WikiScanner.Index,
+so nested constructs are indexed only once.
+*/
+abstract class TemplateNode {
+
+	final static TemplateNode[] EMPTY = new TemplateNode[0];
+
+	static final class Text extends TemplateNode {//simple text, copied as is from source
+		final String source;
+		final int start, end;
+
+		Text(String source, int start, int end) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	static final class ParameterHolder extends TemplateNode {//{{{name|default}}}
+		final Fragment name;//may be null
+		final Fragment def_value;//may be null
+
+		ParameterHolder(Fragment name, Fragment def_value) {
+			this.name = name;
+			this.def_value = def_value;
+		}
+	}
+
+	static final class Invocation extends TemplateNode {//magic word, parser function or template call: {{identifier|arg1|...}}
+		final Fragment identifier;
+		private final WikiScanner.Index source;
+		private final int[] arg_bounds;//start and end in source of each argument
+		private final int[] equal_pos;//position of = in each argument, -1 if not present
+		private final int fallback;//position in source just after the opening {{
+		private final int end;//end of the compiled region of source
+		private volatile String[] args;//raw arguments, used by magic words and parser functions
+		private volatile String[][] parameters;//names and values of template parameters
+		private volatile TemplateNode[] fallback_nodes;
+
+		Invocation(Fragment identifier, int[] arg_bounds, int[] equal_pos, WikiScanner.Index source, int fallback, int end) {
+			this.identifier = identifier;
+			this.arg_bounds = arg_bounds;
+			this.equal_pos = equal_pos;
+			this.source = source;
+			this.fallback = fallback;
+			this.end = end;
+		}
+
+		int getArgCount() {
+			return equal_pos.length;
+		}
+
+		String[] getArgs() {//arguments are copied from source on first use
+			String[] result = args;
+			if (result == null) {
+				String str = source.getText();
+				result = new String[equal_pos.length];
+				for (int i = 0; i < result.length; i++)
+					result[i] = str.substring(arg_bounds[2 * i], arg_bounds[2 * i + 1]);
+				args = result;
+			}
+			return result;
+		}
+
+		String[] getArgNames() {//names of template parameters, unnamed parameters are numbered
+			return getParameters()[0];
+		}
+
+		String[] getArgValues() {//values of template parameters, expanded on demand by Frame
+			return getParameters()[1];
+		}
+
+		private String[][] getParameters() {
+			String[][] result = parameters;
+			if (result == null) {
+				String str = source.getText();
+				String[] arg_names = new String[equal_pos.length];
+				String[] arg_values = new String[equal_pos.length];
+				int pos = 1;
+				for (int i = 0; i < equal_pos.length; i++) {
+					int start = arg_bounds[2 * i];
+					int end = arg_bounds[2 * i + 1];
+					String param_name = "";
+					String value;
+					int idx = equal_pos[i];
+					if (idx != -1 && !(param_name = trim(str, start, start + idx)).isEmpty()) {//named parameter
+						value = trim(str, start + idx + 1, end);//skip "="
+					} else {//unnamed parameter
+						value = str.substring(start, end);
+					}
+					if (param_name.isEmpty())
+						param_name = Integer.toString(pos++);//unnamed parameter
+					arg_names[i] = param_name;
+					arg_values[i] = value;
+				}
+				parameters = result = new String[][] {arg_names, arg_values};
+			}
+			return result;
+		}
+
+		private static String trim(String str, int start, int end) {//twin of String.trim() on the substring from start to end
+			while (start < end && str.charAt(start) <= ' ')
+				start++;
+			while (end > start && str.charAt(end - 1) <= ' ')
+				end--;
+			return str.substring(start, end);
+		}
+
+		TemplateNode[] getFallback() {//nodes to be evaluated after a literal {{ in case the invocation is not valid
+			TemplateNode[] nodes = fallback_nodes;
+			if (nodes == null)
+				fallback_nodes = nodes = TemplateParser.compile(source, fallback, end);
+			return nodes;
+		}
+	}
+
+	static final class Fragment {//piece of wikitext evaluated as TemplateParser.parseParameter()
+		final boolean plain;//true if text does not contain {{
+		final String text;//text of plain fragment, null otherwise
+		private final WikiScanner.Index source;
+		private final int start, end;//region of source
+		private volatile TemplateNode[] nodes;
+
+		Fragment(WikiScanner.Index source, int start, int end) {
+			plain = !source.hasBraces(start, end);
+			this.text = plain ? source.getText().substring(start, end) : null;
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+
+		TemplateNode[] getNodes() {
+			TemplateNode[] result = nodes;
+			if (result == null)
+				nodes = result = TemplateParser.compile(source, start, end);
+			return result;
+		}
+	}
+}
@@ -24,116 +24,265 @@ DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
 package wiki;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import wiki.parserfunctions.ParserFunction;
-import wiki.parserfunctions.ParserFunctions;
 import wiki.MagicWords;
+import wiki.tools.Preprocessor;
 import wiki.tools.WikiScanner;
 import wiki.tools.WikiPage;
-import static wiki.NameSpaces.getNameSpaceNumber;
 import static wiki.NameSpaces.getNameSpaceByNumber;
-import static wiki.tools.Utilities.deleteAll;
 import static wiki.tools.Utilities.flipTemplateName;
-import static wiki.tools.Utilities.process_include;
+import info.bliki.extensions.scribunto.engine.lua.LuaProfiler;
 import info.bliki.extensions.scribunto.template.Frame;
 
 /*
 The class TemplateParser implements light wiki template parser.
+
+Wikitext is compiled once into a sequence of TemplateNode (text, parameter holders and invocations) and then evaluated;
+compiled templates are cached per template name, so a template used many times in a page is scanned only once.
+Optionally also the results of template expansions are reused, see TemplateMemo.
 */
 final public class TemplateParser {
 	final static String category_label = "Category:";
 	final static Pattern categoryPattern = Pattern.compile("\\[\\[" + category_label + "[^\\]]+\\]\\]");
 
+	final static int max_cached_templates = 20000;//the cache is cleared when this limit is reached
+	final static int max_cached_fragments = 100000;//the cache is cleared when this limit is reached
+
+	private final ConcurrentHashMap<String, CompiledTemplate> templateCache = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, TemplateNode[]> fragmentCache = new ConcurrentHashMap<>();
+	private TemplateMemo memo = null;//optional memo of template expansions, see setMemo()
+	private ExpansionLimits limits = ExpansionLimits.DEFAULT;
+	private LuaProfiler lua_profiler = null;//optional profiler of Lua modules, see setLuaProfiler()
+	private TemplateProfiler profiler = null;//optional profiler of template expansion, see setProfiler()
+	private DiagnosticSink diagnostics = DiagnosticSink.NONE;
+
+	private static final class CompiledTemplate {
+		final String source;//raw template text, used to check that the cached template is still valid
+		final String text;//template text after processing of include tags and comments
+		private volatile TemplateNode[] body;
+
+		CompiledTemplate(String source) {
+			this.source = source;
+			text = Preprocessor.transclude(source).replace("{{{|safesubst:}}}", "");//twin in TestSuite
+		}
+
+		TemplateNode[] getBody() {//compiled only if the template is not a redirect
+			TemplateNode[] result = body;
+			if (result == null)
+				body = result = compile(text, 0);
+			return result;
+		}
+	}
+
+	public void setMemo(TemplateMemo memo) {//enables memoization of template expansions, null disables it (default); call before parsing
+		this.memo = memo;
+	}
+
+	public TemplateMemo getMemo() {
+		return memo;
+	}
+
+	public void setLimits(ExpansionLimits limits) {//limits of expansion, ExpansionLimits.NONE disables them; call before parsing
+		if (limits == null)
+			throw new IllegalArgumentException("limits cannot be null");
+		this.limits = limits;
+	}
+
+	public ExpansionLimits getLimits() {
+		return limits;
+	}
+
+	public void setLuaProfiler(LuaProfiler lua_profiler) {//enables profiling of Lua modules, null disables it (default); call before parsing
+		this.lua_profiler = lua_profiler;
+	}
+
+	public LuaProfiler getLuaProfiler() {
+		return lua_profiler;
+	}
+
+	public void setProfiler(TemplateProfiler profiler) {//enables profiling of templates, parser functions and magic words, null disables it (default); call before parsing
+		this.profiler = profiler;
+	}
+
+	public TemplateProfiler getProfiler() {
+		return profiler;
+	}
+
+	public void setDiagnostics(DiagnosticSink diagnostics) {//sink of diagnostic events, DiagnosticSink.NONE ignores them (default); call before parsing
+		if (diagnostics == null)
+			throw new IllegalArgumentException("diagnostics cannot be null");
+		this.diagnostics = diagnostics;
+	}
+
+	public DiagnosticSink getDiagnostics() {
+		return diagnostics;
+	}
+
 //main method parse string, returns evaluated string
 	public String parse(String string, WikiPage wp) {//external
+		JfrEvents.Parse event = new JfrEvents.Parse();
+		event.begin();
 		StringBuilder sb = new StringBuilder();
-		WikiScanner sh = new WikiScanner(delete_comments(string));
-		template_body(sh, sb, wp, null);
-        deleteAll(sb, "<nowiki>");
-        deleteAll(sb, "</nowiki>");
-		return sb.toString();
+		evaluate(compile(Preprocessor.stripComments(string), 0), sb, wp, null);
+		String result = Preprocessor.removeNowiki(sb);
+		event.end(wp, string.length(), result.length());
+		return result;
 	}
 	
 	public String parseParameter(String string, WikiPage wp, Frame parent) {//internal usage (used by parserfunctions)
 		if (string.contains("{{")) {
+			TemplateNode[] nodes = fragmentCache.get(string);
+			if (nodes == null) {
+				if (fragmentCache.size() >= max_cached_fragments)
+					fragmentCache.clear();
+				nodes = compile(string, 0);
+				fragmentCache.put(string, nodes);
+			}
 			StringBuilder sb = new StringBuilder();
-			WikiScanner sh = new WikiScanner(string);
-			template_body(sh, sb, wp, parent);
+			evaluate(nodes, sb, wp, parent);
 			return sb.toString();
 		} else return string;
 	}
 
+	private String parseParameter(TemplateNode.Fragment fragment, WikiPage wp, Frame parent) {
+		if (fragment.plain)
+			return fragment.text;
+		StringBuilder sb = new StringBuilder();
+		evaluate(fragment.getNodes(), sb, wp, parent);
+		return sb.toString();
+	}
+
+	private void evaluate(TemplateNode.Fragment fragment, StringBuilder sb, WikiPage wp, Frame parent) {//twin of parseParameter(), appends to sb
+		if (fragment.plain)
+			sb.append(fragment.text);
+		else evaluate(fragment.getNodes(), sb, wp, parent);
+	}
+
 //template_body ::= [simple_text] { (parameter_holder | invocation ) [simple_text] }* [any text]
-	private void template_body(WikiScanner sh, StringBuilder sb, WikiPage wp, Frame parent) {
-		String pre = sh.getStringWithoutOpening();
-		if (pre != null)
-			sb.append(pre);
+	static TemplateNode[] compile(String str, int start) {//compiles str starting from position start
+		return compile(new WikiScanner.Index(str), start, str.length());
+	}
+
+	static TemplateNode[] compile(WikiScanner.Index index, int start, int end) {//compiles the region of indexed text from start to end (not included)
+		ArrayList<TemplateNode> nodes = new ArrayList<>();
+		String str = index.getText();
+		int text_start = start;//pending simple text goes from text_start to the pointer, literal { and {{ included
+		WikiScanner sh = new WikiScanner(index, start, end);
+		sh.skipWithoutOpening();
 		while (sh.getSequence("{{")) {
 			int pointer = sh.getPointer(); //save pointer to be ready to retract in case of missing }}
 
 			if (sh.getSequence("{{")) {//handling cases like {{{{LC:Blabla}} ... }} and  {{{{{1}}} ... }}
 				sh.setPointer(pointer);//retract scanner
 			} else if (sh.getChar('{')) {
-					if (parameter_holder(sh, sb, wp, parent)) {
-						String str = sh.getStringWithoutOpening();//twin
-						if (str != null)
-							sb.append(str);
+					TemplateNode node = parameter_holder(sh);
+					if (node != null) {
+						addNode(nodes, str, text_start, pointer - 2, node);
+						text_start = sh.getPointer();
+						sh.skipWithoutOpening();//twin
 						continue;
 					}
 //here we have a pending literal {
-					sh.setPointer(pointer - 1);//partially retract scanner
-					sb.append("{");//save orphan { as literal
+					sh.setPointer(pointer - 1);//partially retract scanner, orphan { is kept as literal
 					continue;
 			}
 
-			String p = invocation_body(sh, wp, parent);
-			if (p != null) {
-				if (p.startsWith("{|") || p.startsWith(":") || p.startsWith(";") || p.startsWith("*") || p.startsWith("#")) {
-					sb.append("\n");//workaround01 - needed for correct handling of lemma Haus in german wiktionary
-				}
-				sb.append(p);
+			TemplateNode node = invocation_body(sh, pointer);
+			if (node != null) {
+				addNode(nodes, str, text_start, pointer - 2, node);
+				text_start = sh.getPointer();
 			} else {
-				sh.setPointer(pointer);//retract scanner
-				sb.append("{{");//push back unbalanced "{{"
+				sh.setPointer(pointer);//retract scanner, unbalanced "{{" is kept as literal
+			}
+			sh.skipWithoutOpening();//twin
+		}
+		if (sh.getPointer() > text_start)
+			nodes.add(new TemplateNode.Text(str, text_start, sh.getPointer()));
+		return nodes.isEmpty() ? TemplateNode.EMPTY : nodes.toArray(new TemplateNode[0]);
+	}
+
+	private static void addNode(ArrayList<TemplateNode> nodes, String str, int text_start, int text_end, TemplateNode node) {
+		if (text_end > text_start)
+			nodes.add(new TemplateNode.Text(str, text_start, text_end));
+		nodes.add(node);
+	}
+
+	private void evaluate(TemplateNode[] nodes, StringBuilder sb, WikiPage wp, Frame parent) {
+		for (TemplateNode node : nodes) {
+			if (node instanceof TemplateNode.Text) {
+				TemplateNode.Text text = (TemplateNode.Text) node;
+				sb.append(text.source, text.start, text.end);
+			} else if (node instanceof TemplateNode.ParameterHolder) {
+				evaluate_parameter((TemplateNode.ParameterHolder) node, sb, wp, parent);
+			} else {
+				TemplateNode.Invocation invocation = (TemplateNode.Invocation) node;
+				int mark = sb.length();
+				if (evaluate_invocation(invocation, sb, wp, parent)) {//the result is appended to sb after mark
+					if (startsWith(sb, mark, "{|") || startsWith(sb, mark, ":") || startsWith(sb, mark, ";") || startsWith(sb, mark, "*") || startsWith(sb, mark, "#")) {
+						sb.insert(mark, '\n');//workaround01 - needed for correct handling of lemma Haus in german wiktionary
+					}
+				} else {//invalid invocation: push back "{{" and parse again the text after it
+					sb.append("{{");
+					evaluate(invocation.getFallback(), sb, wp, parent);
+					return;
+				}
 			}
-			String str = sh.getStringWithoutOpening();//twin
-			if (str != null)
-				sb.append(str);
 		}
 	}
 
-	private boolean parameter_holder(WikiScanner sh, StringBuilder sb, WikiPage wp, Frame parent) {
+	private static TemplateNode parameter_holder(WikiScanner sh) {
 /*parameter_holder ::= "{{{" (parameter_name) [ "|" [default value] ] "}}}"
 Important: if param_name is not defined, then
 {{{param_name}}} --> {{{param_name}}} (literal)
 {{{param_name|}}} --> (empty string)
 reference: https://www.mediawiki.org/wiki/Help:Parser_functions_in_templates
 */
-		String param_name = sh.getStringParameter(null);
+		int name_start = sh.getPointer();
+		int name_end = sh.skipParameter(null);
+		int def_start = sh.getPointer() + 1;
+		int def_end = sh.getChar('|') ? sh.skipParameter(null) : -1;
+		while (sh.getChar('|')) {//ignore any further parameter(s)
+			sh.skipParameter(null);
+		}
+		if (sh.getSequence("}}}")) {
+			WikiScanner.Index index = sh.getIndex();
+			return new TemplateNode.ParameterHolder(name_end == -1 ? null : new TemplateNode.Fragment(index, name_start, name_end),
+				def_end == -1 ? null : new TemplateNode.Fragment(index, def_start, def_end));
+		}		
+		return null;
+	}
+
+	private static boolean startsWith(StringBuilder sb, int start, String prefix) {
+		if (sb.length() - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (sb.charAt(start + i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	private void evaluate_parameter(TemplateNode.ParameterHolder node, StringBuilder sb, WikiPage wp, Frame parent) {
+		String param_name = null;
 		String result = null;
-		if (param_name != null) {
-			param_name = parseParameter(param_name, wp, parent);
+		if (node.name != null) {
+			param_name = parseParameter(node.name, wp, parent);
 			if (parent != null)
 				result = parent.getTemplateParameter(param_name);
 		}
-		String def_value = sh.getChar('|') ? sh.getStringParameter(null) : null;
-		while (sh.getChar('|')) {//ignore any further parameter(s)
-			sh.getStringParameter(null);
-		}
-		if (sh.getSequence("}}}")) {
-			if (result == null)
-				result = def_value == null ? "{{{" + param_name + "}}}" : parseParameter(def_value, wp, parent);//use literal or default value
+		if (result != null)
 			sb.append(result);
-//System.out.println("result:"+result);
-			return true;
-		}		
-		return false;
+		else if (node.def_value != null)
+			evaluate(node.def_value, sb, wp, parent);//use default value
+		else sb.append("{{{").append(param_name).append("}}}");//use literal
 	}
 
-	private String invocation_body(WikiScanner sh, WikiPage wp, Frame parent) {
+	private static TemplateNode invocation_body(WikiScanner sh, int pointer) {
 //invocation_body ::= magic_word_call | parser_function_call | template_call
 //magic_word_call ::= magic_word [ ":" magic_parameter]
 //parser_function_call ::= parser_function_name ":" parser_function_parameter { "|" [parser_function_parameter] }*
@@ -142,58 +291,109 @@ reference: https://www.mediawiki.org/wiki/Help:Parser_functions_in_templates
 		String identifier = sh.getStringParameter(null);
 		if (identifier == null)
 			return null;
-		identifier = identifier.trim();
+		String trimmed = identifier.trim();
+		int id_start = pointer + identifier.indexOf(trimmed);//position of identifier in the indexed text
+		identifier = trimmed;
 		if (identifier.startsWith(":")) {//ignore transclusion of ordinary wiki page
 			return null;
 		}
 		if (identifier.startsWith("subst:")) {//ignore subst:
 			identifier = identifier.substring("subst:".length());
+			id_start += "subst:".length();
 		}
 		if (identifier.startsWith("safesubst:")) {//ignore safesubst:
 			identifier = identifier.substring("safesubst:".length());
+			id_start += "safesubst:".length();
 		}
 		if (identifier.startsWith("<noinclude/>")) {//ignore <noinclude/>
 			identifier = identifier.substring("<noinclude/>".length());
+			id_start += "<noinclude/>".length();
+		}
+		int[] arg_bounds = new int[8];//start and end of each argument
+		int[] equal_pos = new int[4];
+		int n_args = 0;
+		while (sh.getChar('|')) {//twin
+			int[] pos = {-1};
+			int arg_start = sh.getPointer();
+			int arg_end = sh.skipParameter(pos);
+			if (arg_end == -1)
+				return null;//missing }}
+			if (n_args == equal_pos.length) {
+				arg_bounds = Arrays.copyOf(arg_bounds, 4 * n_args);
+				equal_pos = Arrays.copyOf(equal_pos, 2 * n_args);
+			}
+			arg_bounds[2 * n_args] = arg_start;
+			arg_bounds[2 * n_args + 1] = arg_end;
+			equal_pos[n_args++] = pos[0];
+		}
+		if (sh.getSequence("}}"))
+			return new TemplateNode.Invocation(new TemplateNode.Fragment(sh.getIndex(), id_start, id_start + identifier.length()),
+				Arrays.copyOf(arg_bounds, 2 * n_args), Arrays.copyOf(equal_pos, n_args), sh.getIndex(), pointer, sh.getEnd());
+		return null;//missing }}, in this case all kinds of invocation are not valid
+	}
+
+	private boolean evaluate_invocation(TemplateNode.Invocation node, StringBuilder sb, WikiPage wp, Frame parent) {//appends the result to sb, returns false if the invocation is not valid
+		ExpansionLimits.Limit limit = wp.getLimitState().enterNode();
+		if (limit != null) {
+			limitExceeded(limit, sb, wp);
+			return true;
 		}
-		identifier = parseParameter(identifier, wp, parent).trim();
-		int pointer = sh.getPointer(); //save pointer to be ready to retract in case of invalid magic word or parser function
+		String identifier = parseParameter(node.identifier, wp, parent).trim();
 //check & process magic word
 		int idx = identifier.indexOf(":");
 		String name = idx != -1 ? identifier.substring(0, idx) : identifier;
 		MagicWords.MagicWord mw = MagicWords.get(name);
 		if (mw != null)	{
 			String parameter = null;
-			if (idx != -1) {//parameter present
+			if (idx != -1) {//parameter present, any further parameter(s) are ignored
 				String param = identifier.substring(idx + 1);
 				parameter = parseParameter(param, wp, parent).trim();
-
-				while (sh.getChar('|')) {//ignore any further parameter(s)
-					sh.getStringParameter(null);
+			}
+			if (idx != -1 || node.getArgCount() == 0) {
+				TemplateProfiler.PageState profile = wp.getProfileState();
+				if (profile != null)
+					profile.enter(TemplateProfiler.Kind.MAGIC_WORD, name);
+				String result = null;
+				try {
+					result = MagicWords.evaluate(mw, parameter, wp);
+				} finally {
+					if (profile != null)
+						profile.exit(result == null ? 0 : result.length());
+				}
+				if (result != null) {
+					sb.append(result);
+					return true;
 				}
 			}
-			if (sh.getSequence("}}")) {
-				String result = MagicWords.evaluate(mw, parameter, wp);
-				if (result != null)
-					return result;
-				sh.setPointer(pointer);//retract scanner
-			} else sh.setPointer(pointer);//02-01-2026, retract scanner
 		}
 //check & process parser function call
-		ParserFunction pf = ParserFunctions.get(name);
+		ParserFunction pf = wp.getSite().getParserFunction(name);
 		if (pf != null)	{
 			ArrayList<String> parameters = new ArrayList<>();
 			if (idx != -1) {//first parameter present
 				String param = identifier.substring(idx + 1);
 				parameters.add(param.trim());
-
-				while (sh.getChar('|')) {//twin
-					String paramx = sh.getStringParameter(null);
-					parameters.add(paramx == null ? "" : paramx.trim());
-				}
+				for (String paramx : node.getArgs())
+					parameters.add(paramx.trim());
+			} else if (node.getArgCount() > 0)
+				return false;//parameters without first parameter
+			TemplateProfiler.PageState profile = wp.getProfileState();
+			if (profile != null)
+				profile.enter(TemplateProfiler.Kind.PARSER_FUNCTION, name.toLowerCase());
+			String result = null;
+			JfrEvents.ParserFunction event = new JfrEvents.ParserFunction();
+			event.begin();
+			try {
+				result = pf.evaluate(wp, parameters, parent);
+			} finally {
+				event.end(wp, name, result);
+				if (profile != null)
+					profile.exit(result == null ? 0 : result.length());
 			}
-			if (sh.getSequence("}}")) {
-				return pf.evaluate(wp, parameters, parent);
-			} else return null;
+			if (result == null)
+				return false;
+			sb.append(result);
+			return true;
 		}
 		if (!identifier.contains("#")) {
 //check & process template call
@@ -201,7 +401,7 @@ reference: https://www.mediawiki.org/wiki/Help:Parser_functions_in_templates
 			int idx1 = identifier.indexOf(":");
 			if (idx1 != -1) {
 				String ns = identifier.substring(0, idx1);
-				Integer ns_id = getNameSpaceNumber(ns);
+				Integer ns_id = wp.getSite().getNameSpaceNumber(ns);
 				if (ns_id != null && ns_id == 10)
 					isTemplate = true;
 			}
@@ -209,73 +409,158 @@ reference: https://www.mediawiki.org/wiki/Help:Parser_functions_in_templates
 			if (isTemplate) {
 				identifier = identifier.substring(idx1 + 1);//remove template namespace
 			}
-			int pos = 1;
-			Map<String, String> parameterMap = new LinkedHashMap<>();
-			while (sh.getChar('|')) {//twin
-				String param_name = "";
-				int[] equalPos = {-1};
-				String paramx = sh.getStringParameter(equalPos);
-				String value = "";
-				if (paramx != null) {
-					idx = equalPos[0];
-//		System.out.println("parameter splitting: " + paramx + ", idx= " + idx);
-					if (idx != -1 && !(param_name = paramx.substring(0, idx).trim()).isEmpty()) {//named parameter
-						value = paramx.substring(idx + 1).trim();//skip "="
-					} else {//unnamed parameter
-						value = paramx;
-					}
-				}
-				if (param_name.isEmpty())
-					param_name = Integer.toString(pos++);//unnamed parameter
-//System.out.println("param_name="+param_name+", param_value="+value);
-				parameterMap.put(param_name, parseParameter(value, wp, parent));
+			Map<String, String> parameterMap = new LinkedHashMap<>();//parameters are expanded only when used by the template
+			String[] arg_names = node.getArgNames();
+			String[] arg_values = node.getArgValues();
+			for (int i = 0; i < arg_names.length; i++) {
+//System.out.println("param_name="+arg_names[i]+", param_value="+arg_values[i]);
+				parameterMap.put(arg_names[i], arg_values[i]);
 			}
-			if (sh.getSequence("}}")) {
-				return getParsedTemplate(identifier.replace('_', ' '), wp, parameterMap, parent);
-			} else return null;
+			appendParsedTemplate(identifier.replace('_', ' '), wp, parameterMap, true, parent, sb);
+			return true;
 		} else {//unexpected identifier
 			if (wp.getTrace_calls())
 				System.out.println("unexpected identifier:" + identifier);
-			return null;
+			return false;
 		}
 	}
 
 	public String getParsedTemplate(String identifier, WikiPage wp, Map<String, String> parameterMap, Frame parent) {
+		StringBuilder sb = new StringBuilder();
+		appendParsedTemplate(identifier, wp, parameterMap, false, parent, sb);
+		return sb.toString();
+	}
+
+	private void appendParsedTemplate(String identifier, WikiPage wp, Map<String, String> parameterMap, boolean lazy, Frame parent, StringBuilder sb) {//lazy: parameters are not yet expanded
 		boolean trace_calls = wp.getTrace_calls();
-		while (!detect_loop(identifier, parent)) {
+		TemplateMemo memo = this.memo;
+		if (memo != null && !memo.accepts(wp))
+			memo = null;
+		if (memo != null && lazy) {//the key of the memo needs the expanded parameters
+			parameterMap = expandParameters(parameterMap, wp, parent);
+			lazy = false;
+		}
+		while (!detect_loop(identifier, wp, parent)) {
+			if (memo != null)
+				TemplateMemo.expanded(identifier, wp);
 			String template_text = wp.getTemplate(identifier);
 			if (template_text == null) {
 				if (trace_calls)
 					System.out.println("Warning: template not found:" + identifier);
-				return "[["+ getNameSpaceByNumber(10) + ":" + identifier + "]]";
+				diagnostics.report(DiagnosticSink.Event.TEMPLATE_MISSING, wp, identifier, null);
+				sb.append("[[").append(getNameSpaceByNumber(10)).append(':').append(identifier).append("]]");
+				return;
 			}
-			template_text = process_include(delete_comments(template_text), true).replace("{{{|safesubst:}}}", "");//twin in TestSuite
-			String redirect = wp.getRedirect(template_text);
+			CompiledTemplate template = getCompiledTemplate(identifier, template_text);
+			String redirect = wp.getRedirect(template.text);
 			if (redirect == null) {
-				if (trace_calls) {
-					System.out.print(getNameSpaceByNumber(10) + ":" + identifier + "(");
-					parameterMap.forEach((name, value) -> System.out.print(name + (value.isEmpty() ? "" : " = " + value) + ", "));
-					System.out.println(")");
+				ExpansionLimits.PageState state = wp.getLimitState();
+				if (!state.enterTemplate()) {
+					limitExceeded(ExpansionLimits.Limit.DEPTH, sb, wp);
+					return;
+				}
+				TemplateProfiler.PageState profile = wp.getProfileState();
+				int mark = sb.length();
+				if (profile != null)
+					profile.enter(TemplateProfiler.Kind.TEMPLATE, identifier);
+				JfrEvents.Template event = new JfrEvents.Template();
+				event.begin();
+				try {
+					if (memo == null)
+						expandTemplate(template, identifier, wp, parameterMap, lazy, parent, sb);
+					else appendMemoTemplate(memo, template, identifier, wp, parameterMap, parent, sb);
+				} finally {
+					event.end(wp, identifier, sb.length() - mark);
+					state.exitTemplate();
+					if (profile != null)
+						profile.exit(sb.length() - mark);
 				}
-				Frame frame = new Frame(getNameSpaceByNumber(10) + ":" + identifier, parameterMap, parent, false);//frame of this template
-				StringBuilder sb = new StringBuilder();
-				WikiScanner sh = new WikiScanner(template_text);
-				template_body(sh, sb, wp, frame);
-				String result = sb.toString();
-				if (result.contains(category_label))//suppress category content
-					return categoryPattern.matcher(result).replaceAll("").trim();
-				return result;
+				return;
 			}
 			identifier = redirect;
 		}
 		if (trace_calls)
 			System.out.println("Warning: loop detected:" + identifier);
-		return "Template loop detected: [["+ getNameSpaceByNumber(10) + ":" + identifier + "]]";
+		diagnostics.report(DiagnosticSink.Event.TEMPLATE_LOOP, wp, identifier, null);
+		wp.addDependency(TemplateMemo.Dependency.VOLATILE);//the result depends on the callers
+		sb.append("Template loop detected: [[").append(getNameSpaceByNumber(10)).append(':').append(identifier).append("]]");
+	}
+
+	private void appendMemoTemplate(TemplateMemo memo, CompiledTemplate template, String identifier, WikiPage wp, Map<String, String> parameterMap, Frame parent, StringBuilder sb) {
+		String key = TemplateMemo.key(identifier, parameterMap);
+		String result = memo.get(key, wp, parent);
+		if (result == null) {
+			TemplateMemo.Expansion saved = memo.begin(wp);
+			try {
+				int mark = sb.length();
+				expandTemplate(template, identifier, wp, parameterMap, false, parent, sb);
+				result = sb.substring(mark);
+			} finally {
+				memo.end(saved, key, result, wp);
+			}
+		} else {
+			TemplateProfiler.PageState profile = wp.getProfileState();
+			if (profile != null)
+				profile.memoHit();
+			if (wp.getLimitState().include(result.length()))
+				sb.append(result);
+			else limitExceeded(ExpansionLimits.Limit.INCLUDE_SIZE, sb, wp);
+		}
+	}
+
+	private void limitExceeded(ExpansionLimits.Limit limit, StringBuilder sb, WikiPage wp) {//the error marker is written once per page, except for depth
+		if (wp.getTrace_calls())
+			System.out.println("Warning: " + limit.getMessage());
+		wp.addDependency(TemplateMemo.Dependency.VOLATILE);//the result depends on the rest of the page
+		if (limit == ExpansionLimits.Limit.DEPTH)
+			sb.append(ExpansionLimits.format_error(limit.getMessage() + " (" + limits.getMaxDepth() + ")"));
+		else if (wp.getLimitState().report())
+			sb.append(ExpansionLimits.format_error(limit.getMessage()));
+		else return;//the page is already stopped and reported
+		diagnostics.report(DiagnosticSink.Event.LIMIT_EXCEEDED, wp, limit.getMessage(), null);
+	}
+
+	private void expandTemplate(CompiledTemplate template, String identifier, WikiPage wp, Map<String, String> parameterMap, boolean lazy, Frame parent, StringBuilder sb) {
+		if (wp.getTrace_calls()) {
+			System.out.print(getNameSpaceByNumber(10) + ":" + identifier + "(");
+			parameterMap.forEach((name, value) -> System.out.print(name + (value.isEmpty() ? "" : " = " + value) + ", "));
+			System.out.println(")");
+		}
+		Frame frame = lazy ? new Frame(getNameSpaceByNumber(10) + ":" + identifier, parameterMap, (text, caller) -> parseParameter(text, wp, caller), parent, false)
+			: new Frame(getNameSpaceByNumber(10) + ":" + identifier, parameterMap, parent, false);//frame of this template
+		int mark = sb.length();//the template is expanded directly into sb
+		evaluate(template.getBody(), sb, wp, frame);
+		if (sb.indexOf(category_label, mark) != -1) {//suppress category content
+			String result = categoryPattern.matcher(sb.substring(mark)).replaceAll("").trim();
+			sb.setLength(mark);
+			sb.append(result);
+		}
+		if (!wp.getLimitState().include(sb.length() - mark)) {
+			sb.setLength(mark);
+			limitExceeded(ExpansionLimits.Limit.INCLUDE_SIZE, sb, wp);
+		}
+	}
+
+	private Map<String, String> expandParameters(Map<String, String> parameterMap, WikiPage wp, Frame parent) {//twin of the lazy frame
+		Map<String, String> expanded = new LinkedHashMap<>();
+		parameterMap.forEach((name, text) -> expanded.put(name, parseParameter(text, wp, parent)));
+		return expanded;
+	}
+
+	private CompiledTemplate getCompiledTemplate(String identifier, String template_text) {
+		CompiledTemplate template = templateCache.get(identifier);
+		if (template == null || !template.source.equals(template_text)) {//equals() checks identity first
+			if (templateCache.size() >= max_cached_templates)
+				templateCache.clear();
+			template = new CompiledTemplate(template_text);
+			templateCache.put(identifier, template);
+		}
+		return template;
 	}
 
-	private boolean detect_loop(String identifier, Frame parent) {
+	private boolean detect_loop(String identifier, WikiPage wp, Frame parent) {
 		while (parent != null) {
-			String parentpage = parent.getPage();
+			String parentpage = parent.getPage(wp.getSite());
 			if (identifier.equals(parentpage))
 				return true;
 			if (identifier.equals(flipTemplateName(parentpage)))
@@ -285,19 +570,4 @@ reference: https://www.mediawiki.org/wiki/Help:Parser_functions_in_templates
 		return false;
 	}
 
-	private static String delete_comments(String str) { // delete html comments <!-- -->
-		StringBuilder text = new StringBuilder(str);
-		int comment;
-		while ((comment = text.indexOf("<!--")) != -1) {
-			int eoc = text.indexOf("-->", comment + 3);
-			if (eoc != -1) {
-				text.delete(comment, eoc + 3);
-			} else {
-				text.setLength(comment);
-				break;
-			}
-		}
-		return text.toString();
-	}
-
 }
\ No newline at end of file
@@ -0,0 +1,255 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Profiler of template expansion, enabled by TemplateParser.setProfiler() and shared by all pages and threads, so that a batch is aggregated.
+For each template, parser function and magic word the profiler counts calls, inclusive time (counted once for recursive calls),
+exclusive time, output chars and hits of the memo (see TemplateMemo). The output of an invocation is counted in the output of the
+enclosing ones too. Parameters are expanded when used, so their time is accounted to the template or parser function that uses them.
+In addition each page records its call tree, see PageState.getCallTree(): calls of the same name under the same caller are merged.
+*/
+public final class TemplateProfiler {
+	public enum Kind {TEMPLATE, PARSER_FUNCTION, MAGIC_WORD}
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	public final static class Entry {
+		private final String name;
+		private final Kind kind;
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder inclusive = new LongAdder();//ns
+		private final LongAdder exclusive = new LongAdder();//ns
+		private final LongAdder output = new LongAdder();//chars
+		private final LongAdder memo_hits = new LongAdder();
+
+		Entry(String name, Kind kind) {
+			this.name = name;
+			this.kind = kind;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public long getCalls() {
+			return calls.sum();
+		}
+
+		public long getInclusiveTime() {//ns
+			return inclusive.sum();
+		}
+
+		public long getExclusiveTime() {//ns
+			return exclusive.sum();
+		}
+
+		public long getOutput() {//chars
+			return output.sum();
+		}
+
+		public long getMemoHits() {
+			return memo_hits.sum();
+		}
+	}
+
+	public final static class Node {//node of the call tree of a page
+		private final String name;
+		private long calls;
+		private long time;//inclusive, ns
+		private long output;//chars
+		private LinkedHashMap<String, Node> children;//null if there are no children
+
+		Node(String name) {
+			this.name = name;
+		}
+
+		Node child(String name) {
+			if (children == null)
+				children = new LinkedHashMap<>();
+			Node node = children.get(name);
+			if (node == null)
+				children.put(name, node = new Node(name));
+			return node;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCalls() {
+			return calls;
+		}
+
+		public long getTime() {//ns
+			return time;
+		}
+
+		public long getOutput() {//chars
+			return output;
+		}
+
+		public ArrayList<Node> getChildren() {
+			return children == null ? new ArrayList<>() : new ArrayList<>(children.values());
+		}
+
+		public String format(long min_time) {//indented tree, children are sorted by decreasing time and those faster than min_time ns are omitted
+			StringBuilder sb = new StringBuilder();
+			format(sb, 0, min_time);
+			return sb.toString();
+		}
+
+		private void format(StringBuilder sb, int level, long min_time) {
+			sb.append(String.format(Locale.ROOT, "%10.1f ms %8d calls %10d chars  ", time / 1e6, calls, output));
+			for (int i = 0; i < level; i++)
+				sb.append("  ");
+			sb.append(name).append('\n');
+			ArrayList<Node> list = getChildren();
+			list.sort((n1, n2) -> Long.compare(n2.time, n1.time));
+			for (Node child : list)
+				if (child.time >= min_time)
+					child.format(sb, level + 1, min_time);
+		}
+	}
+
+	public final static class PageState {//profile of a page, owned by WikiPage and used by a single thread
+		private final TemplateProfiler profiler;
+		private final Node root;
+		private Entry[] entry = new Entry[32];
+		private Node[] node = new Node[32];
+		private long[] start = new long[32];
+		private long[] children = new long[32];//inclusive time of the invocations made by the invocation
+		private int depth;
+
+		PageState(TemplateProfiler profiler, String pagename) {
+			this.profiler = profiler;
+			root = new Node(pagename);
+		}
+
+		public Node getCallTree() {//the root is the page, its time and output are the sum of those of its children
+			return root;
+		}
+
+		void enter(Kind kind, String name) {//call exit() at the end of the invocation
+			if (depth == entry.length) {
+				int length = depth * 2;
+				entry = Arrays.copyOf(entry, length);
+				node = Arrays.copyOf(node, length);
+				start = Arrays.copyOf(start, length);
+				children = Arrays.copyOf(children, length);
+			}
+			Entry e = profiler.entry(kind, name);
+			entry[depth] = e;
+			node[depth] = (depth == 0 ? root : node[depth - 1]).child(e.name);
+			children[depth] = 0;
+			start[depth++] = System.nanoTime();
+		}
+
+		void exit(int output) {//output: length of the result of the invocation
+			long now = System.nanoTime();
+			int d = --depth;
+			Entry e = entry[d];
+			long inclusive = now - start[d];
+			e.calls.increment();
+			e.exclusive.add(inclusive - children[d]);
+			e.output.add(output);
+			if (!active(e, d))
+				e.inclusive.add(inclusive);
+			Node n = node[d];
+			n.calls++;
+			n.time += inclusive;
+			n.output += output;
+			if (d > 0)
+				children[d - 1] += inclusive;
+			else {
+				root.calls++;
+				root.time += inclusive;
+				root.output += output;
+			}
+			entry[d] = null;
+			node[d] = null;
+		}
+
+		void memoHit() {//the invocation in progress is found in the memo
+			if (depth > 0)
+				entry[depth - 1].memo_hits.increment();
+		}
+
+		private boolean active(Entry e, int d) {//true if e is called also below depth d, i.e. the call is recursive
+			for (int i = 0; i < d; i++)
+				if (entry[i] == e)
+					return true;
+			return false;
+		}
+	}
+
+	public PageState newPageState(String pagename) {
+		return new PageState(this, pagename);
+	}
+
+	private Entry entry(Kind kind, String name) {
+		String key = kind == Kind.TEMPLATE ? NameSpaces.getNameSpaceByNumber(10) + ":" + name : name;
+		Entry e = entries.get(key);
+		return e != null ? e : entries.computeIfAbsent(key, k -> new Entry(k, kind));
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public ArrayList<Entry> getEntries() {//sorted by decreasing inclusive time
+		ArrayList<Entry> list = new ArrayList<>(entries.values());
+		list.sort((e1, e2) -> Long.compare(e2.getInclusiveTime(), e1.getInclusiveTime()));
+		return list;
+	}
+
+	public String report(int top) {//top templates and top parser functions (including magic words), sorted by decreasing inclusive time
+		ArrayList<Entry> list = getEntries();
+		StringBuilder sb = new StringBuilder();
+		report(sb, "templates", list, top, true);
+		report(sb, "parser functions and magic words", list, top, false);
+		return sb.toString();
+	}
+
+	private static void report(StringBuilder sb, String title, ArrayList<Entry> list, int top, boolean templates) {
+		sb.append("Template profile, ").append(title).append(":\n");
+		sb.append(String.format(Locale.ROOT, "%10s %12s %12s %12s %10s  %s%n", "calls", "incl. ms", "excl. ms", "output", "memo hits", "name"));
+		int n = 0;
+		for (Entry e : list)
+			if ((e.kind == Kind.TEMPLATE) == templates && n++ < top)
+				sb.append(String.format(Locale.ROOT, "%10d %12.1f %12.1f %12d %10d  %s%n", e.getCalls(), e.getInclusiveTime() / 1e6, e.getExclusiveTime() / 1e6,
+					e.getOutput(), e.getMemoHits(), e.name));
+	}
+}
@@ -22,23 +22,31 @@ The use of this software is at the risk of the user.
 DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
 */
 package wiki;
+import java.io.File;
 import java.io.IOException;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import wiki.TemplateParser;
 import static wiki.tools.Utilities.process_include;
+import wiki.tools.PageStore;
 import wiki.tools.WikiPage;
 
 import static wiki.tools.Utilities.getLocale;
 
 import info.bliki.extensions.scribunto.ScribuntoException;
+import info.bliki.extensions.scribunto.engine.lua.ScribuntoEnginePool;
 import info.bliki.extensions.scribunto.engine.lua.ScribuntoLuaEngine;
 /* 
 TestSuite for TemplateParser to perform automatic tests of wiki parser only (html formatter is not included)
@@ -109,6 +117,8 @@ final public class TestSuite {
 
 		putItem(name2module, "testlua", "local export={}\nfunction export.osdate(frame)\nreturn os.date(\"!*t\", 906000490).month\nend\nreturn export");
 		putItem(name2module, "testmodule", "local export={}\nfunction export.echo(frame)\nreturn frame.args[\"text\"]\nend\nreturn export");
+		putItem(name2module, "loop", "local export={}\nfunction export.forever(frame)\nwhile true do pcall(function() while true do end end) end\nend\nreturn export");
+		putItem(name2module, "testustring", "local export={}\nfunction export.gsub(frame)\nreturn (mw.ustring.gsub(frame.args[1], frame.args[2], frame.args[3]))\nend\nreturn export");
 		putItem(name2module, "domath", "local export={}\nlocal f=load\"return math.sqrt(3^2+4^2)\"\nfunction export.pitagora(frame)\nreturn f()\nend\nreturn export");
 
 		HashMap<String, String> name2content = new HashMap<>();
@@ -180,6 +190,8 @@ final public class TestSuite {
 		testEvaluate(tp, "{{#switch: boh | foo = Foo | #default = Bar | baz = Baz }}", wp, "Bar");
 		testEvaluate(tp, "{{#invoke:testmodule|echo |text=ciao}}", wp, "ciao");
 		testEvaluate(tp, "{{safesubst:#invoke:domath|pitagora }}", wp, "5");
+		testEvaluate(tp, "{{#invoke:testustring|gsub|a.b.c|%.|%-}}", wp, "a-b-c");//%x in the replacement gives x, as string.gsub
+		testEvaluate(tp, "{{#invoke:testustring|gsub|à.b|(%.)|[%1%%]}}", wp, "à[.%]b");
 		testEvaluate(tp, "{{#expr:2*sin(pi/6)}}", wp, "0.9999999999999999");
 		testEvaluate(tp, "{{#expr:{{{sub|0}}}+1}}", wp, "1");
 		testEvaluate(tp, "{{#ifexpr: 1 > 0 | yes }}", wp, "yes");
@@ -208,6 +220,20 @@ final public class TestSuite {
 		testEvaluate(tp, "{{#language:it|fr}}", wp, "italien");
 		testEvaluate(tp, "{{#invoke:testlua|osdate}}", wp, "9");
 
+		TemplateParser limited = new TemplateParser();//each test uses its own page, because limits are counted per page
+		limited.setLimits(new ExpansionLimits(1, 3, 0, 0, 0));
+		testEvaluate(limited, "{{one}}{{one}}{{one}}{{one}}{{one}}", new WikiPage("textbook", wp.getRevision(), getLocale("en"), limited, name2template, name2module, false, name2content, true),
+			"template_onetemplate_onetemplate_one<strong class=\"error\">Node-count limit exceeded</strong>");
+		testEvaluate(limited, "{{echo|{{one}}}}", new WikiPage("textbook", wp.getRevision(), getLocale("en"), limited, name2template, name2module, false, name2content, true),
+			"<strong class=\"error\">Expansion depth limit exceeded (1)</strong>");
+		limited.setLimits(new ExpansionLimits(0, 0, 20, 0, 0));
+		testEvaluate(limited, "{{one}}{{one}}{{one}}", new WikiPage("textbook", wp.getRevision(), getLocale("en"), limited, name2template, name2module, false, name2content, true),
+			"template_one<strong class=\"error\">Post-expand include size too large</strong>");
+		limited.setLimits(new ExpansionLimits(0, 0, 0, 0, 0, 100000, 0, 0));
+		testEvaluate(limited, "{{#invoke:loop|forever}}", new WikiPage("textbook", wp.getRevision(), getLocale("en"), limited, name2template, name2module, false, name2content, true),
+			"<strong class=\"error\">Module error: The instructions allocated for running scripts are exhausted</strong>");
+
+		testSplitter();
 		System.out.println("End of tests");
     }
 
@@ -228,34 +254,40 @@ final public class TestSuite {
 	}
 
 	private void do_template_test(TemplateParser tp, String template) throws ParseException {//test of template expansion using files templates.dat and modules.dat
-		readfile(name2template, "templates.dat", false);
-		readfile(name2module, "modules.dat", false);
+		Map<String, String> templates = loadPages(name2template, "templates");
+		Map<String, String> modules = loadPages(name2module, "modules");
 		System.out.println("Warning: this test uses locale en (english), in case of other languages must be changed inside do_template_test() call"); System.out.println();
 		WikiPage wp = new WikiPage("textbook",  new SimpleDateFormat("dd-MM-yyyy hh:mm").parse("01-01-2020 15:30"),
-				getLocale("en"), tp, name2template, name2module, true, null, true);
+				getLocale("en"), tp, templates, modules, true, null, true);
 		String result = tp.parse(template, wp);
         System.out.println(template + "--> " + result);
 	}
 
 	private void do_smoke_test(TemplateParser tp) throws ParseException {//performs smoke tests on files wiki.dat, templates.dat and modules.dat
-		readfile(name2template, "templates.dat", false);
-		readfile(name2module, "modules.dat", false);
-		HashMap<String, String> name2content = new HashMap<>();
-		String firstline = readfile(name2content, "wiki.dat", true);
+		Map<String, String> templates = loadPages(name2template, "templates");
+		Map<String, String> modules = loadPages(name2module, "modules");
+		Map<String, String> name2content = loadPages(new HashMap<>(), "wiki");
+		String firstline = name2content instanceof PageStore ? ((PageStore) name2content).getHeader() : wikidat_header;
 		int idx = firstline.indexOf("|");
 		String language = firstline.substring(0, idx);
 
-		System.out.println("Number of templates: " + name2template.size());
-		System.out.println("Number of modules: " + name2module.size());
+		System.out.println("Number of templates: " + templates.size());
+		System.out.println("Number of modules: " + modules.size());
 		System.out.println("Number of definitions: " + name2content.size());
 		System.out.println("Performing smoke test");
 
+		ScribuntoEnginePool pool = new ScribuntoEnginePool(1);//pages are rendered one at a time, the same engine is reused
 		name2content.forEach((keyword, definition) -> {
 			System.out.println("Testing: " + keyword);
 			try	{
 				WikiPage wp = new WikiPage(keyword,  new SimpleDateFormat("dd-MM-yyyy hh:mm").parse("01-01-2020 15:30"),
-						getLocale(language), tp, name2template, name2module, false, name2content, true);
-				tp.parse(definition, wp);				
+						getLocale(language), tp, templates, modules, false, name2content, true);
+				wp.setEnginePool(pool);
+				try {
+					tp.parse(definition, wp);
+				} finally {
+					wp.releaseScribuntoEngine();//also on failure, otherwise the next pages wait for the engine
+				}
 			} catch (ParseException ex) {
 			}
 		});
@@ -300,6 +332,49 @@ final public class TestSuite {
 		System.out.println("End of tests");
 	}
 
+	private void testSplitter() {//WikiSplitter must stop with the parse error on a malformed dump, also when the input stage is waiting for space in the queue
+		File dir = null;
+		try {
+			dir = Files.createTempDirectory("splitter").toFile();//holds the dump and the temporary files of WikiSplitter, deleted at the end
+			File dump = new File(dir, "malformed.xml");
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(dump), StandardCharsets.UTF_8)) {
+				out.write("<mediawiki><page><title>test</titl></page>");
+				char[] filler = new char[1 << 16];
+				Arrays.fill(filler, ' ');
+				for (int i = 0; i < 160; i++)//10 MB, more than the chunks kept in the queue of the input stage
+					out.write(filler);
+			}
+			boolean excluded = new File("excluded.txt").exists();
+			WikiSplitter ws = new WikiSplitter();
+			ws.tmpdir = dir;
+			Exception[] failure = new Exception[1];
+			Thread split = new Thread(() -> {
+				try {
+					ws.split(dump.getPath());//the parsing fails before any output file is written, the temporary file of the excluded words is deleted
+				} catch (Exception ex) {
+					failure[0] = ex;
+				}
+			});
+			split.setDaemon(true);
+			split.start();
+			split.join(60000);
+			if (split.isAlive())
+				System.err.println("Error: WikiSplitter does not stop on a malformed dump");
+			else if (failure[0] == null)
+				System.err.println("Error: WikiSplitter does not report the malformed dump");
+			else if (dir.list().length != 1 || new File("excluded.txt").exists() != excluded)
+				System.err.println("Error: WikiSplitter writes files on a malformed dump");
+		} catch (IOException | InterruptedException ex) {
+			System.err.println("Error: " + ex);
+		} finally {
+			if (dir != null) {
+				for (File file : dir.listFiles())
+					file.delete();
+				dir.delete();
+			}
+		}
+	}
+
 	private void testParser(TemplateParser tp, String wiki, WikiPage wp) {
 		String root = tp.parse(wiki, wp);
 		System.out.println(wiki + " --> " + root);
@@ -312,6 +387,21 @@ final public class TestSuite {
 			System.err.println("Error: no match for " + root + " <--> " + expected);
 	}
 
+	private static String wikidat_header;
+	private static Map<String, String> loadPages(HashMap<String, String> name2page, String name) {//uses page store <name>.pgs if available, otherwise reads <name>.dat into name2page
+		if (new File(name + PageStore.STORE_SUFFIX).exists()) {
+			try {
+				return PageStore.open(name + PageStore.STORE_SUFFIX);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		String firstline = readfile(name2page, name + ".dat", name.equals("wiki"));
+		if (firstline != null)
+			wikidat_header = firstline;
+		return name2page;
+	}
+
 	public static void putItem(HashMap<String, String> name2page, String identifier, String item) {
 		name2page.put(identifier.trim(), item);
 	}
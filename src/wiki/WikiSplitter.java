@@ -22,13 +22,16 @@ The use of this software is at the risk of the user.
 DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
 */
 package wiki;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.TreeMap;
 import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.SAXParserFactory;
@@ -39,16 +42,18 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import bzip2.BZip2CompressorInputStream;
+import bzip2.ParallelBZip2InputStream;
 import java.nio.file.Paths;
 import java.nio.file.Files; 
+import java.nio.file.StandardCopyOption;
 
-import wiki.NameSpaces.NameSpace;
-import static wiki.NameSpaces.getNameSpace;
+import wiki.tools.DumpScanner;
+import wiki.tools.ExternalSorter;
+import wiki.tools.PageStore;
+import wiki.tools.SiteContext;
 import static wiki.NameSpaces.getNameSpaceNumber;
 import static wiki.tools.Utilities.getResourceBundle;
 import static wiki.tools.Utilities.getResourceString;
-import static wiki.tools.Utilities.PROPERTY_MODULE;
-import static wiki.tools.Utilities.PROPERTY_TEMPLATE;
 /*
 Wiktionary splitter: this standalone tool splits the xml file wiktionary downloaded from https://dumps.wikimedia.org/enwiktionary/latest/
 
@@ -61,9 +66,27 @@ The following files are generated for information purposes:
 - index.txt: list of words extracted in wiki.dat
 - excluded.txt: list of words excluded
 
+With option -store the page stores wiki.pgs, templates.pgs and modules.pgs are also generated, see wiki.tools.PageStore
+
+Pages are sorted by title with bounded memory, see wiki.tools.ExternalSorter: option -maxmem sets the memory budget in MB of the pages
+kept in memory, when it is exceeded sorted runs are written to temporary files (in the directory set by option -tmpdir) and merged at the
+end; the output is the same of an unbounded budget (default)
+
+Compressed files *.bz2 are decompressed by a pool of threads, one per available processor, see bzip2.ParallelBZip2InputStream;
+option -threads sets the number of threads, with -threads 1 the sequential decompressor is used
+
+The split is a pipeline of stages connected by bounded queues:
+- input: one thread reads (and decompresses) the file in chunks
+- parse: the xml parser, in the calling thread, collects title and text of each page; with option -fastxml the parser is replaced by
+  wiki.tools.DumpScanner, that works directly on UTF-8 bytes and skips the text of pages not in main, template and module namespaces
+- classify: a pool of threads (option -workers) classifies the titles and normalizes the text, filtering other languages if enabled
+- write: one thread adds the pages to the sorters in the order of the file, so the output does not depend on the number of workers
+At the end the statistics of each stage are printed: busy time (excluding the time waiting for input and for space in the output queue)
+and throughput while busy, the stage with the highest load is the bottleneck
+
 compile: javac -encoding UTF-8 wiki\WikiSplitter.java
 
-usage:  java -Djdk.xml.totalEntitySizeLimit=2147480000 wiki.WikiSplitter <filename>
+usage:  java -Djdk.xml.totalEntitySizeLimit=2147480000 wiki.WikiSplitter [-store] [-threads <n>] [-maxmem <MB>] [-tmpdir <dir>] [-workers <n>] [-fastxml] <filename>
 
 Note: The constant FilterOtherLanguages can be used to select only the wanted language before generating wiki.dat, but it requires the definition of two properties 'thislanguage' and 'language_pattern' with ad-hoc patterns
 
@@ -77,103 +100,140 @@ public class WikiSplitter {
 
 	private final static int max_word_length = 127; // max length of a word in the index (value must be lower than 128)
 
-	private final TreeMap<String, String> name2module = new TreeMap<>();
-	private final TreeMap<String, String> name2template = new TreeMap<>();
+	private final static int CHUNK_SIZE = 1 << 16;//bytes read at once by the input stage
+	private final static int CHUNK_QUEUE_CAPACITY = 64;//chunks waiting to be parsed
+	private final static int QUEUE_CAPACITY = 256;//pages in each queue between stages
+	private final static int MAX_IN_FLIGHT = 4 * QUEUE_CAPACITY;//pages parsed but not yet written, they are not accounted in -maxmem
+
+	private ExternalSorter name2module;
+	private ExternalSorter name2template;
 
 	public final static String DBNAME_SUFFIX = "wiktionary";
 
-	public static void main(String[] args) {
-		if (args.length == 1) {
-			String fn = args[0];
-			long t0 = System.nanoTime();
+	private boolean write_store = false;//write also page stores *.pgs
 
-			new WikiSplitter().doSplit(fn);
+	private int threads = Runtime.getRuntime().availableProcessors();//threads used to decompress *.bz2 files
 
-			System.out.println();
-			System.out.println((System.nanoTime() - t0)/1e9+" s");
-		} else {
-			System.out.println("Usage: java WikiSplitter <filename>");
+	private long max_memory = Long.MAX_VALUE;//memory budget in bytes of the pages to be sorted
+	File tmpdir = null;//directory of the sorted runs and of the excluded words while parsing, null for the default temporary directory
+
+	private int workers = Math.min(4, Runtime.getRuntime().availableProcessors());//threads of the classify stage
+
+	private boolean fast_xml = false;//use wiki.tools.DumpScanner instead of the xml parser
+
+	public static void main(String[] args) {
+		WikiSplitter ws = new WikiSplitter();
+		String fn = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "-store": ws.write_store = true; break;
+					case "-threads": ws.threads = Integer.parseInt(args[++i]); break;
+					case "-maxmem": ws.max_memory = Long.parseLong(args[++i]) * 1024 * 1024; break;
+					case "-tmpdir": ws.tmpdir = new File(args[++i]); break;
+					case "-workers": ws.workers = Integer.parseInt(args[++i]); break;
+					case "-fastxml": ws.fast_xml = true; break;
+					default:
+						if (args[i].startsWith("-") || i != args.length - 1)
+							throw new IllegalArgumentException(args[i]);
+						fn = args[i];
+				}
+			}
+			if (fn == null || ws.threads < 1 || ws.max_memory < 1 || ws.workers < 1)
+				throw new IllegalArgumentException();
+		} catch (RuntimeException ex) {
+			System.out.println("Usage: java WikiSplitter [-store] [-threads <n>] [-maxmem <MB>] [-tmpdir <dir>] [-workers <n>] [-fastxml] <filename>");
+			return;
 		}
+		long t0 = System.nanoTime();
+
+		ws.doSplit(fn);
+
+		System.out.println();
+		System.out.println((System.nanoTime() - t0)/1e9+" s");
 	}
 
     public void doSplit(String fn) {
 		if (fn == null)
 			fn = "enwiktionary-latest-pages-articles.xml";
 		try {
-			TreeMap<String, String> dict = new TreeMap<>();
-			String[] language = new String[1];
-			parseXMLFile(fn, language, dict);
-
-// write templates file
-			PrintWriter template_file = new PrintWriter("templates.dat", "UTF-8");
-			name2template.forEach((name, template) -> {
-				String[] lines = template.split(EOL);
-				template_file.println(name + "|" + lines.length);
-				for (String line: lines)
-					template_file.println(line);
-			});
-			template_file.close();
-
-// write modules file
-			PrintWriter module_file = new PrintWriter("modules.dat", "UTF-8");
-			name2module.forEach((name, module) -> {
-				String[] lines = module.split(EOL);
-				module_file.println(name + "|" + lines.length);
-				for (String line: lines)
-					module_file.println(line);
-			});
-			module_file.close();
-			
-			write_dat(dict, fn, language[0]);
+			split(fn);
 		} catch(Exception e) {
 			e.printStackTrace();
         }
     }
 
-	private void parseXMLFile(String fn, String[] language, TreeMap<String, String> dict) throws IOException, ParserConfigurationException {
-			ArrayList<String> excluded = new ArrayList<>();
+	void split(String fn) throws IOException, ParserConfigurationException {//the output files are written only if the whole file has been parsed
+		ExternalSorter.Budget budget = new ExternalSorter.Budget(max_memory);
+		try (ExternalSorter dict = new ExternalSorter(budget, tmpdir);
+			ExternalSorter templates = new ExternalSorter(budget, tmpdir);
+			ExternalSorter modules = new ExternalSorter(budget, tmpdir)) {
+			name2template = templates;
+			name2module = modules;
+			String[] language = new String[1];
+			parseXMLFile(fn, language, dict);
+
+			write_pages(name2template, "templates");
+			write_pages(name2module, "modules");
+			write_dat(dict, fn, language[0]);
+			if (dict.getSpills() + templates.getSpills() + modules.getSpills() > 0) {//collisions between different runs are found only by the merge
+				System.out.println("Sorted runs written to temporary files: " + (dict.getSpills() + templates.getSpills() + modules.getSpills()));
+				System.out.println("Number of collisions: " + dict.getDuplicates());
+			}
+		}
+	}
 
-			InputSource is;
+	private void parseXMLFile(String fn, String[] language, ExternalSorter dict) throws IOException, ParserConfigurationException {
+			InputStream in;
 			if (fn.endsWith("bz2"))	{
 				InputStream fin = Files.newInputStream(Paths.get(fn));
-				BZip2CompressorInputStream bzIn = new BZip2CompressorInputStream(new BufferedInputStream(fin));
-				is = new InputSource(bzIn);
-				is.setEncoding("UTF-8"); 
+				in = threads > 1 ? new ParallelBZip2InputStream(fin, threads) : new BZip2CompressorInputStream(new BufferedInputStream(fin));
 			} else {
-				Reader reader = new InputStreamReader(new FileInputStream(fn), StandardCharsets.UTF_8);
-				is = new InputSource(reader);
-				is.setEncoding("UTF-8"); 
+				in = new FileInputStream(fn);
 			}
 			System.setProperty("jdk.xml.totalEntitySizeLimit", "0");//remove limit to avoid exception javax.xml.stream.XMLStreamException: ParseError with large files
 
-		    try {
-				SAXParserFactory.newInstance().newSAXParser().parse(is, 
-					new WikiHandler(dict, excluded, language));
-			} catch (SAXException e) {
-				e.printStackTrace();
-			}
-
-// write excluded words file
-			PrintWriter excludedf = new PrintWriter("excluded.txt", "UTF-8");
-			for (String e: excluded) {
-				excludedf.println(e);
+			Pipeline pipeline;
+			long start = System.nanoTime();
+			File excluded = File.createTempFile("excluded", ".tmp", tmpdir);//moved to excluded.txt if the whole file has been parsed
+			excluded.deleteOnExit();
+			try {
+				try (PrintWriter excludedf = new PrintWriter(excluded, "UTF-8")) {//excluded words file, written by the write stage
+					pipeline = new Pipeline(dict, excludedf, fn.endsWith("bz2") ? "decompress" : "read");
+					WikiHandler handler = new WikiHandler(pipeline, language);
+					InputSource is = new InputSource(pipeline.getInputStream());
+					is.setEncoding("UTF-8"); 
+					pipeline.start(in, handler);
+				    try {
+						if (fast_xml)
+							handler.scan(new DumpScanner(pipeline.getInputStream(), ns -> ns == 0 || ns == 10 || ns == 828));//the text of other namespaces is never used
+						else SAXParserFactory.newInstance().newSAXParser().parse(is, handler);
+					} catch (SAXException | ParserConfigurationException | IOException | RuntimeException e) {
+						pipeline.fail(e);//the parsing stopped before the end of the file, the input stage may be waiting for space in the queue
+					} finally {
+						pipeline.finish(start);
+					}
+				}
+				Files.move(excluded.toPath(), Paths.get("excluded.txt"), StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				excluded.delete();//not found after the move
 			}
-			excludedf.close();
 
 			System.out.println();
-			System.out.println("Number of words found: "+dict.size());
-			System.out.println("Number of excluded words: "+excluded.size());
+			System.out.println("Number of excluded words: "+pipeline.getExcluded());
+			pipeline.report(System.nanoTime() - start);
 	}
 
-	private void write_dat(TreeMap<String, String> dict, String fn, String language) throws IOException {
-// write definition file
-			PrintWriter output = new PrintWriter("wiki.dat", "UTF-8");
+	private void write_dat(ExternalSorter dict, String fn, String language) throws IOException {//writes wiki.dat, index.txt and the page store, in one pass over the sorted words
+		int[] words = new int[1];
+		try (PrintWriter output = new PrintWriter("wiki.dat", "UTF-8");
+			PrintWriter index = new PrintWriter("index.txt", "UTF-8");
+			PageStore.Writer store = write_store ? new PageStore.Writer("wiki" + PageStore.STORE_SUFFIX, language + "|" + fn) : null) {
 			output.println(language + "|" + fn); //header
 			StringBuilder definition = new StringBuilder();
-			for (Map.Entry<String, String> entry : dict.entrySet()) {
-				String word = entry.getKey();
+			dict.forEach((word, content) -> {
 				int n_def_lines = 0;
-                String[] lines = entry.getValue().split(EOL);
+                String[] lines = content.split(EOL);
                 for (String line : lines) {
 					definition.append(line).append(EOL);
                     n_def_lines++;
@@ -183,72 +243,369 @@ public class WikiSplitter {
 					output.print(definition);
 					definition.setLength(0);n_def_lines = 0;
 				} else System.out.println(word+" has been dropped");
+				index.println(word);
+				if (store != null)
+					store.add(word, content.replace(EOL, "\n"));//same content as read from *.dat files
+				words[0]++;
+			});
+		}
+		System.out.println("Number of words found: " + words[0]);
+	}
+
+	private void write_pages(ExternalSorter name2page, String name) throws IOException {//writes <name>.dat and the page store, in one pass over the sorted pages
+		try (PrintWriter output = new PrintWriter(name + ".dat", "UTF-8");
+			PageStore.Writer store = write_store ? new PageStore.Writer(name + PageStore.STORE_SUFFIX, null) : null) {
+			name2page.forEach((title, content) -> {
+				String[] lines = content.split(EOL);
+				output.println(title + "|" + lines.length);
+				for (String line: lines)
+					output.println(line);
+				if (store != null)
+					store.add(title, content.replace(EOL, "\n"));//same content as read from *.dat files
+			});
+		}
+	}
+
+	private enum Kind {NONE, LEMMA, TEMPLATE, MODULE, EXCLUDED}
+
+	private final static class Page {//page flowing through the pipeline
+		final long seq;//position in the xml file
+		final String title;
+		final String text;//text with \n line endings, null if the page has no text
+		Kind kind = Kind.NONE;//set by the classify stage
+		String name;//word, template or module name
+		String content;//normalized text
+
+		Page(long seq, String title, String text) {
+			this.seq = seq;
+			this.title = title;
+			this.text = text;
+		}
+
+		int size() {
+			return title.length() + (text == null ? 0 : text.length());
+		}
+	}
+
+	private final static class Stage {//statistics of a pipeline stage, updated by its threads
+		final String name;
+		final int threads;
+		final LongAdder items = new LongAdder();
+		final LongAdder size = new LongAdder();//bytes for the input stage, chars for the other stages
+		final LongAdder time = new LongAdder();//nanoseconds, summed over the threads
+		final LongAdder idle = new LongAdder();//nanoseconds waiting for input
+		final LongAdder blocked = new LongAdder();//nanoseconds waiting for space in the output queue
+
+		Stage(String name, int threads) {
+			this.name = name;
+			this.threads = threads;
+		}
+
+		void add(long size) {
+			items.increment();
+			this.size.add(size);
+		}
+
+		void time(long start) {
+			time.add(System.nanoTime() - start);
+		}
+
+		double load(long elapsed) {//fraction of time the threads of the stage are busy
+			return (double) (time.sum() - idle.sum() - blocked.sum()) / ((double) elapsed * threads);
+		}
+	}
+
+	private interface Task {
+		void run() throws Exception;
+	}
+
+	class Pipeline {
+		private final Page END = new Page(-1, "", null);//end marker, one for each worker
+		private final ArrayBlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNK_QUEUE_CAPACITY);
+		private final ArrayBlockingQueue<Page> pages = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private final ArrayBlockingQueue<Page> results = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private final Semaphore in_flight = new Semaphore(MAX_IN_FLIGHT);//bounds the pages waiting to be written in order
+		private final ArrayList<Thread> stage_threads = new ArrayList<>();
+		private final Thread parser = Thread.currentThread();
+		private final InputStream input_stream = new ChunkInputStream();
+		private Throwable failure;//first failure of a stage
+		private long seq;
+
+		private final Stage input;
+		private final Stage parse = new Stage("parse", 1);
+		private final Stage classify = new Stage("classify", workers);
+		private final Stage write = new Stage("write", 1);
+
+		private final ExternalSorter dict;
+		private final PrintWriter excluded;
+		private int counter;
+		private int excluded_counter;
+
+		Pipeline(ExternalSorter dict, PrintWriter excluded, String input_name) {
+			this.dict = dict;
+			this.excluded = excluded;
+			input = new Stage(input_name, 1);
+		}
+
+		InputStream getInputStream() {//input of the parse stage
+			return input_stream;
+		}
+
+		void start(InputStream in, WikiHandler handler) {
+			spawn(input.name, () -> read(in));
+			for (int i = 0; i < workers; i++)
+				spawn(classify.name + "-" + i, () -> classify(handler));
+			spawn(write.name, this::write);
+		}
+
+		private void spawn(String name, Task task) {
+			Thread thread = new Thread(() -> {
+				try {
+					task.run();
+				} catch (Throwable ex) {
+					fail(ex);
+				}
+			}, "WikiSplitter-" + name);
+			thread.setDaemon(true);
+			stage_threads.add(thread);
+			thread.start();
+		}
+
+		void fail(Throwable ex) {//stops all stages, the first failure is reported by finish()
+			synchronized (this) {
+				if (failure != null)
+					return;
+				failure = ex;
+			}
+			for (Thread thread : stage_threads)
+				thread.interrupt();
+			parser.interrupt();
+		}
+
+		int getExcluded() {//number of excluded words, after finish()
+			return excluded_counter;
+		}
+
+		synchronized boolean failed() {
+			return failure != null;
+		}
+
+		void submit(String title, String text) throws InterruptedException {//called by the parse stage for each page
+			Page page = new Page(seq++, title, text);
+			parse.add(page.size());
+			long t = System.nanoTime();
+			in_flight.acquire();
+			pages.put(page);
+			parse.blocked.add(System.nanoTime() - t);
+		}
+
+		void finish(long start) throws IOException {//called by the parse stage at the end, it waits for the other stages
+			parse.time(start);
+			try {
+				if (!failed())
+					for (int i = 0; i < workers; i++)
+						pages.put(END);
+			} catch (InterruptedException ex) {
+//failure of another stage
+			}
+			for (Thread thread : stage_threads) {
+				while (thread.isAlive()) {
+					try {
+						thread.join();
+					} catch (InterruptedException ex) {
+//failure of another stage, all stages are stopping
+					}
+				}
 			}
-			output.close();
+			Thread.interrupted();//clears the interruption by fail()
+			if (failure != null)
+				throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+		}
 
-// write index file
-			output = new PrintWriter("index.txt", "UTF-8");
-			for (String word: dict.keySet()) {
-				output.println(word);
+		private void read(InputStream in) throws IOException, InterruptedException {
+			long start = System.nanoTime();
+			try (InputStream is = in) {
+				byte[] chunk;
+				do {
+					chunk = new byte[CHUNK_SIZE];
+					int n = is.readNBytes(chunk, 0, CHUNK_SIZE);
+					if (n < CHUNK_SIZE)
+						chunk = Arrays.copyOf(chunk, n);//the last chunk, an empty chunk marks the end
+					input.add(n);
+					put(chunks, chunk, input);
+				} while (chunk.length != 0);
+			} finally {
+				input.time(start);
 			}
-			output.close();
+		}
+
+		private void classify(WikiHandler handler) throws InterruptedException {
+			long start = System.nanoTime();
+			try {
+				Page page;
+				while ((page = take(pages, classify)) != END) {
+					handler.classify(page);
+					classify.add(page.size());
+					put(results, page, classify);
+				}
+				put(results, END, classify);
+			} finally {
+				classify.time(start);
+			}
+		}
+
+		private void write() throws IOException, InterruptedException {
+			long start = System.nanoTime();
+			try {
+				HashMap<Long, Page> pending = new HashMap<>();//pages classified before the previous ones
+				long next = 0;
+				for (int ended = 0; ended < workers; ) {
+					Page page = take(results, write);
+					if (page == END) {
+						ended++;
+						continue;
+					}
+					pending.put(page.seq, page);
+					while ((page = pending.remove(next)) != null) {
+						store(page);
+						write.add(page.size());
+						in_flight.release();
+						next++;
+					}
+				}
+			} finally {
+				write.time(start);
+			}
+		}
+
+		private void store(Page page) throws IOException {
+			switch (page.kind) {
+				case LEMMA:
+					if (dict.put(page.name, page.content)) { // keyword collision, shall never happen!
+						System.out.print("Unexpected collision for: " + page.name);
+					}
+					counter++;
+					if (counter % 1000 == 0)
+						System.out.print(".");
+					break;
+				case TEMPLATE:
+					name2template.put(page.name, page.content);
+					break;
+				case MODULE:
+					name2module.put(page.name, page.content);
+					break;
+				case EXCLUDED:
+					excluded.println(page.name);
+					excluded_counter++;
+					break;
+				default:
+			}
+		}
+
+		private <T> T take(BlockingQueue<T> queue, Stage stage) throws InterruptedException {
+			long t = System.nanoTime();
+			T item = queue.take();
+			stage.idle.add(System.nanoTime() - t);
+			return item;
+		}
+
+		private <T> void put(BlockingQueue<T> queue, T item, Stage stage) throws InterruptedException {
+			long t = System.nanoTime();
+			queue.put(item);
+			stage.blocked.add(System.nanoTime() - t);
+		}
+
+		void report(long elapsed) {
+			System.out.println();
+			System.out.println("Stage        threads      items         MB     busy s     idle s  blocked s       MB/s    load");
+			Stage bottleneck = null;
+			for (Stage stage : new Stage[] {input, parse, classify, write}) {
+				double busy = (stage.time.sum() - stage.idle.sum() - stage.blocked.sum()) / 1e9;
+				double mb = stage.size.sum() / (1024.0 * 1024.0);
+				System.out.printf(Locale.ROOT, "%-12s %7d %10d %10.1f %10.2f %10.2f %10.2f %10.1f %6.1f%%%n", stage.name, stage.threads, stage.items.sum(), mb,
+					busy, stage.idle.sum() / 1e9, stage.blocked.sum() / 1e9, busy > 0 ? mb * stage.threads / busy : 0, stage.load(elapsed) * 100);
+				if (bottleneck == null || stage.load(elapsed) > bottleneck.load(elapsed))
+					bottleneck = stage;
+			}
+			System.out.println("Bottleneck stage: " + bottleneck.name);
+		}
+
+		private final class ChunkInputStream extends InputStream {//input of the parse stage, fed by the input stage
+			private byte[] chunk = new byte[0];
+			private int pos;
+			private boolean eof;
+
+			private boolean next() throws IOException {
+				if (eof)
+					return false;
+				try {
+					chunk = take(chunks, parse);
+				} catch (InterruptedException ex) {
+					throw new InterruptedIOException("pipeline stopped");
+				}
+				pos = 0;
+				eof = chunk.length == 0;
+				return !eof;
+			}
+
+			@Override
+			public int read() throws IOException {
+				while (pos == chunk.length)
+					if (!next())
+						return -1;
+				return chunk[pos++] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0)
+					return 0;
+				while (pos == chunk.length)
+					if (!next())
+						return -1;
+				int n = Math.min(len, chunk.length - pos);
+				System.arraycopy(chunk, pos, b, off, n);
+				pos += n;
+				return n;
+			}
+		}
 	}
 
-	class WikiHandler extends DefaultHandler {
+	class WikiHandler extends DefaultHandler {//parse stage of the pipeline, classify() runs in the classify stage
 		boolean collectData = false;
 		boolean isText = false;
 		boolean isPage = false;
-		boolean isLemma = false;
-		boolean isTemplate = false;
-		boolean isModule = false;
 		final StringBuilder buf = new StringBuilder();
-		int counter;
 		String title;
-		final TreeMap <String, String> dict;
-		final ArrayList<String> excluded;
+		String text;
+		final Pipeline pipeline;
 		final String[] language;
 
 		ResourceBundle resourceBundle;
+		SiteContext site;//namespaces with localized aliases
 		Pattern thislanguage;
 		Pattern language_pattern;
 
 
 
-		WikiHandler(TreeMap<String, String> dict, ArrayList<String> excluded, String[] language) {
+		WikiHandler(Pipeline pipeline, String[] language) {
 			super();
-			this.dict = dict;
-			this.excluded = excluded;
+			this.pipeline = pipeline;
 			this.language = language;
-
-			counter = 0;
 		}
 
-		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException { 
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
 			if (qName.equalsIgnoreCase("mediawiki")) {
 				for (int i = 0; i < attributes.getLength(); i++) {
 					if (attributes.getQName(i).equals("xml:lang")) {
-						language[0] = attributes.getValue(i); 
-						Locale locale = new Locale(language[0]); 
-						String str = locale.getDisplayLanguage(locale);
-						String language_name = str.substring(0, 1).toUpperCase(locale) + str.substring(1);//capitalize language_name
-						Locale.setDefault(locale);
-
-						resourceBundle = getResourceBundle(locale);
-						if (resourceBundle == null) {
-							System.out.println("Warning: missing property file for locale: " + locale);
-							System.out.println("Warning: input file will be parsed with default English namespaces");
-						}
-
-						System.out.println();
-						System.out.println("Language: "+language[0]+" ("+language_name+")");
+						setLanguage(attributes.getValue(i));
 						break;
 					}
 				}
 			} else if (qName.equalsIgnoreCase("page")) {
 				isPage = true;
-				isLemma = false;
-				isTemplate = false;
-				isModule = false;
+				title = null;
+				text = null;
 			} else if (isPage) {
 				if (qName.equalsIgnoreCase("title")) {
 					collectData = true;
@@ -259,92 +616,26 @@ public class WikiSplitter {
 					buf.append("<math>"); // echo tag
 				}
 			} else if (qName.equalsIgnoreCase("dbname")) {
-				collectData = true; 
+				collectData = true;
 			}
 		}
-	 
+
 		public void endElement(String uri, String localName, String qName) throws SAXException {
 			if (qName.equalsIgnoreCase("page")) {
 				isPage = false;
+				submit();
 			} else if (qName.equalsIgnoreCase("title")) {
 				title = buf.toString().trim();
-				int idx = title.indexOf(":");
-				if (idx != -1) {
-					String ns = title.substring(0, idx);
-					Integer ns_id = getNameSpaceNumber(ns);
-					if (ns_id != null) {
-						if (ns_id == 10) {
-							isTemplate = true;
-						} else if (ns_id == 828) {
-							isModule = true;
-						}
-					}
-				}
-				if (!isTemplate && !isModule) {
-					if (title.length() <= max_word_length && keywords.matcher(title).matches()) {
-						isLemma = true;
-					} else {
-						excluded.add(title);
-					}
-				}
-				collectData = false; 
+				collectData = false;
 				buf.setLength(0);
 			} else if (qName.equalsIgnoreCase("text")) {
-				isText = false; 
-				if (isLemma) {
-					if (dict.containsKey(title)) { // keyword collision, shall never happen!
-						System.out.print("Unexpected collision for: " + title);
-					}
-					String definition = FilterOtherLanguages && thislanguage != null && language_pattern != null ? doFilterOtherLanguages(buf, thislanguage, language_pattern) : buf.toString();
-					if (!definition.isEmpty()) {
-						dict.put(title, definition.replace("\n", EOL).trim());
-						counter++;
-						if (counter % 1000 == 0)
-							System.out.print(".");
-					} else excluded.add(title);
-
-					isLemma = false;
-				} else if (isModule) {
-					int idx = title.indexOf(":");
-					String module_title = title.substring(idx + 1);//delete label from module
-					name2module.put(module_title, buf.toString().replace("\n", EOL).trim());
-					isModule = false;
-				} else if (isTemplate) {
-					int idx = title.indexOf(":");
-					String template_title = title.substring(idx + 1);//delete label from template
-					name2template.put(template_title, buf.toString().replace("\n", EOL).trim());
-					isTemplate = false;
-				}
-				collectData = false; 
+				isText = false;
+				text = buf.toString();
+				collectData = false;
 				buf.setLength(0);
 			} else if (qName.equalsIgnoreCase("dbname")) {
-				String dbname = buf.toString().trim();
-				if (dbname.endsWith(DBNAME_SUFFIX)) {
-					String lang = dbname.substring(0, dbname.length() - DBNAME_SUFFIX.length());
-
-					if (resourceBundle != null)	{
-						String _thislanguage = getResourceString(resourceBundle, "thislanguage");
-						String _language_pattern = getResourceString(resourceBundle, "language_pattern");
-						if (_thislanguage != null && _language_pattern != null)	{
-							thislanguage = Pattern.compile(_thislanguage);
-							language_pattern = Pattern.compile(_language_pattern);
-						}
-
-						String _template = getResourceString(resourceBundle, PROPERTY_TEMPLATE);
-						if (_template != null) {
-							NameSpace template_ns = getNameSpace(10);
-							template_ns.add_alias(_template);
-						}
-						String _module = getResourceString(resourceBundle, PROPERTY_MODULE);
-						if (_module != null) {
-							NameSpace module_ns = getNameSpace(828);
-							module_ns.add_alias(_module);
-						}
-					}
-				} else {
-					System.out.println("warning, this file is not a wiktionary, dbname: " + dbname);
-				}
-				collectData = false; 
+				setDbName(buf.toString().trim());
+				collectData = false;
 				buf.setLength(0);
 			} else if (isText && qName.equalsIgnoreCase("math")) {
 				buf.append("</math>");// echo tag
@@ -354,7 +645,104 @@ public class WikiSplitter {
 		public void characters(char[] ch, int start, int length) throws SAXException {
 			if (collectData)
 				buf.append(ch, start, length);
-		}	 
+		}
+
+		void scan(DumpScanner scanner) throws IOException, SAXException {//alternative to the xml parser, see option -fastxml
+			DumpScanner.Token token;
+			while ((token = scanner.next()) != DumpScanner.Token.END) {
+				switch (token) {
+					case LANGUAGE: setLanguage(scanner.getValue()); break;
+					case DBNAME: setDbName(scanner.getValue().trim()); break;
+					case PAGE:
+						title = scanner.getTitle() == null ? null : scanner.getTitle().trim();
+						text = scanner.getText();
+						submit();
+						break;
+					default:
+				}
+			}
+		}
+
+		private void setLanguage(String lang) {
+			language[0] = lang;
+			Locale locale = new Locale(language[0]);
+			String str = locale.getDisplayLanguage(locale);
+			String language_name = str.substring(0, 1).toUpperCase(locale) + str.substring(1);//capitalize language_name
+			Locale.setDefault(locale);
+
+			resourceBundle = getResourceBundle(locale);
+			site = SiteContext.get(locale);
+			if (resourceBundle == null) {
+				System.out.println("Warning: missing property file for locale: " + locale);
+				System.out.println("Warning: input file will be parsed with default English namespaces");
+			}
+
+			System.out.println();
+			System.out.println("Language: "+language[0]+" ("+language_name+")");
+		}
+
+		private void setDbName(String dbname) {
+			if (dbname.endsWith(DBNAME_SUFFIX)) {
+				String lang = dbname.substring(0, dbname.length() - DBNAME_SUFFIX.length());
+
+				if (resourceBundle != null)	{
+					String _thislanguage = getResourceString(resourceBundle, "thislanguage");
+					String _language_pattern = getResourceString(resourceBundle, "language_pattern");
+					if (_thislanguage != null && _language_pattern != null)	{
+						thislanguage = Pattern.compile(_thislanguage);
+						language_pattern = Pattern.compile(_language_pattern);
+					}
+				}
+			} else {
+				System.out.println("warning, this file is not a wiktionary, dbname: " + dbname);
+			}
+		}
+
+		private void submit() throws SAXException {
+			if (title != null) {
+				try {
+					pipeline.submit(title, text);
+				} catch (InterruptedException ex) {
+					throw new SAXException("pipeline stopped");
+				}
+			}
+		}
+
+		void classify(Page page) {//called by the classify stage, the fields used here are set by the parse stage before the first page
+			String title = page.title;
+			boolean isTemplate = false;
+			boolean isModule = false;
+			int idx = title.indexOf(":");
+			if (idx != -1) {
+				String ns = title.substring(0, idx);
+				Integer ns_id = site != null ? site.getNameSpaceNumber(ns) : getNameSpaceNumber(ns);
+				if (ns_id != null) {
+					if (ns_id == 10) {
+						isTemplate = true;
+					} else if (ns_id == 828) {
+						isModule = true;
+					}
+				}
+			}
+			if (!isTemplate && !isModule) {
+				if (title.length() <= max_word_length && keywords.matcher(title).matches()) {
+					if (page.text != null) {
+						String definition = FilterOtherLanguages && thislanguage != null && language_pattern != null ? doFilterOtherLanguages(new StringBuilder(page.text), thislanguage, language_pattern) : page.text;
+						if (!definition.isEmpty()) {
+							page.kind = Kind.LEMMA;
+							page.content = definition.replace("\n", EOL).trim();
+						} else page.kind = Kind.EXCLUDED;
+					}
+				} else {
+					page.kind = Kind.EXCLUDED;
+				}
+				page.name = title;
+			} else if (page.text != null) {
+				page.kind = isModule ? Kind.MODULE : Kind.TEMPLATE;
+				page.name = title.substring(idx + 1);//delete label from template or module
+				page.content = page.text.replace("\n", EOL).trim();
+			}
+		}
 	}
 
 	private String doFilterOtherLanguages(StringBuilder buf, Pattern thislanguage, Pattern language_pattern) {
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import wiki.DiagnosticSink;
 import wiki.TemplateParser;
 import wiki.tools.WikiPage;
 import static wiki.tools.Utilities.findValidEqualSign;
@@ -71,9 +72,7 @@ public final class Invoke extends ParserFunction {
 			try {
 				return sle.invoke(module_name, function_name, parent, parameterMap, false, trace_calls);
 			} catch (LuaError | ScribuntoException ex) {
-				if (!trace_calls)
-					System.out.println("MODULE:" + module_name + "." + function_name + "(" + parameterMap + ")");
-				ex.printStackTrace();//debugging
+				tp.getDiagnostics().report(DiagnosticSink.Event.MODULE_ERROR, wp, module_name + "." + function_name, ex);
 				return format_error("Module error: " + ex.getMessage());
 			}
         } else return format_error("Module error: You must specify a function to call.");
@@ -23,7 +23,9 @@ DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
 */
 package wiki.parserfunctions;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 /* references:
 https://www.mediawiki.org/wiki/Help:Extension:ParserFunctions
@@ -67,8 +69,8 @@ public final class ParserFunctions {
 		return parserFunctionMap.get(name.toLowerCase());
     }
 
-    public static ParserFunction put(String name, ParserFunction pf) {
-		return parserFunctionMap.put(name.toLowerCase(), pf);
+    public static Map<String, ParserFunction> getParserFunctions() {//default table, localized names of a site are kept in wiki.tools.SiteContext
+		return Collections.unmodifiableMap(parserFunctionMap);
     }
 
 
@@ -15,6 +15,7 @@ import info.bliki.wiki.template.dates.StringToTimeException;
 import info.bliki.extensions.scribunto.template.Frame;
 
 import static wiki.tools.Utilities.getLocale;
+import wiki.TemplateMemo;
 import wiki.TemplateParser;
 import wiki.tools.WikiPage;
 
@@ -27,7 +28,7 @@ public final class Time extends ParserFunction {
     public final static ParserFunction Instance = new Time();
 
     private static final Map<String, String> FORMAT_WIKI_TO_JAVA = new HashMap<>();
-    private final SimpleDateFormat RFC822DATEFORMAT = new SimpleDateFormat("EEE', 'dd' 'MMM' 'yyyy' 'HH:mm:ss' '+0000", Locale.US);
+    private static final ThreadLocal<SimpleDateFormat> RFC822DATEFORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("EEE', 'dd' 'MMM' 'yyyy' 'HH:mm:ss' '+0000", Locale.US));//SimpleDateFormat is not thread safe
 
     static {
         // year
@@ -148,9 +149,13 @@ public final class Time extends ParserFunction {
 				try {
 					date = new StringToTime(dateTimeParameter);
 				} catch (StringToTimeException e) {
+					wp.addDependency(TemplateMemo.Dependency.PAGE);
 					return format_error(wp.getPagename()+":"+dateTimeParameter);
 				}
+				if (StringToTime.dependsOnNow(dateTimeParameter))
+					wp.addDependency(TemplateMemo.Dependency.VOLATILE);
 			} else {
+				wp.addDependency(TemplateMemo.Dependency.VOLATILE);
 				date =  new Date(System.currentTimeMillis());
 			}
 			String condition = tp.parseParameter( parameters.get(0), wp, parent);
@@ -243,7 +248,7 @@ public final class Time extends ParserFunction {
 					case 'r': // RFC 5322 formatted date, equivalent to D, j M Y H:i:s
 						// +0000, with weekday name and month name not
 						// internationalised
-						result.append(RFC822DATEFORMAT.format(date));
+						result.append(RFC822DATEFORMAT.get().format(date));
 						continue;
 					default:
 						break;
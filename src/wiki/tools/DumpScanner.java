@@ -0,0 +1,564 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki.tools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import bzip2.ParallelBZip2InputStream;
+
+/*
+Pull scanner of MediaWiki export dumps (https://www.mediawiki.org/xml/export-0.11.xsd), used by WikiSplitter with option -fastxml in place
+of the generic xml parser. The scanner works directly on the UTF-8 bytes of the dump and returns only the parts needed to split it:
+- LANGUAGE: attribute xml:lang of <mediawiki>
+- DBNAME: content of <dbname> in <siteinfo>
+- PAGE: at the end of each <page>, with the content of <title>, <ns> and <text> (of the last <revision>)
+Characters are decoded only inside these elements, with predefined entities, character references and CDATA sections; line breaks are
+normalized as done by xml parsers. The text of pages in namespaces not accepted by the given filter is skipped without decoding it.
+
+The scanner relies on the structure of dumps and does not check that the document is well formed; it can be validated against the xml
+parser with: java wiki.tools.DumpScanner <file.xml or file.xml.bz2>
+*/
+public final class DumpScanner implements Closeable {
+	public enum Token {LANGUAGE, DBNAME, PAGE, END}
+
+	public final static int NO_NAMESPACE = Integer.MIN_VALUE;//the page has no element <ns>
+
+	private final static int BUFFER_SIZE = 1 << 16;
+	private final static int KEEP = 8;//bytes kept before pos when the buffer is refilled, see endsWith()
+	private final static byte[] END_PI = bytes("?>");
+	private final static byte[] COMMENT = bytes("<!--");
+	private final static byte[] END_COMMENT = bytes("-->");
+	private final static byte[] CDATA = bytes("<![CDATA[");
+	private final static byte[] END_CDATA = bytes("]]>");
+
+	private final InputStream in;
+	private final IntPredicate namespaces;//namespaces whose text is needed
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private char[] chars = new char[1024];//decoded content
+	private int length;
+
+	private boolean in_page;
+	private String value;
+	private String title;
+	private int ns;
+	private String text;
+	private long skipped;
+
+	public DumpScanner(InputStream in, IntPredicate namespaces) {
+		this.in = in;
+		this.namespaces = namespaces;
+	}
+
+	public DumpScanner(InputStream in) {//text of all pages
+		this(in, ns -> true);
+	}
+
+	public Token next() throws IOException {
+		while (find((byte) '<')) {
+			if (startsWith(COMMENT)) {
+				pos += COMMENT.length;
+				skipPast(END_COMMENT);
+				continue;
+			} else if (startsWith(CDATA)) {
+				pos += CDATA.length;
+				skipPast(END_CDATA);
+				continue;
+			}
+			pos++;//skip <
+			if (!fill(1))
+				break;
+			byte b = buffer[pos];
+			if (b == '?') {
+				skipPast(END_PI);
+			} else if (b == '!') {//declaration
+				skipPast((byte) '>');
+			} else if (b == '/') {
+				pos++;
+				String name = readName();
+				skipPast((byte) '>');
+				if (in_page && name.equals("page")) {
+					in_page = false;
+					return Token.PAGE;
+				}
+			} else {
+				String name = readName();
+				if (name.equals("mediawiki")) {
+					value = null;
+					readAttributes("xml:lang");
+					if (value != null)
+						return Token.LANGUAGE;
+				} else if (name.equals("page")) {
+					in_page = true;
+					title = text = null;
+					ns = NO_NAMESPACE;
+					readAttributes(null);
+				} else if (in_page && name.equals("title")) {
+					title = readContent();
+				} else if (in_page && name.equals("ns")) {
+					try {
+						ns = Integer.parseInt(readContent().trim());
+					} catch (NumberFormatException ex) {
+						ns = NO_NAMESPACE;
+					}
+				} else if (in_page && name.equals("text")) {
+					if (ns == NO_NAMESPACE || namespaces.test(ns))
+						text = readContent();
+					else {
+						text = null;
+						if (!readAttributes(null))
+							skipContent();
+					}
+				} else if (!in_page && name.equals("dbname")) {
+					value = readContent();
+					return Token.DBNAME;
+				} else readAttributes(null);
+			}
+		}
+		return Token.END;
+	}
+
+	public String getValue() {//value of LANGUAGE or DBNAME
+		return value;
+	}
+
+	public String getTitle() {//title of PAGE, null if missing
+		return title;
+	}
+
+	public int getNamespace() {//namespace of PAGE, NO_NAMESPACE if missing
+		return ns;
+	}
+
+	public String getText() {//text of PAGE, null if missing or skipped
+		return text;
+	}
+
+	public long getSkipped() {//bytes of text skipped so far
+		return skipped;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private static byte[] bytes(String st) {
+		return st.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static IOException unexpectedEnd() {
+		return new IOException("unexpected end of dump");
+	}
+
+	private boolean fill(int n) throws IOException {//ensures that n bytes are available at pos, returns false at the end of the input
+		if (limit - pos >= n)
+			return true;
+		int from = Math.max(0, pos - KEEP);
+		if (from > 0) {
+			System.arraycopy(buffer, from, buffer, 0, limit - from);
+			limit -= from;
+			pos -= from;
+		}
+		while (limit - pos < n) {
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read == -1)
+				return false;
+			limit += read;
+		}
+		return true;
+	}
+
+	private boolean find(byte b) throws IOException {//moves pos to the next byte b, returns false at the end of the input
+		while (true) {
+			for (int i = pos; i < limit; i++) {
+				if (buffer[i] == b) {
+					pos = i;
+					return true;
+				}
+			}
+			pos = limit;
+			if (!fill(1))
+				return false;
+		}
+	}
+
+	private boolean startsWith(byte[] prefix) throws IOException {
+		if (!fill(prefix.length))
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (buffer[pos + i] != prefix[i])
+				return false;
+		return true;
+	}
+
+	private boolean endsWith(byte[] suffix) {//true if suffix ends at pos, fill() keeps enough bytes before pos
+		int start = pos - suffix.length;
+		if (start < 0)
+			return false;
+		for (int i = 0; i < suffix.length; i++)
+			if (buffer[start + i] != suffix[i])
+				return false;
+		return true;
+	}
+
+	private void skipPast(byte b) throws IOException {
+		if (!find(b))
+			throw unexpectedEnd();
+		pos++;
+	}
+
+	private void skipPast(byte[] end) throws IOException {
+		do {
+			skipPast(end[end.length - 1]);
+		} while (!endsWith(end));
+	}
+
+	private static boolean isNameEnd(byte b) {
+		return b == '>' || b == '/' || b == '=' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private String readName() throws IOException {//names used in dumps are ASCII
+		int n = 0;
+		while (true) {
+			if (!fill(n + 1))
+				throw unexpectedEnd();
+			if (isNameEnd(buffer[pos + n])) {
+				String name = new String(buffer, pos, n, StandardCharsets.US_ASCII);
+				pos += n;
+				return name;
+			}
+			n++;
+		}
+	}
+
+	private void skipSpaces() throws IOException {
+		while (true) {
+			if (!fill(1))
+				throw unexpectedEnd();
+			byte b = buffer[pos];
+			if (b != ' ' && b != '\t' && b != '\n' && b != '\r')
+				return;
+			pos++;
+		}
+	}
+
+	private boolean readAttributes(String name) throws IOException {//reads up to the end of the tag, the value of attribute name goes to value; returns true for an empty element
+		while (true) {
+			skipSpaces();
+			byte b = buffer[pos];
+			if (b == '>') {
+				pos++;
+				return false;
+			} else if (b == '/') {
+				skipPast((byte) '>');
+				return true;
+			}
+			String attribute = readName();
+			skipSpaces();
+			if (buffer[pos] != '=')
+				throw new IOException("missing value of attribute " + attribute);
+			pos++;
+			skipSpaces();
+			byte quote = buffer[pos++];
+			length = 0;
+			decode(quote);
+			pos++;//skip quote
+			if (attribute.equals(name))
+				value = new String(chars, 0, length);
+		}
+	}
+
+	private String readContent() throws IOException {//decoded content of an element with text only, the end tag is left to next()
+		if (readAttributes(null))
+			return "";
+		length = 0;
+		while (true) {
+			decode((byte) '<');
+			if (startsWith(CDATA)) {
+				pos += CDATA.length;
+				readCData();
+			} else if (startsWith(COMMENT)) {
+				pos += COMMENT.length;
+				skipPast(END_COMMENT);
+			} else return new String(chars, 0, length);
+		}
+	}
+
+	private void skipContent() throws IOException {//content of an element with text only, without decoding it
+		while (true) {
+			int i = pos;
+			while (i < limit && buffer[i] != '<')
+				i++;
+			skipped += i - pos;
+			pos = i;
+			if (i < limit) {
+				if (startsWith(CDATA)) {
+					pos += CDATA.length;
+					skipPast(END_CDATA);
+				} else if (startsWith(COMMENT)) {
+					pos += COMMENT.length;
+					skipPast(END_COMMENT);
+				} else return;
+			} else if (!fill(1))
+				throw unexpectedEnd();
+		}
+	}
+
+	private void readCData() throws IOException {//rare in dumps, the content is decoded at once
+		ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		while (!startsWith(END_CDATA)) {
+			if (!fill(1))
+				throw unexpectedEnd();
+			raw.write(buffer[pos++]);
+		}
+		pos += END_CDATA.length;
+		String st = raw.toString(StandardCharsets.UTF_8).replace("\r\n", "\n").replace('\r', '\n');
+		ensureCapacity(st.length());
+		st.getChars(0, st.length(), chars, length);
+		length += st.length();
+	}
+
+	private void ensureCapacity(int n) {//room for n more chars
+		if (length + n > chars.length)
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + n));
+	}
+
+	private void decode(byte stop) throws IOException {//decodes UTF-8 bytes up to the byte stop, that is left at pos
+		while (true) {
+			ensureCapacity(limit - pos + 2);//one char per byte at most, two for a surrogate pair
+			char[] c = chars;
+			int n = length;
+			int p = pos;
+			int end = limit;
+			while (p < end) {
+				int b = buffer[p];
+				if (b >= 0) {
+					if (b == stop || b == '&' || b == '\r')
+						break;
+					c[n++] = (char) b;
+					p++;
+				} else {
+					int size = b >= -16 ? 4 : b >= -32 ? 3 : b >= -64 ? 2 : 1;//lead byte 11110xxx, 1110xxxx, 110xxxxx or invalid
+					if (p + size > end)
+						break;
+					int cp = size == 4 ? b & 0x07 : size == 3 ? b & 0x0f : b & 0x1f;
+					boolean valid = size > 1;
+					for (int i = 1; i < size; i++) {
+						int cont = buffer[p + i];
+						valid &= (cont & 0xc0) == 0x80;
+						cp = (cp << 6) | (cont & 0x3f);
+					}
+					if (!valid) {
+						c[n++] = '\ufffd';
+						p++;
+					} else {
+						if (cp >= 0x10000) {
+							c[n++] = Character.highSurrogate(cp);
+							c[n++] = Character.lowSurrogate(cp);
+						} else c[n++] = (char) cp;
+						p += size;
+					}
+				}
+			}
+			pos = p;
+			length = n;
+			if (p == end) {
+				if (!fill(1))
+					throw unexpectedEnd();
+				continue;
+			}
+			int b = buffer[p];
+			if (b == stop)
+				return;
+			if (b == '&') {
+				pos++;
+				decodeEntity();
+			} else if (b == '\r') {//line breaks \r\n and \r become \n
+				pos++;
+				chars[length++] = '\n';
+				if (fill(1) && buffer[pos] == '\n')
+					pos++;
+			} else if (!fill(b >= -16 ? 4 : b >= -32 ? 3 : 2)) {//sequence split by the end of the buffer, fill() moves it to the start
+				throw unexpectedEnd();
+			}
+		}
+	}
+
+	private void decodeEntity() throws IOException {//pos is after &
+		int n = 0;
+		while (true) {
+			if (!fill(n + 1))
+				throw unexpectedEnd();
+			if (buffer[pos + n] == ';')
+				break;
+			if (++n > 10)
+				throw new IOException("unterminated entity");
+		}
+		String name = new String(buffer, pos, n, StandardCharsets.US_ASCII);
+		pos += n + 1;
+		int cp;
+		switch (name) {
+			case "lt": cp = '<'; break;
+			case "gt": cp = '>'; break;
+			case "amp": cp = '&'; break;
+			case "quot": cp = '"'; break;
+			case "apos": cp = '\''; break;
+			default:
+				try {
+					if (name.startsWith("#x"))
+						cp = Integer.parseInt(name.substring(2), 16);
+					else if (name.startsWith("#"))
+						cp = Integer.parseInt(name.substring(1));
+					else throw new IOException("unknown entity: &" + name + ";");
+				} catch (NumberFormatException ex) {
+					throw new IOException("invalid character reference: &" + name + ";");
+				}
+		}
+		ensureCapacity(2);
+		length += Character.toChars(cp, chars, length);
+	}
+
+	private static InputStream open(String fn) throws IOException {
+		InputStream in = new FileInputStream(fn);
+		return fn.endsWith("bz2") ? new ParallelBZip2InputStream(in, Runtime.getRuntime().availableProcessors()) : new BufferedInputStream(in);
+	}
+
+	private static long hash(String title, int ns, String text) {//hash of a page, used to compare scanner and xml parser
+		return (long) title.hashCode() << 32 ^ (text == null ? 0x5bd1e995L : text.hashCode() & 0xffffffffL) ^ ns * 0x9e3779b97f4a7c15L;
+	}
+
+	private final static class Validator extends DefaultHandler {//reference pages read by the xml parser
+		final StringBuilder buf = new StringBuilder();
+		boolean collect;
+		boolean in_page;
+		String language;
+		String dbname;
+		String title;
+		int ns;
+		String text;
+		long[] hashes = new long[1024];
+		int pages;
+
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if (qName.equals("mediawiki")) {
+				language = attributes.getValue("xml:lang");
+			} else if (qName.equals("page")) {
+				in_page = true;
+				title = text = null;
+				ns = NO_NAMESPACE;
+			} else if (in_page && (qName.equals("title") || qName.equals("ns") || qName.equals("text")) || !in_page && qName.equals("dbname")) {
+				collect = true;
+				buf.setLength(0);
+			}
+		}
+
+		public void endElement(String uri, String localName, String qName) {
+			collect = false;
+			if (qName.equals("page")) {
+				in_page = false;
+				if (title != null) {
+					if (pages == hashes.length)
+						hashes = Arrays.copyOf(hashes, pages * 2);
+					hashes[pages++] = hash(title, ns, text);
+				}
+			} else if (in_page && qName.equals("title")) {
+				title = buf.toString();
+			} else if (in_page && qName.equals("ns")) {
+				try {
+					ns = Integer.parseInt(buf.toString().trim());
+				} catch (NumberFormatException ex) {
+					ns = NO_NAMESPACE;
+				}
+			} else if (in_page && qName.equals("text")) {
+				text = buf.toString();
+			} else if (!in_page && qName.equals("dbname")) {
+				dbname = buf.toString();
+			}
+		}
+
+		public void characters(char[] ch, int start, int length) {
+			if (collect)
+				buf.append(ch, start, length);
+		}
+	}
+
+	public static void main(String[] args) {//validates the scanner against the xml parser
+		if (args.length == 1) {
+			try {
+				long t0 = System.nanoTime();
+				System.setProperty("jdk.xml.totalEntitySizeLimit", "0");
+				Validator validator = new Validator();
+				try (InputStream in = open(args[0])) {
+					SAXParserFactory.newInstance().newSAXParser().parse(new InputSource(in), validator);
+				}
+				long t1 = System.nanoTime();
+				int pages = 0;
+				String language = null, dbname = null;
+				try (DumpScanner scanner = new DumpScanner(open(args[0]))) {
+					Token token;
+					while ((token = scanner.next()) != Token.END) {
+						if (token == Token.LANGUAGE)
+							language = scanner.getValue();
+						else if (token == Token.DBNAME)
+							dbname = scanner.getValue();
+						else if (scanner.getTitle() != null) {
+							if (pages >= validator.pages || validator.hashes[pages] != hash(scanner.getTitle(), scanner.getNamespace(), scanner.getText())) {
+								System.out.println("Mismatch at page " + (pages + 1) + ": " + scanner.getTitle());
+								return;
+							}
+							pages++;
+						}
+					}
+				}
+				long t2 = System.nanoTime();
+				if (pages != validator.pages)
+					System.out.println("Mismatch: " + validator.pages + " pages read by the xml parser, " + pages + " by the scanner");
+				else if (!String.valueOf(validator.language).equals(String.valueOf(language)) || !String.valueOf(validator.dbname).equals(String.valueOf(dbname)))
+					System.out.println("Mismatch of language or dbname: " + language + ", " + dbname);
+				else System.out.println(pages + " pages validated, xml parser: " + (t1 - t0)/1e9 + " s, scanner: " + (t2 - t1)/1e9 + " s");
+			} catch (IOException | ParserConfigurationException | SAXException e) {
+				e.printStackTrace();
+			}
+		} else {
+			System.out.println("Usage: java wiki.tools.DumpScanner <file.xml or file.xml.bz2>");
+		}
+	}
+}
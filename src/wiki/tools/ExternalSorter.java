@@ -0,0 +1,251 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/*
+Sorted map of strings with bounded memory, used by WikiSplitter to sort the pages of a dump: entries are kept in a TreeMap until the
+memory budget is exceeded, then the largest map of the budget is written to a temporary file as a sorted run (spill).
+At the end forEach() merges the runs and the entries in memory (external merge sort), giving the same entries in the same order of a
+TreeMap: entries are sorted by key and in case of duplicate keys the last put wins.
+Memory is estimated as 2 bytes per char plus a fixed overhead per entry; when there are too many runs, they are merged into one run.
+*/
+public final class ExternalSorter implements Closeable {
+	private final static int ENTRY_OVERHEAD = 128;//bytes of a TreeMap entry and of two String objects, approximately
+	private final static int MAX_RUNS = 64;//runs merged at once, bounds the open files and the buffers of the merge
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	public interface EntryConsumer {
+		void accept(String key, String value) throws IOException;
+	}
+
+	public final static class Budget {//memory budget shared by several sorters, it is used by a single thread
+		private final long max_bytes;
+		private long used;
+		private final ArrayList<ExternalSorter> sorters = new ArrayList<>();
+
+		public Budget(long max_bytes) {//Long.MAX_VALUE means no limit, i.e. no spill
+			if (max_bytes < 1)
+				throw new IllegalArgumentException("max_bytes must be positive");
+			this.max_bytes = max_bytes;
+		}
+
+		private void add(long bytes) throws IOException {
+			used += bytes;
+			while (used > max_bytes) {
+				ExternalSorter largest = null;
+				for (ExternalSorter sorter : sorters)
+					if (largest == null || sorter.memory > largest.memory)
+						largest = sorter;
+				if (largest == null || largest.memory == 0)
+					break;
+				largest.spill();
+			}
+		}
+	}
+
+	private final Budget budget;
+	private final File tmpdir;//null for the default temporary directory
+	private TreeMap<String, String> map = new TreeMap<>();
+	private long memory;//estimated bytes of map
+	private final ArrayList<File> runs = new ArrayList<>();//from the oldest to the newest
+	private long spills;
+	private long duplicates;
+
+	public ExternalSorter(Budget budget, File tmpdir) {
+		this.budget = budget;
+		this.tmpdir = tmpdir;
+		budget.sorters.add(this);
+	}
+
+	public boolean put(String key, String value) throws IOException {//returns true if key is replaced in memory, duplicates in runs are found by forEach()
+		String previous = map.put(key, value);
+		long bytes = 2L * value.length() + (previous == null ? 2L * key.length() + ENTRY_OVERHEAD : -2L * previous.length());
+		memory += bytes;
+		if (previous != null)
+			duplicates++;
+		budget.add(bytes);
+		return previous != null;
+	}
+
+	public long getSpills() {//number of runs written so far, including the ones of intermediate merges
+		return spills;
+	}
+
+	public long getDuplicates() {//number of replaced entries, complete only after forEach()
+		return duplicates;
+	}
+
+	private void spill() throws IOException {
+		if (runs.size() == MAX_RUNS)
+			mergeRuns();
+		File run = File.createTempFile("run", ".tmp", tmpdir);
+		run.deleteOnExit();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+			for (Map.Entry<String, String> entry : map.entrySet())
+				write(out, entry.getKey(), entry.getValue());
+		}
+		runs.add(run);
+		spills++;
+		budget.used -= memory;
+		memory = 0;
+		map = new TreeMap<>();
+	}
+
+	private void mergeRuns() throws IOException {//merges all runs into one run, which is the oldest one
+		File merged = File.createTempFile("run", ".tmp", tmpdir);
+		merged.deleteOnExit();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), BUFFER_SIZE))) {
+			merge(runs, null, (key, value) -> write(out, key, value));
+		}
+		deleteRuns();
+		runs.add(merged);
+		spills++;
+	}
+
+	public void forEach(EntryConsumer action) throws IOException {//all entries sorted by key, then the sorter is empty
+		if (runs.isEmpty()) {
+			for (Map.Entry<String, String> entry : map.entrySet())
+				action.accept(entry.getKey(), entry.getValue());
+		} else merge(runs, map, action);
+		deleteRuns();
+		budget.used -= memory;
+		memory = 0;
+		map = new TreeMap<>();
+	}
+
+	private final static class Source implements Comparable<Source> {//sorted sequence of entries, newer sources have higher age
+		final int age;
+		final DataInputStream in;//null for the entries in memory
+		final Iterator<Map.Entry<String, String>> iterator;
+		String key;
+		String value;
+
+		Source(int age, DataInputStream in, Iterator<Map.Entry<String, String>> iterator) {
+			this.age = age;
+			this.in = in;
+			this.iterator = iterator;
+		}
+
+		boolean next() throws IOException {//false at the end
+			if (in == null) {
+				if (!iterator.hasNext())
+					return false;
+				Map.Entry<String, String> entry = iterator.next();
+				key = entry.getKey();
+				value = entry.getValue();
+				return true;
+			}
+			try {
+				key = read(in);
+			} catch (EOFException ex) {
+				return false;
+			}
+			value = read(in);
+			return true;
+		}
+
+		@Override
+		public int compareTo(Source o) {//the newest source comes first among equal keys
+			int cmp = key.compareTo(o.key);
+			return cmp != 0 ? cmp : Integer.compare(o.age, age);
+		}
+	}
+
+	private void merge(ArrayList<File> files, TreeMap<String, String> memory_map, EntryConsumer action) throws IOException {
+		PriorityQueue<Source> queue = new PriorityQueue<>();
+		ArrayList<Source> sources = new ArrayList<>();
+		try {
+			for (int i = 0; i < files.size(); i++)
+				sources.add(new Source(i, new DataInputStream(new BufferedInputStream(new FileInputStream(files.get(i)), BUFFER_SIZE)), null));
+			if (memory_map != null)
+				sources.add(new Source(files.size(), null, memory_map.entrySet().iterator()));
+			for (Source source : sources)
+				if (source.next())
+					queue.add(source);
+			while (!queue.isEmpty()) {
+				Source first = queue.poll();
+				String key = first.key;
+				action.accept(key, first.value);
+				if (first.next())
+					queue.add(first);
+				while (!queue.isEmpty() && queue.peek().key.equals(key)) {//older entries with the same key are dropped
+					Source older = queue.poll();
+					duplicates++;
+					if (older.next())
+						queue.add(older);
+				}
+			}
+		} finally {
+			for (Source source : sources)
+				if (source.in != null)
+					source.in.close();
+		}
+	}
+
+	private static void write(DataOutputStream out, String key, String value) throws IOException {
+		writeString(out, key);
+		writeString(out, value);
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String read(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void deleteRuns() {
+		for (File run : runs)
+			run.delete();
+		runs.clear();
+	}
+
+	@Override
+	public void close() {//deletes the temporary files
+		deleteRuns();
+		budget.sorters.remove(this);
+	}
+}
@@ -0,0 +1,490 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki.tools;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bzip2.BZip2CompressorInputStream;
+import wiki.NameSpaces.NameSpace;
+
+/*
+The class MultistreamDump reads pages directly from a multistream dump, e.g. enwiktionary-latest-pages-articles-multistream.xml.bz2,
+using its index, e.g. enwiktionary-latest-pages-articles-multistream-index.txt.bz2, without splitting the dump.
+
+A multistream dump is a sequence of independent bz2 streams: the first one contains the header of the dump (<mediawiki> and <siteinfo>),
+each of the following ones contains up to 100 pages. The index has a line offset:id:title for each page, where offset is the position
+in the dump of the stream containing the page.
+At lookup only the stream of the page is read and decompressed, the pages of the most recently used streams are kept in a cache.
+
+The index is kept in memory as a sorted array with 8 bytes per page: 40 bits of the hash of the title and 24 bits of the stream number;
+in case of hash collisions all streams with the same hash are searched, so lookups are exact.
+
+The maps returned by pages(), templates() and modules() can be used in place of the page stores written by WikiSplitter, e.g. by
+WikiPage, as content they return the trimmed text of the page; get() and containsKey() use the index, while the iteration of the
+entries reads all the streams of the dump, in the order of the dump: so does also the first size() of a namespace, the number
+of entries is then kept by the dump; isEmpty() reads the streams up to the first entry, if the size is not known.
+
+usage:  java wiki.tools.MultistreamDump <dump.xml.bz2> <index.txt.bz2> <title>
+*/
+final public class MultistreamDump implements Closeable {
+	public final static int DEFAULT_CACHED_STREAMS = 64;
+
+	private final static int STREAM_BITS = 24;
+	private final static long STREAM_MASK = (1L << STREAM_BITS) - 1;
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	private final String fn;
+	private final FileChannel channel;
+	private final long[] streams;//offsets of the streams of pages, in ascending order
+	private final long[] index;//sorted hash << STREAM_BITS | stream
+	private final String language;
+	private final SiteContext site;
+	private final LinkedHashMap<Integer, Map<String, Page>> cache;
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong streams_read = new AtomicLong();
+	private final ConcurrentHashMap<Integer, Integer> view_sizes = new ConcurrentHashMap<>();//number of entries of the views by namespace
+
+	public final static class Page {
+		public final String title;
+		public final int ns;//namespace, DumpScanner.NO_NAMESPACE if missing in the dump
+		public final String text;//null if the page has no text
+
+		Page(String title, int ns, String text) {
+			this.title = title;
+			this.ns = ns;
+			this.text = text;
+		}
+	}
+
+	private MultistreamDump(String fn, String indexfile, int cached_streams) throws IOException {
+		this.fn = fn;
+		channel = FileChannel.open(Paths.get(fn), StandardOpenOption.READ);
+		try {
+			long[] streams = new long[1024];
+			long[] index = new long[1024];
+			int n_streams = 0;
+			int n_pages = 0;
+			try (LineNumberReader in = new LineNumberReader(new InputStreamReader(open(indexfile), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					int idx = line.indexOf(':');
+					int idx2 = idx == -1 ? -1 : line.indexOf(':', idx + 1);
+					if (idx2 == -1)
+						throw new IOException("invalid line " + in.getLineNumber() + " in " + indexfile);
+					long offset = Long.parseLong(line.substring(0, idx));
+					if (n_streams == 0 || streams[n_streams - 1] != offset) {
+						if (n_streams > 0 && offset < streams[n_streams - 1])
+							throw new IOException("offsets not in ascending order at line " + in.getLineNumber() + " in " + indexfile);
+						if (n_streams > STREAM_MASK)
+							throw new IOException("too many streams in " + indexfile);
+						if (n_streams == streams.length)
+							streams = Arrays.copyOf(streams, n_streams * 2);
+						streams[n_streams++] = offset;
+					}
+					if (n_pages == index.length)
+						index = Arrays.copyOf(index, n_pages * 2);
+					String title = line.substring(idx2 + 1);
+					if (title.indexOf('&') != -1)
+						title = unescape(title);
+					index[n_pages++] = hash(title) << STREAM_BITS | (n_streams - 1);
+				}
+			} catch (NumberFormatException ex) {
+				throw new IOException("invalid offset in " + indexfile, ex);
+			}
+			this.streams = Arrays.copyOf(streams, n_streams);
+			this.index = Arrays.copyOf(index, n_pages);
+			Arrays.sort(this.index);
+
+			String lang = null;//the language is in the header of the dump, before the first stream of pages
+			try (DumpScanner scanner = new DumpScanner(new BZip2CompressorInputStream(read(0, n_streams == 0 ? channel.size() : streams[0]), false))) {
+				DumpScanner.Token token;
+				while (lang == null && (token = scanner.next()) != DumpScanner.Token.END)
+					if (token == DumpScanner.Token.LANGUAGE)
+						lang = scanner.getValue();
+			}
+			language = lang == null ? "en" : lang;
+			site = SiteContext.get(new Locale(language));
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+		cache = new LinkedHashMap<Integer, Map<String, Page>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Map<String, Page>> eldest) {
+				return size() > cached_streams;
+			}
+		};
+	}
+
+	public static MultistreamDump open(String fn, String indexfile) throws IOException {
+		return new MultistreamDump(fn, indexfile, DEFAULT_CACHED_STREAMS);
+	}
+
+	public static MultistreamDump open(String fn, String indexfile, int cached_streams) throws IOException {
+		return new MultistreamDump(fn, indexfile, cached_streams);
+	}
+
+	public String getHeader() {//same header of wiki.dat
+		return language + "|" + fn;
+	}
+
+	public String getLanguage() {//from attribute xml:lang of the dump
+		return language;
+	}
+
+	public int size() {//number of pages in the index
+		return index.length;
+	}
+
+	public int getStreams() {//number of streams of pages
+		return streams.length;
+	}
+
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	public long getStreamsRead() {//streams decompressed, i.e. lookups not served by the cache or by the index alone
+		return streams_read.get();
+	}
+
+	public Page getPage(String title) throws IOException {//null if the page is not in the dump
+		lookups.incrementAndGet();
+		long hash = hash(title);
+		for (int i = lowerBound((hash + 1) << STREAM_BITS) - 1; i >= 0 && index[i] >>> STREAM_BITS == hash; i--) {//in case of duplicates the last page wins, as in WikiSplitter
+			Page page = getStream((int) (index[i] & STREAM_MASK)).get(title);
+			if (page != null)
+				return page;
+		}
+		return null;
+	}
+
+	private boolean isLast(String title, int stream) throws IOException {//true if no following stream has a page with the same title
+		long hash = hash(title);
+		for (int i = lowerBound((hash + 1) << STREAM_BITS) - 1; i >= 0 && index[i] >>> STREAM_BITS == hash; i--) {
+			int other = (int) (index[i] & STREAM_MASK);
+			if (other <= stream)
+				return true;
+			if (getStream(other).containsKey(title))
+				return false;
+		}
+		return true;
+	}
+
+	public String getText(String title) throws IOException {//null if the page is not in the dump or it has no text
+		Page page = getPage(title);
+		return page == null ? null : page.text;
+	}
+
+	public String randomTitle(Random random) throws IOException {//title of a random page of the main namespace, null if none is found
+		for (int attempt = 0; attempt < 16 && streams.length > 0; attempt++) {
+			ArrayList<String> titles = new ArrayList<>();
+			for (Page page : getStream(random.nextInt(streams.length)).values())
+				if (page.ns == 0 && page.text != null)
+					titles.add(page.title);
+			if (!titles.isEmpty()) {
+				titles.sort(null);//pages of a stream are kept in a HashMap
+				return titles.get(random.nextInt(titles.size()));
+			}
+		}
+		return null;
+	}
+
+	public Map<String, String> pages() {//pages of the main namespace, as wiki.pgs
+		return new View(null);
+	}
+
+	public Map<String, String> templates() {//templates by name without namespace, as templates.pgs
+		return new View(site.getNameSpace(10));
+	}
+
+	public Map<String, String> modules() {//modules by name without namespace, as modules.pgs
+		return new View(site.getNameSpace(828));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private final class View extends AbstractMap<String, String> {
+		private final int ns;
+		private final String[] prefixes;//names of the namespace used in titles
+
+		View(NameSpace namespace) {
+			if (namespace == null) {
+				ns = 0;
+				prefixes = new String[] {""};
+			} else {
+				ns = namespace.id;
+				ArrayList<String> names = new ArrayList<>();
+				List<String> aliases = namespace.get_aliases();
+				if (aliases != null)//localized names first
+					for (int i = aliases.size() - 1; i >= 0; i--)
+						names.add(aliases.get(i) + ":");
+				names.add(namespace.get_name() + ":");
+				prefixes = names.toArray(new String[0]);
+			}
+		}
+
+		private boolean accepts(Page page) {
+			return page != null && page.text != null && (page.ns == ns || page.ns == DumpScanner.NO_NAMESPACE);
+		}
+
+		@Override
+		public String get(Object key) {
+			if (!(key instanceof String))
+				return null;
+			try {
+				for (String prefix : prefixes) {
+					Page page = getPage(prefix + key);
+					if (accepts(page))
+						return page.text.trim();
+				}
+				return null;
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		private Map.Entry<String, String> entry(Page page, int stream) throws IOException {//null if get() does not return this page for its key
+			if (!accepts(page))
+				return null;
+			int j = 0;
+			while (j < prefixes.length && !page.title.startsWith(prefixes[j]))
+				j++;
+			if (j == prefixes.length)
+				return null;
+			String key = page.title.substring(prefixes[j].length());
+			for (int i = 0; i < j; i++)//the names of the namespace are tried in order by get()
+				if (accepts(getPage(prefixes[i] + key)))
+					return null;
+			return isLast(page.title, stream) ? new AbstractMap.SimpleImmutableEntry<>(key, page.text.trim()) : null;
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {//reads all the streams, see the description of the class
+			return new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					return new Iterator<Map.Entry<String, String>>() {
+						private int stream;//next stream to be read
+						private Iterator<Page> pages = Collections.emptyIterator();
+						private Map.Entry<String, String> next;
+
+						@Override
+						public boolean hasNext() {
+							try {
+								while (next == null) {
+									if (pages.hasNext())
+										next = entry(pages.next(), stream - 1);
+									else if (stream < streams.length) {
+										ArrayList<Page> list = new ArrayList<>(getStream(stream++).values());
+										list.sort((a, b) -> a.title.compareTo(b.title));//pages of a stream are kept in a HashMap
+										pages = list.iterator();
+									} else return false;
+								}
+								return true;
+							} catch (IOException ex) {
+								throw new UncheckedIOException(ex);
+							}
+						}
+
+						@Override
+						public Map.Entry<String, String> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							Map.Entry<String, String> entry = next;
+							next = null;
+							return entry;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return View.this.size();
+				}
+			};
+		}
+
+		@Override
+		public int size() {//reads all the streams only the first time, the dump does not change
+			return view_sizes.computeIfAbsent(ns, k -> {
+				int size = 0;
+				for (Iterator<Map.Entry<String, String>> it = entrySet().iterator(); it.hasNext(); it.next())
+					size++;
+				return size;
+			});
+		}
+
+		@Override
+		public boolean isEmpty() {
+			Integer size = view_sizes.get(ns);
+			return size != null ? size == 0 : !entrySet().iterator().hasNext();
+		}
+	}
+
+	private Map<String, Page> getStream(int stream) throws IOException {
+		synchronized (cache) {
+			Map<String, Page> pages = cache.get(stream);
+			if (pages != null)
+				return pages;
+		}
+		streams_read.incrementAndGet();
+		long end = stream + 1 < streams.length ? streams[stream + 1] : channel.size();
+		HashMap<String, Page> pages = new HashMap<>();
+		try (DumpScanner scanner = new DumpScanner(new BZip2CompressorInputStream(read(streams[stream], end), false))) {
+			while (scanner.next() != DumpScanner.Token.END)
+				if (scanner.getTitle() != null)
+					pages.put(scanner.getTitle(), new Page(scanner.getTitle(), scanner.getNamespace(), scanner.getText()));
+		}
+		synchronized (cache) {
+			cache.put(stream, pages);
+		}
+		return pages;
+	}
+
+	private InputStream read(long start, long end) {//bytes of the dump from start to end, with positional reads so that threads do not interfere
+		return new InputStream() {
+			private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+			private long position = start;
+
+			private boolean fill() throws IOException {
+				if (buffer.hasRemaining())
+					return true;
+				if (position >= end)
+					return false;
+				buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+				int n = channel.read(buffer, position);
+				buffer.flip();
+				if (n <= 0)
+					return false;
+				position += n;
+				return true;
+			}
+
+			@Override
+			public int read() throws IOException {
+				return fill() ? buffer.get() & 0xff : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0)
+					return 0;
+				if (!fill())
+					return -1;
+				int n = Math.min(len, buffer.remaining());
+				buffer.get(b, off, n);
+				return n;
+			}
+		};
+	}
+
+	private int lowerBound(long key) {
+		int low = 0;
+		int high = index.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (index[mid] < key)
+				low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	private static long hash(String st) {//40 bits of FNV-1a hash
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < st.length(); i++) {
+			h ^= st.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return (h ^ h >>> 40) & ((1L << (64 - STREAM_BITS)) - 1);
+	}
+
+	private static String unescape(String title) {//titles in the index are escaped as in html, titles cannot contain entities
+		return title.replace("&quot;", "\"").replace("&#039;", "'").replace("&#39;", "'").replace("&apos;", "'")
+			.replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+	}
+
+	private static InputStream open(String fn) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(fn), BUFFER_SIZE);
+		return fn.endsWith("bz2") ? new BZip2CompressorInputStream(in, true) : in;
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 3) {
+			try (MultistreamDump dump = open(args[0], args[1])) {
+				long t0 = System.nanoTime();
+				Page page = dump.getPage(args[2]);
+				if (page == null)
+					System.out.println("Unable to find " + args[2]);
+				else {
+					System.out.println(page.text);
+					System.out.println();
+					System.out.println(args[2] + " (namespace " + page.ns + ") found in " + (System.nanoTime() - t0)/1e9 + " s, among "
+						+ dump.size() + " pages in " + dump.getStreams() + " streams");
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		} else {
+			System.out.println("Usage: java wiki.tools.MultistreamDump <dump.xml.bz2> <index.txt.bz2> <title>");
+		}
+	}
+}
@@ -0,0 +1,371 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+The class PageStore is a read-only map title -> content backed by a memory-mapped binary file.
+Only the sorted title index is touched at lookup, the content of a page is decoded on demand,
+so the startup time and the heap footprint do not depend on the size of the dump.
+
+File format (big endian):
+- magic "WPS1" (4 bytes)
+- number of pages (int)
+- offset of the index (long)
+- header length (int) + header (UTF-8), e.g. the first line of wiki.dat
+- data area: for each page the title (UTF-8) followed by the content (UTF-8)
+- index: for each page (sorted by UTF-8 bytes of title) title offset (long), title length (int), content offset (long), content length (int)
+
+Store files are generated by WikiSplitter with option -store or converted from *.dat files with:
+
+usage:  java wiki.tools.PageStore <file.dat> [<file.pgs>]
+*/
+final public class PageStore extends AbstractMap<String, String> implements Closeable {
+	public final static String STORE_SUFFIX = ".pgs";
+
+	private final static int MAGIC = 0x57505331;//"WPS1"
+	private final static int INDEX_ENTRY_SIZE = 24;
+	private final static int SEGMENT_SIZE = 1 << 30;//size of each mapped segment, a page may span two segments
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final int size;
+	private final long index;
+	private final String header;
+
+	private PageStore(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		long length = channel.size();
+		segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+		for (int i = 0; i < segments.length; i++) {
+			long start = (long) i * SEGMENT_SIZE;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+		}
+		if (length < 20 || getInt(0) != MAGIC) {
+			channel.close();
+			throw new IOException("invalid page store: " + path);
+		}
+		size = getInt(4);
+		index = getLong(8);
+		int header_length = getInt(16);
+		header = new String(getBytes(20, header_length), StandardCharsets.UTF_8);
+	}
+
+	public static PageStore open(String fn) throws IOException {
+		return new PageStore(Paths.get(fn));
+	}
+
+	public String getHeader() {//first line of wiki.dat, empty for templates and modules
+		return header;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && find((String) key) != -1;
+	}
+
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String))
+			return null;
+		int i = find((String) key);
+		return i == -1 ? null : getContent(i);
+	}
+
+	public String getTitle(int i) {//title of i-th page in index order
+		long entry = index + (long) i * INDEX_ENTRY_SIZE;
+		return new String(getBytes(getLong(entry), getInt(entry + 8)), StandardCharsets.UTF_8);
+	}
+
+	public String getContent(int i) {//content of i-th page in index order
+		long entry = index + (long) i * INDEX_ENTRY_SIZE;
+		return new String(getBytes(getLong(entry + 12), getInt(entry + 20)), StandardCharsets.UTF_8);
+	}
+
+	public int getContentLength(int i) {//length in bytes of the content of i-th page, the content is not decoded
+		return getInt(index + (long) i * INDEX_ENTRY_SIZE + 20);
+	}
+
+	private int find(String title) {//binary search on the index, titles are compared as UTF-8 bytes without decoding
+		byte[] key = title.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long entry = index + (long) mid * INDEX_ENTRY_SIZE;
+			int cmp = compare(getLong(entry), getInt(entry + 8), key);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	private int compare(long offset, int length, byte[] key) {
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int cmp = (getByte(offset + i) & 0xff) - (key[i] & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return length - key.length;
+	}
+
+	private byte getByte(long pos) {
+		return segments[(int) (pos / SEGMENT_SIZE)].get((int) (pos % SEGMENT_SIZE));
+	}
+
+	private int getInt(long pos) {
+		return ((getByte(pos) & 0xff) << 24) | ((getByte(pos + 1) & 0xff) << 16) | ((getByte(pos + 2) & 0xff) << 8) | (getByte(pos + 3) & 0xff);
+	}
+
+	private long getLong(long pos) {
+		return ((long) getInt(pos) << 32) | (getInt(pos + 4) & 0xffffffffL);
+	}
+
+	private byte[] getBytes(long pos, int length) {
+		byte[] result = new byte[length];
+		int done = 0;
+		while (done < length) {
+			int seg = (int) (pos / SEGMENT_SIZE);
+			int off = (int) (pos % SEGMENT_SIZE);
+			int n = Math.min(length - done, segments[seg].limit() - off);
+			ByteBuffer bb = segments[seg].duplicate();//duplicate() keeps concurrent readers independent
+			bb.position(off);
+			bb.get(result, done, n);
+			done += n;
+			pos += n;
+		}
+		return result;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {//entries are decoded lazily while iterating
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new Iterator<Map.Entry<String, String>>() {
+					private int i = 0;
+
+					@Override
+					public boolean hasNext() {
+						return i < size;
+					}
+
+					@Override
+					public Map.Entry<String, String> next() {
+						if (i >= size)
+							throw new NoSuchElementException();
+						return new PageEntry(i++);
+					}
+				};
+			}
+		};
+	}
+
+	private final class PageEntry implements Map.Entry<String, String> {//content is decoded only if getValue() is called
+		private final int i;
+
+		PageEntry(int i) {
+			this.i = i;
+		}
+
+		@Override
+		public String getKey() {
+			return getTitle(i);
+		}
+
+		@Override
+		public String getValue() {
+			return getContent(i);
+		}
+
+		@Override
+		public String setValue(String value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public static class Writer implements Closeable {//writes a page store, pages may be added in any order, in case of duplicates the last one wins
+		private final String fn;
+		private final DataOutputStream out;
+		private final ArrayList<byte[]> titles = new ArrayList<>();
+		private long[] offsets = new long[1024];//title offset, content offset
+		private int[] lengths = new int[1024];//content length
+		private long position;
+
+		public Writer(String fn, String header) throws IOException {
+			this.fn = fn;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fn), 1 << 16));
+			byte[] header_bytes = header == null ? new byte[0] : header.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(MAGIC);
+			out.writeInt(0);//number of pages, written at close
+			out.writeLong(0);//offset of index, written at close
+			out.writeInt(header_bytes.length);
+			out.write(header_bytes);
+			position = 20 + header_bytes.length;
+		}
+
+		public void add(String title, String content) throws IOException {
+			byte[] title_bytes = title.getBytes(StandardCharsets.UTF_8);
+			byte[] content_bytes = content.getBytes(StandardCharsets.UTF_8);
+			int n = titles.size();
+			if (2 * n + 2 > offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				lengths = Arrays.copyOf(lengths, lengths.length * 2);
+			}
+			offsets[2 * n] = position;
+			offsets[2 * n + 1] = position + title_bytes.length;
+			lengths[n] = content_bytes.length;
+			titles.add(title_bytes);
+			out.write(title_bytes);
+			out.write(content_bytes);
+			position += title_bytes.length + content_bytes.length;
+		}
+
+		@Override
+		public void close() throws IOException {
+			Integer[] order = new Integer[titles.size()];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> {
+				int cmp = Arrays.compareUnsigned(titles.get(a), titles.get(b));
+				return cmp != 0 ? cmp : Integer.compare(a, b);
+			});
+			int count = 0;
+			for (int k = 0; k < order.length; k++) {
+				int i = order[k];
+				if (k + 1 < order.length && Arrays.equals(titles.get(i), titles.get(order[k + 1])))
+					continue;//duplicate title, keep the last one
+				out.writeLong(offsets[2 * i]);
+				out.writeInt(titles.get(i).length);
+				out.writeLong(offsets[2 * i + 1]);
+				out.writeInt(lengths[i]);
+				count++;
+			}
+			out.close();
+			try (FileChannel fc = FileChannel.open(Paths.get(fn), StandardOpenOption.WRITE)) {//patch number of pages and offset of index in the file header
+				ByteBuffer bb = ByteBuffer.allocate(12);
+				bb.putInt(count).putLong(position).flip();
+				fc.write(bb, 4);
+			}
+		}
+	}
+
+	public static int convert(String datfile, String storefile) throws IOException {//converts a *.dat file generated by WikiSplitter into a page store
+		int counter = 0;
+		try (LineNumberReader in = new LineNumberReader(new InputStreamReader(new FileInputStream(datfile), StandardCharsets.UTF_8))) {
+			String st = in.readLine();
+			if (st == null)
+				throw new IOException("empty file: " + datfile);
+			boolean isWikiDat = st.indexOf('|') != -1 && !isPageHeader(st);
+			try (Writer writer = new Writer(storefile, isWikiDat ? st : null)) {
+				if (isWikiDat)
+					st = in.readLine();
+				StringBuilder definition = new StringBuilder();
+				while (st != null) {
+					int idx = st.lastIndexOf('|');
+					if (idx == -1)
+						throw new IOException("Parsing error in " + datfile + " at line " + in.getLineNumber() + ": " + st);
+					String identifier = st.substring(0, idx).trim();
+					int lines = Integer.parseInt(st.substring(idx + 1).trim());
+					for (int i = 0; i < lines && (st = in.readLine()) != null; i++) {
+						if (i > 0)
+							definition.append("\n");
+						definition.append(st);
+					}
+					writer.add(identifier, definition.toString());
+					definition.setLength(0);
+					counter++;
+					st = in.readLine();
+				}
+			}
+		}
+		return counter;
+	}
+
+	private static boolean isPageHeader(String st) {//checks if line is like "title|number of lines"
+		int idx = st.lastIndexOf('|');
+		if (idx == -1)
+			return false;
+		return Utilities.checkInteger(st.substring(idx + 1));
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 1 || args.length == 2) {
+			String datfile = args[0];
+			String storefile = args.length == 2 ? args[1] :
+				(datfile.endsWith(".dat") ? datfile.substring(0, datfile.length() - 4) : datfile) + STORE_SUFFIX;
+			try {
+				long t0 = System.nanoTime();
+				int n = convert(datfile, storefile);
+				System.out.println(n + " pages written to " + storefile + " in " + (System.nanoTime() - t0)/1e9 + " s");
+			} catch (IOException | NumberFormatException e) {
+				e.printStackTrace();
+			}
+		} else {
+			System.out.println("Usage: java wiki.tools.PageStore <file.dat> [<file.pgs>]");
+		}
+	}
+}
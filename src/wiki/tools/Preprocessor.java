@@ -0,0 +1,157 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki.tools;
+
+/*
+Single pass preprocessor of wikitext: html comments, include tags and nowiki tags are removed in one scan of the input into a fresh buffer,
+so the cost is linear also for large templates and long entries.
+
+Tags are matched at the end of the output written so far, this gives the same result of repeated searches from the start of the text,
+also when the removal of a comment or a tag joins the pieces of another one, e.g. <no<includeonly>include> becomes <noinclude>.
+Include tags are processed according to https://en.wikipedia.org/wiki/Help:Template#Noinclude,_includeonly,_and_onlyinclude
+- <includeonly> and </includeonly> are removed, keeping their content
+- <noinclude> ... </noinclude> is removed with its content, an orphan <noinclude> removes everything up to the end
+- if <onlyinclude> ... </onlyinclude> is present, only the content of the first section is kept
+*/
+final public class Preprocessor {
+	private final static String COMMENT = "<!--";
+	private final static String END_COMMENT = "-->";
+	private final static String INCLUDEONLY = "<includeonly>";
+	private final static String END_INCLUDEONLY = "</includeonly>";
+	private final static String NOINCLUDE = "<noinclude>";
+	private final static String END_NOINCLUDE = "</noinclude>";
+	private final static String ONLYINCLUDE = "<onlyinclude>";
+	private final static String END_ONLYINCLUDE = "</onlyinclude>";
+	private final static String NOWIKI = "<nowiki>";
+	private final static String END_NOWIKI = "</nowiki>";
+
+	private Preprocessor() {
+	}
+
+	public static String stripComments(CharSequence text) {//removes html comments <!-- -->, used for the text of a page
+		return process(text, true, false, false).toString();
+	}
+
+	public static String transclude(CharSequence text) {//removes html comments and processes include tags, used for the text of a template
+		return process(text, true, false, true).toString();
+	}
+
+	public static String removeNowiki(CharSequence text) {//removes tags <nowiki> and </nowiki>, keeping their content
+		int len = text.length();
+		StringBuilder out = new StringBuilder(len);
+		for (int i = 0; i < len; i++) {
+			char ch = text.charAt(i);
+			out.append(ch);
+			if (ch == '>') {
+				if (endsWith(out, NOWIKI))
+					out.setLength(out.length() - NOWIKI.length());
+				else if (endsWith(out, END_NOWIKI))
+					out.setLength(out.length() - END_NOWIKI.length());
+			}
+		}
+		return out.toString();
+	}
+
+/*
+comments: html comments are removed, an unterminated comment removes everything up to the end
+blank_lines: when a comment is removed between two newlines, one newline is removed too, so that no empty line is left
+include_tags: include tags are processed
+*/
+	static StringBuilder process(CharSequence text, boolean comments, boolean blank_lines, boolean include_tags) {
+		int len = text.length();
+		StringBuilder out = new StringBuilder(len);
+		int noinclude = -1;//position in out of pending <noinclude>
+		int i = 0;
+		while (i < len) {
+			char ch = text.charAt(i++);
+			out.append(ch);
+			if (ch == '-') {
+				if (comments && endsWith(out, COMMENT)) {
+					int start = out.length() - COMMENT.length();
+					out.setLength(start);
+					int end = indexOf(text, END_COMMENT, i - 1);//the last dash of <!-- belongs also to -->
+					if (end == -1)
+						break;//unterminated comment
+					i = end + END_COMMENT.length();
+					if (blank_lines && start > 0 && out.charAt(start - 1) == '\n' && i < len && text.charAt(i) == '\n')
+						i++;
+				}
+			} else if (ch == '>' && include_tags) {
+				if (endsWith(out, INCLUDEONLY))
+					out.setLength(out.length() - INCLUDEONLY.length());
+				else if (endsWith(out, END_INCLUDEONLY))
+					out.setLength(out.length() - END_INCLUDEONLY.length());
+				else if (noinclude == -1) {
+					if (endsWith(out, NOINCLUDE))
+						noinclude = out.length() - NOINCLUDE.length();
+				} else if (endsWith(out, END_NOINCLUDE)) {
+					out.setLength(noinclude);
+					noinclude = -1;
+				}
+			}
+		}
+		if (include_tags) {
+			int idx = out.indexOf(ONLYINCLUDE);
+			if (idx != -1) {
+				int idx2 = out.indexOf(END_ONLYINCLUDE, idx);
+				if (idx2 != -1) {
+					out.setLength(idx2);
+					out.delete(0, idx + ONLYINCLUDE.length());
+					return out;
+				}
+			}
+			if (noinclude != -1)//orphan <noinclude>, it happens if there is no end tag </noinclude>
+				out.setLength(noinclude);
+		}
+		return out;
+	}
+
+	private static boolean endsWith(StringBuilder sb, String suffix) {
+		int offset = sb.length() - suffix.length();
+		if (offset < 0)
+			return false;
+		for (int i = suffix.length() - 1; i >= 0; i--)
+			if (sb.charAt(offset + i) != suffix.charAt(i))
+				return false;
+		return true;
+	}
+
+	private static int indexOf(CharSequence text, String str, int from) {
+		if (text instanceof String)
+			return ((String) text).indexOf(str, from);
+		if (text instanceof StringBuilder)
+			return ((StringBuilder) text).indexOf(str, from);
+		char first = str.charAt(0);
+		for (int max = text.length() - str.length(); from <= max; from++) {
+			if (text.charAt(from) == first) {
+				int k = 1;
+				while (k < str.length() && text.charAt(from + k) == str.charAt(k))
+					k++;
+				if (k == str.length())
+					return from;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,188 @@
+/*
+License Information, 2026 Livio (javalc6)
+
+Feel free to modify, re-use this software, please give appropriate
+credit by referencing this Github repository.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+IMPORTANT NOTICE
+Note that this software is freeware and it is not designed, licensed or
+intended for use in mission critical, life support and military purposes.
+The use of this software is at the risk of the user.
+
+DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
+*/
+package wiki.tools;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+import json.JSONException;
+import json.JSONObject;
+import json.JSONValue;
+
+import wiki.NameSpaces;
+import wiki.NameSpaces.NameSpace;
+import wiki.parserfunctions.ParserFunction;
+import wiki.parserfunctions.ParserFunctions;
+import static wiki.tools.Utilities.getResourceBundle;
+import static wiki.tools.Utilities.getResourceString;
+import static wiki.tools.Utilities.PROPERTY_MODULE;
+import static wiki.tools.Utilities.PROPERTY_REDIRECT;
+import static wiki.tools.Utilities.PROPERTY_TEMPLATE;
+import static wiki.tools.Utilities.PROPERTY_PARSER_IF;
+import static wiki.tools.Utilities.PROPERTY_PARSER_IFERROR;
+import static wiki.tools.Utilities.PROPERTY_PARSER_IFEXIST;
+import static wiki.tools.Utilities.PROPERTY_PARSER_IFEXPR;
+import static wiki.tools.Utilities.PROPERTY_PARSER_IFEQ;
+
+/*
+The class SiteContext holds the settings of a wiki site: locale, namespaces with their localized aliases, table of parser functions
+with their localized names and localization messages used by {{int:}}.
+A SiteContext is immutable, it is created once per locale and shared by all pages and threads, see get(locale); in this way WikiPage
+is just a cheap per-page handle and pages can be rendered concurrently.
+*/
+final public class SiteContext {
+	private final static ConcurrentHashMap<Locale, SiteContext> sites = new ConcurrentHashMap<>();
+
+	private final Locale locale;
+	private final String redirect_alias;
+	private final Map<Integer, NameSpace> namespaces;
+	private final String[] localized_pf;//localized names of #if, #iferror, #ifexist, #ifexpr and #ifeq, null if not defined
+	private volatile Map<String, ParserFunction> parserFunctions;//built at first use, so that tools like WikiSplitter do not need luaj
+	private volatile Map<String, Object> localization;//loaded at first use of {{int:}}
+
+	public SiteContext(Locale locale) {
+		this.locale = locale;
+		HashMap<Integer, NameSpace> namespaces = new HashMap<>(NameSpaces.getNameSpaces());
+		ResourceBundle resourceBundle = getResourceBundle(locale);
+		if (resourceBundle != null)	{
+			String _template = getResourceString(resourceBundle, PROPERTY_TEMPLATE);
+			if (_template != null)
+				namespaces.put(10, namespaces.get(10).with_alias(_template));
+			String _module = getResourceString(resourceBundle, PROPERTY_MODULE);
+			if (_module != null)
+				namespaces.put(828, namespaces.get(828).with_alias(_module));
+			redirect_alias = getResourceString(resourceBundle, PROPERTY_REDIRECT);
+
+			localized_pf = new String[] {getResourceString(resourceBundle, PROPERTY_PARSER_IF), getResourceString(resourceBundle, PROPERTY_PARSER_IFERROR),
+				getResourceString(resourceBundle, PROPERTY_PARSER_IFEXIST), getResourceString(resourceBundle, PROPERTY_PARSER_IFEXPR),
+				getResourceString(resourceBundle, PROPERTY_PARSER_IFEQ)};
+		} else {
+			redirect_alias = null;
+			localized_pf = new String[5];
+		}
+		this.namespaces = Collections.unmodifiableMap(namespaces);
+	}
+
+	private Map<String, ParserFunction> buildParserFunctions() {
+		HashMap<String, ParserFunction> parserFunctions = new HashMap<>(ParserFunctions.getParserFunctions());
+		putParserFunction(parserFunctions, localized_pf[0], wiki.parserfunctions.If.Instance);
+		putParserFunction(parserFunctions, localized_pf[1], wiki.parserfunctions.Iferror.Instance);
+		putParserFunction(parserFunctions, localized_pf[2], wiki.parserfunctions.Ifexist.Instance);
+		putParserFunction(parserFunctions, localized_pf[3], wiki.parserfunctions.Ifexpr.Instance);
+		putParserFunction(parserFunctions, localized_pf[4], wiki.parserfunctions.Ifeq.Instance);
+		return Collections.unmodifiableMap(parserFunctions);
+	}
+
+	public static SiteContext get(Locale locale) {//shared context of the given locale
+		return sites.computeIfAbsent(locale, SiteContext::new);
+	}
+
+	private static void putParserFunction(HashMap<String, ParserFunction> parserFunctions, String name, ParserFunction pf) {
+		if (name != null)
+			parserFunctions.put(name.toLowerCase(), pf);
+	}
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	public String getRedirectAlias() {//localized redirect keyword, may be null
+		return redirect_alias;
+	}
+
+	public ParserFunction getParserFunction(String name) {
+		Map<String, ParserFunction> pfs = parserFunctions;
+		if (pfs == null) {
+			synchronized (this) {
+				pfs = parserFunctions;
+				if (pfs == null)
+					parserFunctions = pfs = buildParserFunctions();
+			}
+		}
+		return pfs.get(name.toLowerCase());
+	}
+
+	public Map<Integer, NameSpace> getNameSpaces() {
+		return namespaces;
+	}
+
+	public NameSpace getNameSpace(int numnamespace) {
+		return namespaces.get(numnamespace);
+	}
+
+	public Integer getNameSpaceNumber(String namespace) {//also localized aliases are recognized
+		return NameSpaces.getNameSpaceNumber(namespaces, namespace);
+	}
+
+	public boolean isNameSpace(String namespace) {
+		return getNameSpaceNumber(namespace) != null;
+	}
+
+	public String getMessage(String key) {//localized message, null if not available
+		Map<String, Object> messages = localization;
+		if (messages == null) {
+			synchronized (this) {
+				messages = localization;
+				if (messages == null)
+					localization = messages = loadLocalization();
+			}
+		}
+		Object val = messages.get(key);
+		return val instanceof String ? (String) val : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> loadLocalization() {//the result is never null, in case of errors an empty map is returned
+		String filename = "resources\\" + locale.getLanguage() + ".json";//localization files can be downloaded from: https://gerrit.wikimedia.org/g/mediawiki/core/%2B/HEAD/languages/i18n
+		try (LineNumberReader in = new LineNumberReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8))) {
+			StringBuilder sb = new StringBuilder();
+			String st;
+			while ((st = in.readLine()) != null) {
+				sb.append(st).append('\n');
+			}
+			JSONValue result = JSONValue.parse(sb.toString());
+			if (result instanceof JSONObject) {
+				return Collections.unmodifiableMap((LinkedHashMap<String, Object>) result.toJava());
+			} else System.out.println("Warning, incorrect JSON content in file " + filename);
+		} catch (JSONException ex) {
+			System.out.println("Warning: " + ex.getMessage());
+		} catch (FileNotFoundException ioex) {
+			System.out.println("Warning, localization file not found: " + filename);
+		} catch (IOException ioex) {
+//ignore
+		}
+		return Collections.emptyMap();
+	}
+}
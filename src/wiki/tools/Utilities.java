@@ -48,7 +48,7 @@ final public class Utilities {
 	public final static String PROPERTY_PARSER_IFEQ = "parser.ifeq";
 
 
-	private static HashMap<String, String> code2language;
+	private final static HashMap<String, String> code2language;//filled once in static initializer, then read only
 
     public static Locale getLocale(String lang_code) {
         if (lang_code.startsWith("en"))
@@ -205,34 +205,25 @@ final public class Utilities {
     }
 
 
-    private static SimpleDateFormat formatter = null;
+    private final static ThreadLocal<SimpleDateFormat> formatter = ThreadLocal.withInitial(() -> {//SimpleDateFormat is not thread safe, one instance per thread
+		SimpleDateFormat sdf = new SimpleDateFormat();
+		TimeZone utc = TimeZone.getTimeZone("GMT+00");
+		sdf.setTimeZone(utc);
+		return sdf;
+	});
 	public static String dateFormatter(Date date, String pattern) {//note: date is nullable
 		if (date == null) {
 			date = new Date(System.currentTimeMillis());
 		}
-        if (formatter == null) {
-			formatter = new SimpleDateFormat();
-			TimeZone utc = TimeZone.getTimeZone("GMT+00");
-			formatter.setTimeZone(utc);
-        }
+		SimpleDateFormat formatter = Utilities.formatter.get();
 		formatter.applyPattern(pattern);
 		return formatter.format(date);
 	}
 
-	public static void delete_comments(StringBuilder text) { // delete html comments <!-- -->
-		int comment;
-		while ((comment = text.indexOf("<!--")) != -1) {// find html comments <!-- -->
-			int eoc = text.indexOf("-->", comment + 3);
-			if (eoc != -1) {
-				text.delete(comment, eoc + 3);
-				if ((comment > 0) && (text.charAt(comment - 1)  == '\n') && (comment < text.length()) && (text.charAt(comment)  == '\n')) {//rimuove l'eventuale riga vuota in caso di eliminazione del commento
-					text.deleteCharAt(comment);
-				}
-			} else {
-				text.setLength(comment);
-				break;
-			}
-		}
+	public static void delete_comments(StringBuilder text) { // delete html comments <!-- -->, also the empty line left by a comment is removed
+		StringBuilder result = Preprocessor.process(text, true, true, false);
+		text.setLength(0);
+		text.append(result);
 	}
 
 
@@ -244,24 +235,8 @@ Note:
 - unable to handle border cases, like template "templates" in english wiktionary:
 <no<includeonly>include>[[Category:{{ucfirst:{{{1|}}} templates}}|{{PAGENAME}}]]</no</includeonly>include><noinclude>{{documentation}}</noinclude>
 */
-	public static String process_include(String input, boolean delete_comments) {
-		StringBuilder sb = new StringBuilder(input);
-		deleteAll(sb, "<includeonly>");
-		deleteAll(sb, "</includeonly>");
-		deleteInsideAB(sb, "<noinclude>", "</noinclude>");
-		int idx = sb.indexOf("<onlyinclude>");
-		if (idx != -1) {
-			int idx2 = sb.indexOf("</onlyinclude>", idx);
-			if (idx2 != -1)
-				return sb.substring(idx + "<onlyinclude>".length(), idx2);
-		}
-		idx = sb.indexOf("<noinclude>");
-		if (idx != -1) {//orphan <noinclude>, it happens if there is no end tag </noinclude>
-			sb.delete(idx, sb.length());//delete everything from <noinclude>
-		}
-		if (delete_comments)
-			delete_comments(sb);
-		return sb.toString();
+	public static String process_include(String input, boolean delete_comments) {//see also Preprocessor.transclude()
+		return Preprocessor.process(input, delete_comments, true, true).toString();
 	}
 
     private static void replaceAll(StringBuilder sb, String what, String replacement) {//21-12-2024: optimized code
@@ -272,22 +247,23 @@ Note:
         }
     }
 
-    public static void deleteAll(StringBuilder sb, String what) {//21-12-2024: optimized code
-        int idx;
-        while ((idx = sb.indexOf(what)) != -1) {
-            sb.delete(idx, idx + what.length());
-        }
-    }
-
-    private static void deleteInsideAB(StringBuilder sb, String a, String b) {//21-12-2024: optimized code
-        int idx;
-		int b_length = b.length();
-        while ((idx = sb.indexOf(a)) != -1) {
-            int idxb = sb.indexOf(b, idx);
-            if (idxb != -1) {
-                sb.delete(idx, idxb + b_length);
-            } else break;
+    public static void deleteAll(StringBuilder sb, String what) {//single pass, occurrences joined by a deletion are deleted too
+        int what_length = what.length();
+        char last = what.charAt(what_length - 1);
+        int len = sb.length();
+        int j = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = sb.charAt(i);
+            sb.setCharAt(j++, ch);
+            if (ch == last && j >= what_length) {
+                int k = what_length - 2;
+                while (k >= 0 && sb.charAt(j - what_length + k) == what.charAt(k))
+                    k--;
+                if (k < 0)
+                    j -= what_length;
+            }
         }
+        sb.setLength(j);
     }
 
     public static String encodeUrl(String s) {
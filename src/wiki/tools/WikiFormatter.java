@@ -31,6 +31,7 @@ import java.net.URLEncoder;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import wiki.JfrEvents;
 import static wiki.tools.Utilities.delete_comments;
 import static wiki.tools.Utilities.getLanguageNames;
 
@@ -40,6 +41,8 @@ final public class WikiFormatter {
 	final static HashMap<String, String> code2language = getLanguageNames();
 
     public static String formatWikiText(StringBuilder lemma, StringBuilder wikitext, String linkBaseURL, String language) {
+		JfrEvents.Format event = new JfrEvents.Format();
+		event.begin();
 		delete_comments(wikitext);
 		StringBuilder result = new StringBuilder(wikitext.length());
 		StringBuilder buf = new StringBuilder(128);
@@ -411,7 +414,9 @@ final public class WikiFormatter {
         deleteAll(result, "<p></p>");
         replaceAll(result, "<li> <li", "<li"); //in case of expanded lines like: # <li ...> blabla...
 		compressSpaces(result);//removes multiple spaces, e.g. ab   c   d --> ab c d 
-		return result.toString();
+		String html = result.toString();
+		event.end(lemma, html.length());
+		return html;
     }
 
     private static void replaceAll(StringBuilder sb, String what, String replacement) {
@@ -24,46 +24,40 @@ DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
 package wiki.tools;
 
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Locale;
-import java.util.ResourceBundle;
 
+import info.bliki.extensions.scribunto.engine.lua.ScribuntoEnginePool;
 import info.bliki.extensions.scribunto.engine.lua.ScribuntoLuaEngine;
 
+import wiki.ExpansionLimits;
+import wiki.TemplateMemo;
 import wiki.TemplateParser;
+import wiki.TemplateProfiler;
 
-import wiki.NameSpaces.NameSpace;
-import wiki.parserfunctions.ParserFunctions;
-import static wiki.NameSpaces.getNameSpace;
-import static wiki.NameSpaces.getNameSpaceNumber;
-import static wiki.tools.Utilities.getResourceBundle;
-import static wiki.tools.Utilities.getResourceString;
 import static wiki.tools.Utilities.flipTemplateName;
-import static wiki.tools.Utilities.PROPERTY_MODULE;
-import static wiki.tools.Utilities.PROPERTY_REDIRECT;
-import static wiki.tools.Utilities.PROPERTY_TEMPLATE;
-import static wiki.tools.Utilities.PROPERTY_PARSER_IF;
-import static wiki.tools.Utilities.PROPERTY_PARSER_IFERROR;
-import static wiki.tools.Utilities.PROPERTY_PARSER_IFEXIST;
-import static wiki.tools.Utilities.PROPERTY_PARSER_IFEXPR;
-import static wiki.tools.Utilities.PROPERTY_PARSER_IFEQ;
 /*
 This class in an helper for wiki page belonging to main NameSpace
+Settings of the site (namespaces, parser functions, localization) are shared in an immutable SiteContext, so a WikiPage is cheap
+to create and pages of the same site can be rendered concurrently, each one by its own thread
 */
 
 final public class WikiPage {
 	private final String pagename;
 	private final Date revision;
-	private final Locale locale;
+	private final SiteContext site;
 	private final TemplateParser tp;
-	private final HashMap<String, String> name2template;
-	private final HashMap<String, String> name2module;
-	private final HashMap<String, String> name2content;//optional, may be null
+	private final Map<String, String> name2template;//HashMap or PageStore
+	private final Map<String, String> name2module;//HashMap or PageStore
+	private final Map<String, String> name2content;//optional, may be null
 	private final boolean trace_calls;
 	private final boolean provide_fake_content;
-	private final String redirect_alias;
 
 	private ScribuntoLuaEngine SLE = null;
+	private ScribuntoEnginePool enginePool = null;//optional, engine is borrowed from the pool instead of being created
+	private TemplateMemo.PageState memo_state = null;//created at first use of the memo of TemplateParser
+	private ExpansionLimits.PageState limit_state = null;//created at the first expansion, the time of the page starts then
+	private TemplateProfiler.PageState profile_state = null;//created at the first expansion if TemplateParser has a profiler
 /* constant strict_Lua_invocation:
    false: ScribuntoLuaEngine is not re-created at each #invoke, resulting in faster module execution but may produce inaccurate result
    true: ScribuntoLuaEngine is re-created at each #invoke, resulting in accurate result but slow module execution
@@ -71,53 +65,23 @@ final public class WikiPage {
 	private final boolean strict_Lua_invocation = false;
 
 	public WikiPage(String name, Date rev, Locale locale, TemplateParser tp, 
-		HashMap<String, String> name2template, HashMap<String, String> name2module, 
-		boolean trace_calls, HashMap<String, String> name2content, boolean provide_fake_content) {//trace_calls and provide_fake_content are only for test purposes
+		Map<String, String> name2template, Map<String, String> name2module, 
+		boolean trace_calls, Map<String, String> name2content, boolean provide_fake_content) {//trace_calls and provide_fake_content are only for test purposes
+		this(name, rev, SiteContext.get(locale), tp, name2template, name2module, trace_calls, name2content, provide_fake_content);
+	}
+
+	public WikiPage(String name, Date rev, SiteContext site, TemplateParser tp, 
+		Map<String, String> name2template, Map<String, String> name2module, 
+		boolean trace_calls, Map<String, String> name2content, boolean provide_fake_content) {
 		pagename = name;
 		revision = rev;
-		this.locale = locale;
+		this.site = site;
 		this.tp = tp;
 		this.name2template = name2template;
 		this.name2module = name2module;
 		this.name2content = name2content;
 		this.trace_calls = trace_calls;
 		this.provide_fake_content = provide_fake_content;
-
-		ResourceBundle resourceBundle = getResourceBundle(locale);
-		if (resourceBundle != null)	{
-			String _template = getResourceString(resourceBundle, PROPERTY_TEMPLATE);
-			if (_template != null) {
-				NameSpace template_ns = getNameSpace(10);
-				template_ns.add_alias(_template);
-			}
-			String _module = getResourceString(resourceBundle, PROPERTY_MODULE);
-			if (_module != null) {
-				NameSpace module_ns = getNameSpace(828);
-				module_ns.add_alias(_module);
-			}
-			redirect_alias = getResourceString(resourceBundle, PROPERTY_REDIRECT);
-
-			String parserIf = getResourceString(resourceBundle, PROPERTY_PARSER_IF);
-			if (parserIf != null) { 
-				ParserFunctions.put(parserIf, wiki.parserfunctions.If.Instance);
-			}
-			String parserIferror = getResourceString(resourceBundle, PROPERTY_PARSER_IFERROR);
-			if (parserIferror != null) { 
-				ParserFunctions.put(parserIferror, wiki.parserfunctions.Iferror.Instance);
-			}
-			String parserIfexist = getResourceString(resourceBundle, PROPERTY_PARSER_IFEXIST);
-			if (parserIfexist != null) { 
-				ParserFunctions.put(parserIfexist, wiki.parserfunctions.Ifexist.Instance);
-			}
-			String parserIfexpr = getResourceString(resourceBundle, PROPERTY_PARSER_IFEXPR);
-			if (parserIfexpr != null) { 
-				ParserFunctions.put(parserIfexpr, wiki.parserfunctions.Ifexpr.Instance);
-			}
-			String parserIfeq = getResourceString(resourceBundle, PROPERTY_PARSER_IFEQ);
-			if (parserIfeq != null) { 
-				ParserFunctions.put(parserIfeq, wiki.parserfunctions.Ifeq.Instance);
-			}
-		} else redirect_alias = null;
 	}
 
 	public String getPagename() {
@@ -129,7 +93,11 @@ final public class WikiPage {
 	}
 
 	public Locale getLocale() {
-		return locale;
+		return site.getLocale();
+	}
+
+	public SiteContext getSite() {
+		return site;
 	}
 
 	public TemplateParser getTemplateParser() {
@@ -150,6 +118,33 @@ final public class WikiPage {
 		else return module;
 	}
 
+	public boolean hasSources(SiteContext site, Map<String, String> name2template, Map<String, String> name2module) {
+		return this.site == site && this.name2template == name2template && this.name2module == name2module;
+	}
+
+	public TemplateMemo.PageState getMemoState() {
+		if (memo_state == null)
+			memo_state = new TemplateMemo.PageState();
+		return memo_state;
+	}
+
+	public ExpansionLimits.PageState getLimitState() {
+		if (limit_state == null)
+			limit_state = tp.getLimits().newPageState();
+		return limit_state;
+	}
+
+	public TemplateProfiler.PageState getProfileState() {//null if profiling is disabled
+		if (profile_state == null && tp.getProfiler() != null)
+			profile_state = tp.getProfiler().newPageState(pagename);
+		return profile_state;
+	}
+
+	public void addDependency(TemplateMemo.Dependency dependency) {//reports what the expansion in progress depends on, see TemplateMemo
+		if (memo_state != null)
+			memo_state.addDependency(dependency);
+	}
+
 	public boolean getTrace_calls() {
 		return trace_calls;
 	}
@@ -159,7 +154,7 @@ final public class WikiPage {
 		int idx = fullpagename.indexOf(":");
 		if (idx != -1) {
 			String ns = fullpagename.substring(0, idx);
-			Integer ns_id = getNameSpaceNumber(ns);
+			Integer ns_id = site.getNameSpaceNumber(ns);
 			if (ns_id != null && ns_id == 10)
 				isTemplate = true;
 		}
@@ -193,7 +188,7 @@ final public class WikiPage {
 			String checkRedirect = text.substring(1, ibrac).trim();
 			if (checkRedirect.endsWith(":"))
 				checkRedirect = checkRedirect.substring(0, checkRedirect.length() - 1);
-			if (checkRedirect.equalsIgnoreCase("redirect") || (redirect_alias != null && checkRedirect.equalsIgnoreCase(redirect_alias))) {
+			if (checkRedirect.equalsIgnoreCase("redirect") || (site.getRedirectAlias() != null && checkRedirect.equalsIgnoreCase(site.getRedirectAlias()))) {
 				int icolon = text.indexOf(":", ibrac);
 				int ebrac = text.indexOf("]]", ibrac);
 				if ((ebrac != -1) && (icolon != -1) && (icolon < ebrac)) {
@@ -204,11 +199,22 @@ final public class WikiPage {
 		return null;//no redirect
 	}
 
+	public void setEnginePool(ScribuntoEnginePool enginePool) {
+		this.enginePool = enginePool;
+	}
+
     public ScribuntoLuaEngine createScribuntoEngine() {
 		if (SLE == null || strict_Lua_invocation)
-			SLE = new ScribuntoLuaEngine(this);
-		else SLE.resetEngine();//reuse engine by resetting globals metatable
+			SLE = enginePool == null ? new ScribuntoLuaEngine(this) : enginePool.borrow(this);
+		else if (!SLE.isRunning())//do not reset the engine in case of nested invocation
+			SLE.resetEngine();//reuse engine by resetting globals metatable
         return SLE;
     }
 
+	public void releaseScribuntoEngine() {//to be called at the end of rendering, the engine is returned to the pool
+		if (SLE != null && enginePool != null)
+			enginePool.release(SLE);
+		SLE = null;
+	}
+
 }//end of class WikiPage
\ No newline at end of file
@@ -24,20 +24,43 @@ DO NOT USE THIS SOFTWARE IF YOU DON'T AGREE WITH STATED CONDITIONS.
 package wiki.tools;
 
 import java.lang.RuntimeException;
+import java.util.Arrays;
 /*
   This class is an helper for parsing wiki text
+
+  The scanner works on a region of the text, by default the whole text. Nested constructs are found through an Index of the text,
+  built once in a linear pre-pass and shared by the scanners of regions of the same text, see getIndex(): in this way getStringParameter()
+  jumps over nested {{ }}, [[ ]] and <nowiki>, <code>, <math> spans instead of scanning them again at each nesting level.
 */
 final public class WikiScanner {
 	protected final String str;//immutable
+	protected final int end;//end of the region, not included
 	protected int pointer;
+	private final Index index;
 
 	public WikiScanner(String str) {
-		this.str = str;
-		pointer = 0;
+		this(new Index(str), 0, str.length());
+	}
+
+	public WikiScanner(Index index, int start, int end) {//scanner of region from start to end (not included) of the indexed text
+		this.index = index;
+		this.str = index.str;
+		if (start < 0 || start > end || end > str.length())
+			throw new RuntimeException("invalid region: " + start + ", " + end);
+		this.end = end;
+		pointer = start;
+	}
+
+	public Index getIndex() {
+		return index;
+	}
+
+	public int getEnd() {
+		return end;
 	}
 
 	public Character getCharInCharSet(String charset) {//returns next char only if it is in charset
-		if (pointer < str.length()) {
+		if (pointer < end) {
 			char ch = str.charAt(pointer);
 			if (charset.indexOf(ch) != -1) {
 				pointer++;
@@ -48,23 +71,23 @@ final public class WikiScanner {
 	}
 
 	public boolean getChar(char ch) {//returns true only if sequence is found at current position; in this case pointer is moved forward
-		if (pointer >= str.length() || str.charAt(pointer) != ch)
+		if (pointer >= end || str.charAt(pointer) != ch)
 			return false;
 		pointer++;
 		return true;
 	}
 
 	public boolean getSequence(String sequence) {//returns true only if sequence is found at current position; in this case pointer is moved forward
-		if (pointer + sequence.length() > str.length() || !str.startsWith(sequence, pointer))
+		if (pointer + sequence.length() > end || !str.startsWith(sequence, pointer))
 			return false;
 		pointer += sequence.length();
 		return true;
 	}
 
 	public String getString() {//returns remaining substring
-		if (pointer < str.length()) {
-			String ret = str.substring(pointer);
-			pointer = str.length();
+		if (pointer < end) {
+			String ret = str.substring(pointer, end);
+			pointer = end;
 			return ret;
 		}
 		return null;			
@@ -81,52 +104,70 @@ final public class WikiScanner {
 	}
 
 	public String getStringWithoutOpening() {//returns substring before {{
-		if (pointer < str.length()) {
+		int start = pointer;
+		return skipWithoutOpening() ? str.substring(start, pointer) : null;
+	}
+
+	public boolean skipWithoutOpening() {//moves before {{, if there is no {{ moves to the end; returns false if the pointer does not move
+		if (pointer < end) {
 			int idx = findTarget("{{", pointer);
 			if (idx == -1)
-				idx = str.length();
+				idx = end;
 			if (idx > pointer) {
-				String ret = str.substring(pointer, idx);
 				pointer = idx;
-				return ret;
+				return true;
 			}
 		}
-		return null;			
+		return false;
 	}
 
 	private int findTarget(String target, int i) {
-		int len = str.length();
-		while (i < len) {
-			if (str.startsWith(target, i))
+		while (i < end) {
+			if (startsWith(target, i))
 				return i;
-			if (str.startsWith("<nowiki>", i)) {
-				int end = str.indexOf("</nowiki>", i + 8);
-				if (end == -1)
-					return -1;
-				i = end + 9; // 9 == "</nowiki>".length()
-				continue;
-			}
-			if (str.startsWith("<code>", i)) {
-				int end = str.indexOf("</code>", i + 6);
-				if (end == -1)
-					return -1;
-				i = end + 7; // 7 == "</code>".length()
-				continue;
+			if (str.charAt(i) == '<') {
+				int tag = index.tag(i);
+				if (tag != -1 && index.tag_type[tag] != Index.MATH) {//<nowiki> or <code>
+					int close = index.tag_close[tag];
+					if (close == -1 || close + Index.TAG_CLOSE[index.tag_type[tag]].length() > end)
+						return -1;
+					i = close + Index.TAG_CLOSE[index.tag_type[tag]].length();
+					continue;
+				}
 			}
 			i++;
 		}
 		return -1;
 	}
 
+	private boolean startsWith(String prefix, int i) {//prefix is within the region
+		return i + prefix.length() <= end && str.startsWith(prefix, i);
+	}
+
 	public String getStringParameter(int[] equalPos) {//returns parameter, if any
-		if (pointer < str.length()) {
+		int start = pointer;
+		int idx = skipParameter(equalPos);
+		return idx == -1 ? null : str.substring(start, idx);
+	}
+
+	public int skipParameter(int[] equalPos) {//moves after parameter, if any, and returns its end position, otherwise does not move and returns -1
+		if (pointer < end) {
 			int i = pointer;
-			int len = str.length();
+			int len = end;
 			int noc = 2; //number of open curls
 			while (i < len) {
 				char ch = str.charAt(i);
 				switch (ch) {
 					case '{':
+						if (noc >= 2 && i + 1 < len && str.charAt(i + 1) == '{') {//nested opening: jump to the closing that brings back this level
+							int brace = index.brace(i);
+							int exit = index.brace_exit[brace];
+							if (exit <= len) {
+								noc += index.brace_level[brace];
+								i = exit;
+								continue;
+							}
+						}
 						boolean found = false;
 						while (++i < len && ((ch = str.charAt(i)) == '{')) {
 							noc++; found = true;
@@ -135,55 +176,44 @@ final public class WikiScanner {
 							noc++;
 						continue;
 					case '}':
-						boolean found2 = false;
-						while (noc > 0 && (++i < len) && ((ch = str.charAt(i)) == '}')) {
-							noc--; found2 = true;
-						}
-						if (found2) {
-							if (noc > 0)
-								noc--;
+						int run = Math.min(index.closingRun(i), len - i);
+						if (run > 1 && noc > 0) {//each } closes a curl
+							if (noc < run) {
+								pointer = i + noc - 2;
+								return pointer;
+							}
+							noc -= run;
+							i += run;
 							if (noc == 0) {
-								String ret = str.substring(pointer, i - 2);
 								pointer = i - 2;
-								return ret;
+								return pointer;
 							}
 							continue;
 						}
-						if (noc > 0) continue;
 						break;
 					case '[':
 						if (++i < len && ((ch = str.charAt(i)) == '[')) {
-							int end = findTarget("]]", i);
-							if (end != -1)
-								i = end + 2;// go after "]]"
+							int link = index.link(i);
+							int close = index.link_close[link];//twin of findTarget("]]", i)
+							if (close != -1 && close + 2 <= len)
+								i = close + 2;// go after "]]"
 						}
 						continue;
 					case '<':
-						if (str.startsWith("<nowiki>", i)) {
-							int end = str.indexOf("</nowiki>", i + 8);
-							if (end != -1) {
-								i = end + 9;//go after tag "</nowiki>"
-								continue;
-							}
-						} else if (str.startsWith("<code>", i)) {
-							int end = str.indexOf("</code>", i + 6);
-							if (end != -1) {
-								i = end + 7;//go after tag "</code>"
-								continue;
-							}
-						} else if (str.startsWith("<math>", i)) {
-							int end = str.indexOf("</math>", i + 6);
-							if (end != -1) {
-								i = end + 7;//go after tag "</math>"
+						int tag = index.tag(i);
+						if (tag != -1) {
+							String close_tag = Index.TAG_CLOSE[index.tag_type[tag]];
+							int close = index.tag_close[tag];
+							if (close != -1 && close + close_tag.length() <= len) {
+								i = close + close_tag.length();//go after closing tag
 								continue;
 							}
 						}
 						break;
 					case '|':
 						if (noc < 3) {
-							String ret = str.substring(pointer, i);
 							pointer = i;
-							return ret;
+							return pointer;
 						}
 						break;
 					case '=':
@@ -194,27 +224,27 @@ final public class WikiScanner {
 				}
 				i++;
 			}
-			return null;
+			return -1;
 
 		}
-		return null;			
+		return -1;
 	}
 
 	public boolean moveAfter(String marker) {//moves after marker, if present returns true, otherwise does not move and returns false
 		int idx = str.indexOf(marker, pointer);
-		if (idx != -1) {
+		if (idx != -1 && idx + marker.length() <= end) {
 			pointer = idx + marker.length();
 			return true;
 		} else return false;
 	}
 
 	public boolean chars_available() {
-		return pointer < str.length();
+		return pointer < end;
 	}
 
 	public void dumpString(String tag) {//print remaining substring
-		if (pointer < str.length()) {
-			System.out.println("dumpString(" + tag + "): " + str.substring(pointer));
+		if (pointer < end) {
+			System.out.println("dumpString(" + tag + "): " + str.substring(pointer, end));
 		} else System.out.println("dumpString(" + tag + "): reached end of string");
 	}
 
@@ -231,9 +261,245 @@ final public class WikiScanner {
 	}
 
 	public void setPointer(int pointer) {
-		if (pointer >= 0 && pointer <= str.length())//pointer = str.length() is valid and indicates "end of string"
+		if (pointer >= 0 && pointer <= end)//pointer = end is valid and indicates "end of string"
 			this.pointer = pointer;
 		else throw new RuntimeException("invalid pointer value: " + pointer);
 	}
 
-}//end of class WikiScanner
\ No newline at end of file
+/*
+Index of nested constructs of a text, built at first use by a linear pre-pass and then read only, so it can be shared by threads.
+Positions refer to the whole text; a scanner of a region uses a position only if it is inside its region, otherwise the construct
+is not closed in the region and the scanner falls back to the plain scan.
+- braces: each position of {{, also inside longer runs of {, with the position of the run of } that closes it and the number of curls
+  still open at that position, as counted by getStringParameter() starting from a level of at least two open curls
+- links: each position of the second [ of [[, with the position of ]] found by findTarget()
+- tags: each position of <nowiki>, <code> and <math>, with the position of the closing tag
+- closings: each run of two or more }, with its end
+*/
+	public final static class Index {
+		final static int NOWIKI = 0, CODE = 1, MATH = 2;
+		final static String[] TAG_OPEN = {"<nowiki>", "<code>", "<math>"};
+		final static String[] TAG_CLOSE = {"</nowiki>", "</code>", "</math>"};
+
+		private final String str;
+		private volatile boolean built = false;
+		private int[] braces, links, tags, closings;//positions of constructs, in increasing order
+		private int[] closing_end;
+		int[] brace_exit, brace_level;
+		int[] link_close;//-1 if not found
+		int[] tag_type, tag_close;//-1 if not found
+
+		public Index(String str) {
+			this.str = str;
+		}
+
+		public String getText() {
+			return str;
+		}
+
+		public boolean hasBraces(int start, int end) {//true if {{ is found from start to end (not included)
+			ensureBuilt();
+			int brace = Arrays.binarySearch(braces, start);
+			if (brace < 0)
+				brace = -brace - 1;
+			return brace < braces.length && braces[brace] + 2 <= end;
+		}
+
+		int brace(int i) {//position of {{ to index of brace
+			ensureBuilt();
+			return Arrays.binarySearch(braces, i);
+		}
+
+		int link(int i) {//position of second [ of [[ to index of link
+			ensureBuilt();
+			return Arrays.binarySearch(links, i);
+		}
+
+		int tag(int i) {//position of < to index of tag, -1 if there is no tag at position i
+			ensureBuilt();
+			int tag = Arrays.binarySearch(tags, i);
+			return tag < 0 ? -1 : tag;
+		}
+
+		int closingRun(int i) {//number of } from position i
+			ensureBuilt();
+			return run(i);
+		}
+
+		private int run(int i) {
+			int closing = Arrays.binarySearch(closings, i);
+			if (closing < 0)
+				closing = -closing - 2;//run starting before i
+			return closing >= 0 && i < closing_end[closing] ? closing_end[closing] - i : 1;
+		}
+
+		private void ensureBuilt() {
+			if (!built) {
+				synchronized (this) {
+					if (!built) {
+						build();
+						built = true;
+					}
+				}
+			}
+		}
+
+		private void build() {
+			int len = str.length();
+			int n_braces = 0, n_links = 0, n_tags = 0;
+			for (int i = 1; i < len; i++) {
+				char ch = str.charAt(i);
+				if (ch == '{' && str.charAt(i - 1) == '{')
+					n_braces++;
+				else if (ch == '[' && str.charAt(i - 1) == '[')
+					n_links++;
+				else if (str.charAt(i - 1) == '<' && tagType(i - 1) != -1)
+					n_tags++;
+			}
+			int n_closings = 0;
+			for (int i = 1; i < len; i++)
+				if (str.charAt(i) == '}' && str.charAt(i - 1) == '}' && (i == 1 || str.charAt(i - 2) != '}'))
+					n_closings++;
+			closings = new int[n_closings];
+			closing_end = new int[n_closings];
+			n_closings = 0;
+			for (int i = 1; i < len; i++)
+				if (str.charAt(i) == '}' && str.charAt(i - 1) == '}' && (i == 1 || str.charAt(i - 2) != '}')) {
+					int j = i + 1;
+					while (j < len && str.charAt(j) == '}')
+						j++;
+					closings[n_closings] = i - 1;
+					closing_end[n_closings++] = j;
+				}
+			braces = new int[n_braces];
+			links = new int[n_links];
+			tags = new int[n_tags];
+			tag_type = new int[n_tags];
+			n_braces = n_links = n_tags = 0;
+			for (int i = 1; i < len; i++) {
+				char ch = str.charAt(i);
+				int type;
+				if (ch == '{' && str.charAt(i - 1) == '{')
+					braces[n_braces++] = i - 1;
+				else if (ch == '[' && str.charAt(i - 1) == '[')
+					links[n_links++] = i;
+				else if (str.charAt(i - 1) == '<' && (type = tagType(i - 1)) != -1) {
+					tag_type[n_tags] = type;
+					tags[n_tags++] = i - 1;
+				}
+			}
+
+			tag_close = new int[n_tags];//the closing tag cannot start inside the opening tag
+			int[] next_close = {-1, -1, -1};
+			int t = n_tags - 1;
+			for (int i = len - 1; i >= 0 && t >= 0; i--) {
+				if (str.charAt(i) == '<')
+					for (int type = 0; type < TAG_CLOSE.length; type++)
+						if (str.startsWith(TAG_CLOSE[type], i))
+							next_close[type] = i;
+				if (tags[t] == i) {
+					tag_close[t] = next_close[tag_type[t]];
+					t--;
+				}
+			}
+
+			link_close = new int[n_links];
+			for (int k = n_links - 1; k >= 0; k--)
+				link_close[k] = findLinkClose(links[k], k);
+
+			brace_exit = new int[n_braces];
+			brace_level = new int[n_braces];
+			for (int k = n_braces - 1; k >= 0; k--)
+				exit(k);
+		}
+
+		private int tagType(int i) {
+			for (int type = 0; type < TAG_OPEN.length; type++)
+				if (str.startsWith(TAG_OPEN[type], i))
+					return type;
+			return -1;
+		}
+
+		private int findLinkClose(int i, int k) {//twin of findTarget("]]", i), links after k are already done
+			int len = str.length();
+			int next = k + 1;//next link to be reached
+			i++;
+			while (i < len) {
+				while (next < links.length && links[next] < i)
+					next++;
+				if (next < links.length && links[next] == i)
+					return link_close[next];//same path from here
+				if (str.startsWith("]]", i))
+					return i;
+				if (str.charAt(i) == '<') {
+					int tag = Arrays.binarySearch(tags, i);
+					if (tag >= 0 && tag_type[tag] != MATH) {
+						if (tag_close[tag] == -1)
+							return -1;
+						i = tag_close[tag] + TAG_CLOSE[tag_type[tag]].length();
+						continue;
+					}
+				}
+				i++;
+			}
+			return -1;
+		}
+
+		private void exit(int k) {//twin of getStringParameter() above a level of two open curls, braces after k are already done
+			int len = str.length();
+			int i = braces[k] + 1;
+			int level;
+			if (i + 1 < len && str.charAt(i + 1) == '{') {//longer run of {, the rest of the run is the next brace
+				level = 1 + brace_level[k + 1];
+				i = brace_exit[k + 1];
+			} else {
+				level = 2;
+				i++;
+			}
+			while (i < len) {
+				char ch = str.charAt(i);
+				switch (ch) {
+					case '{':
+						if (i + 1 < len && str.charAt(i + 1) == '{') {
+							int brace = Arrays.binarySearch(braces, i);
+							level += brace_level[brace];
+							i = brace_exit[brace];
+							continue;
+						}
+						break;
+					case '}':
+						int run = run(i);
+						if (run > 1) {
+							if (level - run <= 0) {//this run closes braces[k]
+								brace_exit[k] = i;
+								brace_level[k] = level;
+								return;
+							}
+							level -= run;
+							i += run;
+							continue;
+						}
+						break;
+					case '[':
+						if (++i < len && str.charAt(i) == '[') {
+							int close = link_close[Arrays.binarySearch(links, i)];
+							if (close != -1)
+								i = close + 2;
+						}
+						continue;
+					case '<':
+						int tag = Arrays.binarySearch(tags, i);
+						if (tag >= 0 && tag_close[tag] != -1) {
+							i = tag_close[tag] + TAG_CLOSE[tag_type[tag]].length();
+							continue;
+						}
+						break;
+				}
+				i++;
+			}
+			brace_exit[k] = len;
+			brace_level[k] = level;
+		}
+	}
+
+}//end of class WikiScanner